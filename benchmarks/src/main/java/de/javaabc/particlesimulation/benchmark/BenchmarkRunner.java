@@ -0,0 +1,44 @@
+package de.javaabc.particlesimulation.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+
+/**
+ * Runs the benchmarks with the GC profiler enabled and prints the pair throughput in ns/pair.
+ * All regular JMH command line options are supported, e.g. {@code -p particles=10000 -p threads=4 PairForce}.
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        var options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        Collection<RunResult> results = new Runner(options).run();
+
+        System.out.println();
+        System.out.println("Pair throughput:");
+        for (RunResult result : results) {
+            Result<?> pairs = result.getSecondaryResults().get("pairs");
+            if (pairs == null)
+                continue;
+
+            // The pair counter is reported as time per pair in the output time unit
+            var params = result.getParams();
+            double nsPerPair = pairs.getScore() * params.getTimeUnit().toNanos(1);
+
+            var description = new StringBuilder(params.getBenchmark());
+            for (String key : params.getParamsKeys())
+                description.append(' ').append(key).append('=').append(params.getParam(key));
+            System.out.printf("%s: %.3f ns/pair%n", description, nsPerPair);
+        }
+    }
+}
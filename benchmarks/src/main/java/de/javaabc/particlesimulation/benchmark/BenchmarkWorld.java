@@ -0,0 +1,107 @@
+package de.javaabc.particlesimulation.benchmark;
+
+import de.javaabc.particlesimulation.Checkpoint;
+import de.javaabc.particlesimulation.SimulationEngine;
+import de.javaabc.particlesimulation.util.math.Vec;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A simulation world shared by all benchmark threads.
+ * Particles are placed on a square lattice, so the lattice spacing controls the density.
+ * All work is submitted to a dedicated {@link ForkJoinPool}, so the parallel streams of the engine use the configured number of threads.
+ * The lattice is restored before each iteration, so benchmarks that move the particles always start from the same state.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkWorld {
+    /**
+     * the number of particles in the world
+     */
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int particles;
+
+    /**
+     * the distance between neighbored lattice points in px
+     */
+    @Param({"120", "180"})
+    public double spacing;
+
+    /**
+     * the number of worker threads
+     */
+    @Param({"1", "4", "16"})
+    public int threads;
+
+    /**
+     * the maximum distance to compute forces between particles in px
+     */
+    public static final double CUTOFF = 200.0;
+
+    /**
+     * the time between two ticks in seconds
+     */
+    public static final double DT = 1E-4;
+
+    SimulationEngine engine;
+
+    /**
+     * the number of distinct particle pairs within the cutoff distance in the initial lattice
+     */
+    long pairs;
+
+    /**
+     * the initial lattice
+     */
+    private Checkpoint lattice;
+
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int columns = (int) Math.ceil(Math.sqrt(particles));
+        int rows = (particles + columns - 1) / columns;
+        engine = new SimulationEngine(columns * spacing, rows * spacing, Vec.ZERO, CUTOFF);
+        for (int i = 0; i < particles; i++)
+            engine.addParticleAt(new Vec((i % columns + 0.5) * spacing, (i / columns + 0.5) * spacing));
+
+        engine.getParticles().setDomainCount(threads);
+        pool = new ForkJoinPool(threads);
+        pairs = countPairs();
+        lattice = engine.checkpoint();
+    }
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        engine.restore(lattice);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+        engine.close();
+    }
+
+    /**
+     * @return the number of distinct particle pairs within the cutoff distance
+     */
+    private long countPairs() {
+        var count = new LongAdder();
+        double sqCutoff = CUTOFF * CUTOFF;
+        run(() -> engine.getParticles().forEachPairHalfShell((p1, p2, buffer) -> {
+            if (p1.getPos().subtract(p2.getPos()).sqLength() <= sqCutoff)
+                count.increment();
+        }));
+        return count.sum();
+    }
+
+    /**
+     * Runs a task on the worker threads of this world.
+     *
+     * @param task the task to run
+     */
+    public void run(Runnable task) {
+        pool.submit(task).join();
+    }
+}
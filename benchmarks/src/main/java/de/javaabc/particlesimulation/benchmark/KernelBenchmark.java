@@ -0,0 +1,52 @@
+package de.javaabc.particlesimulation.benchmark;
+
+import de.javaabc.particlesimulation.util.Cache2D;
+import de.javaabc.particlesimulation.util.math.MathUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the small helpers that are called once per particle pair.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KernelBenchmark {
+    /**
+     * the number of distinct epsilon values in the cache
+     */
+    private static final int EPSILON_COUNT = 8;
+
+    private Cache2D<Double, Double, Double> cache;
+
+    private double[] epsilons;
+
+    private int index;
+
+    private double x;
+
+    @Setup
+    public void setup() {
+        cache = new Cache2D<>();
+        epsilons = new double[EPSILON_COUNT];
+        for (int i = 0; i < EPSILON_COUNT; i++)
+            epsilons[i] = 1E-7 * (i + 1);
+        x = 0.87;
+    }
+
+    @Benchmark
+    public double cacheStoreIfAbsent() {
+        index = (index + 1) & (EPSILON_COUNT * EPSILON_COUNT - 1);
+        double e1 = epsilons[index / EPSILON_COUNT], e2 = epsilons[index % EPSILON_COUNT];
+        return cache.storeIfAbsent(e1, e2, () -> Math.sqrt(e1 * e2));
+    }
+
+    @Benchmark
+    public double fastPow6() {
+        return MathUtil.fastPow6(x);
+    }
+}
@@ -0,0 +1,22 @@
+package de.javaabc.particlesimulation.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the particle pairs within the cutoff distance that a benchmark has processed.
+ * In average time mode, JMH reports the counter as time per pair, which {@link BenchmarkRunner} converts to ns/pair.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class PairCounter {
+    public long pairs;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        pairs = 0;
+    }
+}
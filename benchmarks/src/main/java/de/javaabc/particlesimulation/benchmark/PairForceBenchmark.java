@@ -0,0 +1,45 @@
+package de.javaabc.particlesimulation.benchmark;
+
+import de.javaabc.particlesimulation.particle.Particle;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the Lennard-Jones pair pass for every pair traversal and force accumulation strategy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class PairForceBenchmark {
+    /**
+     * the pair traversal, where BLOCKS_SYNCHRONIZED is the block traversal with synchronized force accumulation
+     * and NEIGHBOR_LIST_VECTOR / NEIGHBOR_LIST_TABULATED are the neighbor list traversal with the vectorized / tabulated force kernel.
+     * DOMAINS runs on its own worker threads, one per region.
+     */
+    @Param({"BLOCKS_SYNCHRONIZED", "BLOCKS", "HALF_SHELL", "NEIGHBOR_LIST", "NEIGHBOR_LIST_VECTOR", "NEIGHBOR_LIST_TABULATED", "DOMAINS"})
+    public String strategy;
+
+    @Benchmark
+    public void pairForces(BenchmarkWorld world, PairCounter counter) {
+        var particles = world.engine.getParticles();
+        var forceTable = particles.getForceTable();
+        forceTable.update();
+        world.run(() -> {
+            switch (strategy) {
+                case "BLOCKS_SYNCHRONIZED" -> particles.forEachPair(Particle::tickForceTo);
+                case "BLOCKS" -> particles.forEachPairBuffered(Particle::tickForceTo);
+                case "HALF_SHELL" -> particles.forEachPairHalfShell(Particle::tickForceTo);
+                case "NEIGHBOR_LIST" -> particles.forEachNeighborPair(Particle::tickForceTo);
+                case "NEIGHBOR_LIST_VECTOR" -> particles.tickNeighborForcesVectorized();
+                case "NEIGHBOR_LIST_TABULATED" -> particles.forEachNeighborPair(forceTable::tickForceTo);
+                case "DOMAINS" -> particles.tickDomainForces();
+                default -> throw new IllegalArgumentException("Unknown strategy " + strategy);
+            }
+        });
+        counter.pairs += world.pairs;
+    }
+}
@@ -0,0 +1,69 @@
+package de.javaabc.particlesimulation.benchmark;
+
+import de.javaabc.particlesimulation.particle.BoundaryCondition;
+import de.javaabc.particlesimulation.util.math.Vec;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static de.javaabc.particlesimulation.benchmark.BenchmarkWorld.DT;
+
+/**
+ * Measures the tick phases other than the pair pass, as well as a full tick.
+ * The state changes from tick to tick, so these benchmarks report the time per tick only and no pair throughput.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TickPhaseBenchmark {
+    @Benchmark
+    public void specialForces(BenchmarkWorld world) {
+        world.run(world.engine.getParticles().getStore()::tickSpringForces);
+    }
+
+    @Benchmark
+    public void boundaryForces(BenchmarkWorld world) {
+        var engine = world.engine;
+        var store = engine.getParticles().getStore();
+        world.run(() -> BoundaryCondition.REFLECTIVE.applyForces(store, engine.getWidth(), engine.getHeight(), engine.getCutoffDistance()));
+    }
+
+    @Benchmark
+    public void longRangeGravity(BenchmarkWorld world) {
+        var barnesHut = world.engine.getBarnesHut();
+        barnesHut.setGravitationalConstant(1.0);
+        world.run(barnesHut::applyForces);
+    }
+
+    @Benchmark
+    public void integrate(BenchmarkWorld world) {
+        var store = world.engine.getParticles().getStore();
+        world.run(() -> {
+            store.tickSpringForces();
+            store.tickSpeed(DT);
+            store.tickPos(DT);
+            store.tickReset(Vec.ZERO);
+        });
+    }
+
+    @Benchmark
+    public void integrateFused(BenchmarkWorld world) {
+        var store = world.engine.getParticles().getStore();
+        world.run(() -> {
+            store.tickSpringsAndSpeed(DT, DT, 0.0);
+            store.tickPosAndReset(DT, 1.0, Vec.ZERO);
+        });
+    }
+
+    @Benchmark
+    public void updateBlocks(BenchmarkWorld world) {
+        world.run(() -> world.engine.getParticles().updateBlocks());
+    }
+
+    @Benchmark
+    public void fullTick(BenchmarkWorld world) {
+        world.run(() -> world.engine.tick(DT));
+    }
+}
@@ -0,0 +1,418 @@
+package de.javaabc.particlesimulation;
+
+import de.javaabc.particlesimulation.particle.BarnesHut;
+import de.javaabc.particlesimulation.particle.BoundaryCondition;
+import de.javaabc.particlesimulation.particle.ParticleData;
+import de.javaabc.particlesimulation.particle.SpeciesTable;
+import de.javaabc.particlesimulation.util.math.Vec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * The complete state of a {@link SimulationEngine}, stored in a compact versioned binary file.
+ * <p>
+ * All values are little endian. The file starts with a fixed size header:
+ * magic number, version, world width and height, cutoff distance, gravity, boundary condition, tick count, simulated time,
+ * the adaptive step (last step scale, maximum displacement and maximum step scale), the long-range gravitation
+ * (gravitational constant, opening angle and softening length), particle count, connection count and species count.
+ * It is followed by one array per particle property (x, y, vx, vy, oldFx, oldFy, mass, epsilon, sigma as doubles, fixed flags as bytes),
+ * the particle indices of all spring connections as int pairs and the {@link SpeciesTable} including all overridden
+ * interactions (epsilon and sigma of each species, then the mixed epsilon, mixed sigma and squared cutoff of each species pair as doubles).
+ * Each array is written and read in bulk through a {@link FileChannel}, in chunks of a reused buffer.
+ * The force kernel, pair traversal and other performance settings are not part of the state and keep the values of the restoring engine.
+ */
+public class Checkpoint {
+    /**
+     * the system property to select the checkpoint file with
+     */
+    public static final String PATH_PROPERTY = "particlesimulation.checkpoint";
+
+    /**
+     * the checkpoint file used if the system property is not set
+     */
+    public static final String DEFAULT_PATH = "simulation.checkpoint";
+
+    /**
+     * the first four bytes of each checkpoint file, "PSCK"
+     */
+    private static final int MAGIC = 0x5053434B;
+
+    /**
+     * the version of the file format
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * the size of the header in bytes
+     */
+    private static final int HEADER_BYTES = 3 * Integer.BYTES + 5 * Double.BYTES + Long.BYTES + 7 * Double.BYTES + 3 * Integer.BYTES;
+
+    /**
+     * the number of double arrays per particle
+     */
+    private static final int DOUBLE_ARRAYS = 9;
+
+    /**
+     * the size of the buffer to write and read all arrays through in bytes
+     */
+    private static final int CHUNK_BYTES = 1 << 16;
+
+    /**
+     * the width and height of the simulated world in px
+     */
+    private final double width, height;
+
+    /**
+     * the maximum distance to even compute forces between particles
+     */
+    private final double cutoffDistance;
+
+    /**
+     * the gravitational force acting on each particle
+     */
+    private final Vec gravity;
+
+    /**
+     * the behaviour of particles at the edges of the world
+     */
+    private final BoundaryCondition boundaryCondition;
+
+    /**
+     * the number of ticks computed so far
+     */
+    private final long tickCount;
+
+    /**
+     * the sum of all steps computed so far in seconds
+     */
+    private final double simulatedTime;
+
+    /**
+     * the state of the adaptive step
+     */
+    private final AdaptiveStep adaptiveStep;
+
+    /**
+     * the settings of the long-range gravitation
+     */
+    private final Gravitation gravitation;
+
+    /**
+     * all species and their interaction parameters
+     */
+    private final SpeciesTable.Interactions interactions;
+
+    /**
+     * the state of all particles and their connections
+     */
+    private final ParticleData particles;
+
+    /**
+     * The state of the adaptive step, see {@link SimulationEngine#setAdaptiveStep}.
+     *
+     * @param stepScale       the length of the last step as multiple of the base time step
+     * @param maxDisplacement the maximum distance in px any particle may move in one step, or zero for a fixed step
+     * @param maxStepScale    the maximum length of an adaptive step as multiple of the base time step
+     */
+    public record AdaptiveStep(double stepScale, double maxDisplacement, double maxStepScale) {
+    }
+
+    /**
+     * The settings of the long-range gravitation, see {@link BarnesHut}.
+     *
+     * @param gravitationalConstant the gravitational constant G, or zero to disable long-range gravity
+     * @param theta                 the opening angle
+     * @param softening             the softening length in px
+     */
+    public record Gravitation(double gravitationalConstant, double theta, double softening) {
+    }
+
+    /**
+     * Creates a new checkpoint.
+     *
+     * @param width             the width of the simulated world in px
+     * @param height            the height of the simulated world in px
+     * @param cutoffDistance    the maximum distance to even compute forces between particles
+     * @param gravity           the gravitational force acting on each particle
+     * @param boundaryCondition the behaviour of particles at the edges of the world
+     * @param tickCount         the number of ticks computed so far
+     * @param simulatedTime     the sum of all steps computed so far in seconds
+     * @param adaptiveStep      the state of the adaptive step
+     * @param gravitation       the settings of the long-range gravitation
+     * @param interactions      all species and their interaction parameters
+     * @param particles         the state of all particles and their connections
+     */
+    public Checkpoint(double width, double height, double cutoffDistance, Vec gravity, BoundaryCondition boundaryCondition,
+                      long tickCount, double simulatedTime, AdaptiveStep adaptiveStep, Gravitation gravitation,
+                      SpeciesTable.Interactions interactions, ParticleData particles) {
+        this.width = width;
+        this.height = height;
+        this.cutoffDistance = cutoffDistance;
+        this.gravity = gravity;
+        this.boundaryCondition = boundaryCondition;
+        this.tickCount = tickCount;
+        this.simulatedTime = simulatedTime;
+        this.adaptiveStep = adaptiveStep;
+        this.gravitation = gravitation;
+        this.interactions = interactions;
+        this.particles = particles;
+    }
+
+    /**
+     * @return the checkpoint file selected by the system property {@value PATH_PROPERTY}
+     */
+    public static Path pathFromSystemProperty() {
+        return Path.of(System.getProperty(PATH_PROPERTY, DEFAULT_PATH));
+    }
+
+    /**
+     * @return all double arrays of the particles in file order
+     */
+    private static double[][] doubleArrays(ParticleData data) {
+        return new double[][]{data.getX(), data.getY(), data.getVx(), data.getVy(), data.getOldFx(), data.getOldFy(),
+                data.getMass(), data.getEpsilon(), data.getSigma()};
+    }
+
+    /**
+     * @return all double arrays of the species table in file order
+     */
+    private static double[][] doubleArrays(SpeciesTable.Interactions interactions) {
+        return new double[][]{interactions.epsilon(), interactions.sigma(), interactions.mixedEpsilon(), interactions.mixedSigma(), interactions.sqCutoff()};
+    }
+
+    /**
+     * Writes the filled part of a buffer completely and clears it.
+     */
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Clears a buffer and reads exactly a given number of bytes into it.
+     *
+     * @throws EOFException if the file ends before
+     */
+    private static ByteBuffer fill(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        buffer.clear().limit(bytes);
+        while (buffer.hasRemaining())
+            if (channel.read(buffer) < 0)
+                throw new EOFException("Unexpected end of checkpoint");
+        return buffer.flip();
+    }
+
+    /**
+     * Writes the first values of an array in chunks of a buffer.
+     */
+    private static void writeDoubles(FileChannel channel, ByteBuffer buffer, double[] values, int n) throws IOException {
+        for (int from = 0; from < n; from += CHUNK_BYTES / Double.BYTES) {
+            int count = Math.min(CHUNK_BYTES / Double.BYTES, n - from);
+            buffer.asDoubleBuffer().put(values, from, count);
+            buffer.position(count * Double.BYTES);
+            flush(channel, buffer);
+        }
+    }
+
+    /**
+     * Reads a whole array in chunks of a buffer.
+     */
+    private static void readDoubles(FileChannel channel, ByteBuffer buffer, double[] values) throws IOException {
+        for (int from = 0; from < values.length; from += CHUNK_BYTES / Double.BYTES) {
+            int count = Math.min(CHUNK_BYTES / Double.BYTES, values.length - from);
+            fill(channel, buffer, count * Double.BYTES).asDoubleBuffer().get(values, from, count);
+        }
+    }
+
+    /**
+     * Writes this checkpoint into a file. The file is first written next to the target and then moved over it,
+     * so an interrupted write never destroys the previous checkpoint. The temporary file is closed before the move.
+     *
+     * @param path the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path path) throws IOException {
+        int n = particles.size();
+        int[] connections = particles.getConnections();
+        var tmp = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (var channel = FileChannel.open(tmp, CREATE, TRUNCATE_EXISTING, WRITE)) {
+            var buffer = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION)
+                    .putDouble(width).putDouble(height).putDouble(cutoffDistance).putDouble(gravity.x).putDouble(gravity.y)
+                    .putInt(boundaryCondition.ordinal())
+                    .putLong(tickCount)
+                    .putDouble(simulatedTime)
+                    .putDouble(adaptiveStep.stepScale()).putDouble(adaptiveStep.maxDisplacement()).putDouble(adaptiveStep.maxStepScale())
+                    .putDouble(gravitation.gravitationalConstant()).putDouble(gravitation.theta()).putDouble(gravitation.softening())
+                    .putInt(n).putInt(connections.length / 2).putInt(interactions.count());
+            flush(channel, buffer);
+
+            for (double[] values : doubleArrays(particles))
+                writeDoubles(channel, buffer, values, n);
+
+            boolean[] fixed = particles.getFixed();
+            for (int i = 0; i < n; i++) {
+                if (!buffer.hasRemaining())
+                    flush(channel, buffer);
+                buffer.put((byte) (fixed[i] ? 1 : 0));
+            }
+            flush(channel, buffer);
+
+            for (int from = 0; from < connections.length; from += CHUNK_BYTES / Integer.BYTES) {
+                int count = Math.min(CHUNK_BYTES / Integer.BYTES, connections.length - from);
+                buffer.asIntBuffer().put(connections, from, count);
+                buffer.position(count * Integer.BYTES);
+                flush(channel, buffer);
+            }
+
+            for (double[] values : doubleArrays(interactions))
+                    writeDoubles(channel, buffer, values, values.length);
+            channel.force(true);
+        }
+
+        try {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads a checkpoint from a file.
+     *
+     * @param path the file to read
+     * @return the checkpoint
+     * @throws IOException if the file cannot be read, is not a checkpoint, has an unknown version or is truncated
+     */
+    public static Checkpoint read(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, READ)) {
+            if (channel.size() < HEADER_BYTES)
+                throw new IOException("Not a checkpoint: " + path);
+
+            var buffer = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            var header = fill(channel, buffer, 2 * Integer.BYTES);
+            if (header.getInt() != MAGIC)
+                throw new IOException("Not a checkpoint: " + path);
+            int version = header.getInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported checkpoint version " + version + " in " + path);
+            header = fill(channel, buffer, HEADER_BYTES - 2 * Integer.BYTES);
+
+            double width = header.getDouble(), height = header.getDouble(), cutoffDistance = header.getDouble();
+            var gravity = new Vec(header.getDouble(), header.getDouble());
+            int boundary = header.getInt();
+            long tickCount = header.getLong();
+            double simulatedTime = header.getDouble();
+            var adaptiveStep = new AdaptiveStep(header.getDouble(), header.getDouble(), header.getDouble());
+            var gravitation = new Gravitation(header.getDouble(), header.getDouble(), header.getDouble());
+            int n = header.getInt(), connectionCount = header.getInt(), speciesCount = header.getInt();
+            if (boundary < 0 || boundary >= BoundaryCondition.values().length || n < 0 || connectionCount < 0
+                    || speciesCount < 0 || (long) speciesCount * speciesCount > Integer.MAX_VALUE)
+                throw new IOException("Corrupt checkpoint header in " + path);
+
+            long expected = HEADER_BYTES + (long) n * (DOUBLE_ARRAYS * Double.BYTES + 1) + 2L * connectionCount * Integer.BYTES
+                    + (2L * speciesCount + 3L * speciesCount * speciesCount) * Double.BYTES;
+            if (channel.size() != expected)
+                throw new IOException("Checkpoint " + path + " has " + channel.size() + " bytes, expected " + expected);
+
+            double[][] values = new double[DOUBLE_ARRAYS][n];
+            for (double[] array : values)
+                readDoubles(channel, buffer, array);
+
+            boolean[] fixed = new boolean[n];
+            for (int from = 0; from < n; from += CHUNK_BYTES) {
+                var chunk = fill(channel, buffer, Math.min(CHUNK_BYTES, n - from));
+                for (int i = from; chunk.hasRemaining(); i++)
+                    fixed[i] = chunk.get() != 0;
+            }
+
+            int[] connections = new int[2 * connectionCount];
+            for (int from = 0; from < connections.length; from += CHUNK_BYTES / Integer.BYTES) {
+                int count = Math.min(CHUNK_BYTES / Integer.BYTES, connections.length - from);
+                fill(channel, buffer, count * Integer.BYTES).asIntBuffer().get(connections, from, count);
+            }
+
+            int pairs = speciesCount * speciesCount;
+            double[][] species = {new double[speciesCount], new double[speciesCount], new double[pairs], new double[pairs], new double[pairs]};
+            for (double[] array : species)
+                readDoubles(channel, buffer, array);
+
+            SpeciesTable.Interactions interactions;
+            ParticleData particles;
+            try {
+                interactions = new SpeciesTable.Interactions(species[0], species[1], species[2], species[3], species[4]);
+                particles = new ParticleData(n, values[0], values[1], values[2], values[3], values[4], values[5],
+                        values[6], values[7], values[8], fixed, connections);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Corrupt checkpoint " + path + ": " + e.getMessage(), e);
+            }
+            return new Checkpoint(width, height, cutoffDistance, gravity, BoundaryCondition.values()[boundary], tickCount, simulatedTime,
+                    adaptiveStep, gravitation, interactions, particles);
+        }
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
+    public double getCutoffDistance() {
+        return cutoffDistance;
+    }
+
+    public Vec getGravity() {
+        return gravity;
+    }
+
+    public BoundaryCondition getBoundaryCondition() {
+        return boundaryCondition;
+    }
+
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    public double getSimulatedTime() {
+        return simulatedTime;
+    }
+
+    /**
+     * @return the state of the adaptive step
+     */
+    public AdaptiveStep getAdaptiveStep() {
+        return adaptiveStep;
+    }
+
+    /**
+     * @return the settings of the long-range gravitation
+     */
+    public Gravitation getGravitation() {
+        return gravitation;
+    }
+
+    /**
+     * @return all species and their interaction parameters
+     */
+    public SpeciesTable.Interactions getInteractions() {
+        return interactions;
+    }
+
+    public ParticleData getParticles() {
+        return particles;
+    }
+}
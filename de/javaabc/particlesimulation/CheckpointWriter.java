@@ -0,0 +1,122 @@
+package de.javaabc.particlesimulation;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Writes {@link Checkpoint}s of a {@link SimulationEngine} on a background thread.
+ * The thread that runs the ticks only copies the simulation state, writing the file never blocks it.
+ * If a checkpoint is due while the previous one is still being written, the new one is skipped and counted.
+ */
+public class CheckpointWriter implements AutoCloseable {
+    /**
+     * the file to write all checkpoints to
+     */
+    private final Path path;
+
+    /**
+     * the number of ticks between two periodic checkpoints, or 0 to only write checkpoints on request
+     */
+    private final long interval;
+
+    /**
+     * the single thread that writes all files
+     */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        var thread = new Thread(r, "checkpoint-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * the flag whether a checkpoint is currently being written
+     */
+    private final AtomicBoolean writing = new AtomicBoolean();
+
+    /**
+     * the number of checkpoints written and skipped so far
+     */
+    private volatile long written, skipped;
+
+    /**
+     * Creates a new checkpoint writer.
+     *
+     * @param path     the file to write all checkpoints to
+     * @param interval the number of ticks between two periodic checkpoints, or 0 to only write checkpoints on request
+     */
+    public CheckpointWriter(Path path, long interval) {
+        this.path = path;
+        this.interval = interval;
+    }
+
+    /**
+     * Writes a periodic checkpoint if the tick count is a multiple of the interval. Must be called by the thread that runs the ticks, between two ticks.
+     *
+     * @param engine the engine to write a checkpoint of
+     */
+    public void afterTick(SimulationEngine engine) {
+        if (interval > 0 && engine.getTickCount() % interval == 0)
+            write(engine);
+    }
+
+    /**
+     * Copies the state of an engine and writes it in the background.
+     *
+     * @param engine the engine to write a checkpoint of
+     * @return true if the checkpoint is written, false if it was skipped because the previous one is still being written
+     */
+    public boolean write(SimulationEngine engine) {
+        if (!writing.compareAndSet(false, true)) {
+            skipped++;
+            return false;
+        }
+
+        var checkpoint = engine.checkpoint();
+        executor.execute(() -> {
+            try {
+                checkpoint.write(path);
+                written++;
+            } catch (IOException e) {
+                System.err.println("Could not write checkpoint " + path + ": " + e.getMessage());
+            } finally {
+                writing.set(false);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * @return the number of checkpoints written so far
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * @return the number of checkpoints skipped so far, because the previous one was still being written
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Waits for the last checkpoint to be written and stops the background thread.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
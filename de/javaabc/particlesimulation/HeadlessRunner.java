@@ -0,0 +1,241 @@
+package de.javaabc.particlesimulation;
+
+import de.javaabc.particlesimulation.particle.BoundaryCondition;
+import de.javaabc.particlesimulation.monitoring.jfr.JfrTickListener;
+import de.javaabc.particlesimulation.monitoring.jmx.TickStatsJmx;
+import de.javaabc.particlesimulation.particle.ForceKernel;
+import de.javaabc.particlesimulation.trajectory.DropPolicy;
+import de.javaabc.particlesimulation.trajectory.TrajectoryWriter;
+import de.javaabc.particlesimulation.util.math.Vec;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * A command line runner that steps a {@link SimulationEngine} as fast as possible without any display or wall clock scheduling.
+ * <p>
+ * Usage: {@code java de.javaabc.particlesimulation.HeadlessRunner [--width px] [--height px] [--particles n] [--tps n] [--cutoff px] [--steps n] [--periodic 0|1] [--gravitation G] [--theta theta] [--checkpoint n] [--restore 0|1] [--trajectory n] [--velocities 0|1] [--adaptive px]}
+ * <p>
+ * With {@code --checkpoint n} a {@link Checkpoint} is written every n ticks, with {@code --restore 1} the run continues from the last checkpoint
+ * instead of placing new particles, with the long-range gravitation and adaptive step stored in the checkpoint.
+ * The file is selected with the system property {@value Checkpoint#PATH_PROPERTY}.
+ * <p>
+ * With {@code --trajectory n} the positions of all particles, and with {@code --velocities 1} also their speeds, are streamed into a
+ * compressed trajectory file every n ticks, see {@link TrajectoryWriter}. The file is selected with the system property {@value TrajectoryWriter#PATH_PROPERTY}.
+ * <p>
+ * With {@code --adaptive px} each tick takes the longest step in which no particle moves further than px, see {@link SimulationEngine#setAdaptiveStep}.
+ */
+public class HeadlessRunner {
+    /**
+     * the default values of all command line options
+     */
+    public static final Map<String, Double> DEFAULTS = Map.ofEntries(
+            Map.entry("width", 1920.0),
+            Map.entry("height", 1080.0),
+            Map.entry("particles", 1000.0),
+            Map.entry("tps", 10000.0),
+            Map.entry("cutoff", 200.0),
+            Map.entry("steps", 10000.0),
+            Map.entry("periodic", 0.0),
+            Map.entry("gravitation", 0.0),
+            Map.entry("theta", 0.5),
+            Map.entry("checkpoint", 0.0),
+            Map.entry("restore", 0.0),
+            Map.entry("trajectory", 0.0),
+            Map.entry("velocities", 0.0),
+            Map.entry("adaptive", 0.0)
+    );
+
+    /**
+     * the number of progress reports during a run
+     */
+    private static final int REPORTS = 10;
+
+    /**
+     * the number of distances per species pair to check the accuracy of tabulated forces with
+     */
+    private static final int ACCURACY_SAMPLES = 100_000;
+
+    /**
+     * Parses the command line options of the form {@code --name value}.
+     *
+     * @param args     the command line arguments
+     * @param defaults the default values of all known options
+     * @return a map of all option values, including defaults for missing ones
+     * @throws IllegalArgumentException if an option is unknown, lacks a value or is not a number
+     */
+    public static Map<String, Double> parseOptions(String[] args, Map<String, Double> defaults) {
+        Map<String, Double> options = new HashMap<>(defaults);
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--") || !defaults.containsKey(arg.substring(2)))
+                throw new IllegalArgumentException("Unknown option " + arg);
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException("Missing value for option " + arg);
+
+            try {
+                options.put(arg.substring(2), Double.parseDouble(args[++i]));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value for option " + arg + ": " + args[i]);
+            }
+        }
+        return options;
+    }
+
+    /**
+     * The smallest distance between neighbored lattice points in px, at the minimum of the Lennard-Jones-Potential of two default particles.
+     * Closer particles repel each other strongly enough to blow the lattice apart.
+     */
+    public static final double LATTICE_SPACING = Math.pow(2.0, 1.0 / 6.0) * SimulationEngine.DEFAULT_SIGMA;
+
+    /**
+     * Enlarges a world with the same aspect ratio until a square lattice of a given number of particles fits in with {@link #LATTICE_SPACING}.
+     *
+     * @param width  the requested width of the world in px
+     * @param height the requested height of the world in px
+     * @param count  the number of particles of the whole lattice
+     * @return the width and height of the world in px, at least as large as requested
+     */
+    public static Vec fitWorld(double width, double height, int count) {
+        double scale = Math.max(1.0, LATTICE_SPACING * Math.sqrt(count / (width * height))); // Would fit if the lattice filled the world exactly
+        while (latticeSpacing(scale * width, scale * height, count) < LATTICE_SPACING)
+            scale *= 1.01;
+        return new Vec(Math.ceil(scale * width), Math.ceil(scale * height));
+    }
+
+    /**
+     * Computes the largest distance between neighbored points of a square lattice of a given number of particles that fits into a world.
+     *
+     * @param width  the width of the world in px
+     * @param height the height of the world in px
+     * @param count  the number of particles of the whole lattice
+     * @return the lattice spacing in px
+     */
+    private static double latticeSpacing(double width, double height, int count) {
+        double spacing = 0.0;
+        for (int columns = 1; columns <= Math.max(1, count); columns++)
+            spacing = Math.max(spacing, Math.min(width / columns, height / ((count + columns - 1) / columns)));
+        return spacing;
+    }
+
+    /**
+     * Places a given number of particles on a square lattice that evenly covers the world.
+     *
+     * @param engine the engine to add the particles to
+     * @param count  the number of particles to add
+     * @throws IllegalArgumentException if the particles do not fit into the world, see {@link #fitWorld}
+     */
+    static void placeParticles(SimulationEngine engine, int count) {
+        placeParticles(engine, count, pos -> true);
+    }
+
+    /**
+     * Places the particles of a square lattice that evenly covers the world, skipping all positions rejected by a filter.
+     * Neighbored lattice points are at least {@link #LATTICE_SPACING} apart.
+     *
+     * @param engine the engine to add the particles to
+     * @param count  the number of particles of the whole lattice
+     * @param filter the test whether to add a particle at a lattice position
+     * @throws IllegalArgumentException if the particles do not fit into the world, see {@link #fitWorld}
+     */
+    public static void placeParticles(SimulationEngine engine, int count, Predicate<Vec> filter) {
+        double spacing = latticeSpacing(engine.getWidth(), engine.getHeight(), count);
+        if (spacing < LATTICE_SPACING)
+            throw new IllegalArgumentException(String.format("%d particles do not fit into a %.0f x %.0f world with a spacing of %.1f px",
+                    count, engine.getWidth(), engine.getHeight(), LATTICE_SPACING));
+
+        int columns = Math.max(1, (int) (engine.getWidth() / spacing));
+        for (int i = 0; i < count; i++) {
+            var pos = new Vec((i % columns + 0.5) * spacing, (i / columns + 0.5) * spacing);
+            if (filter.test(pos))
+                engine.addParticleAt(pos);
+        }
+    }
+
+    public static void main(String[] args) {
+        Map<String, Double> options;
+        try {
+            options = parseOptions(args, DEFAULTS);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        var checkpointPath = Checkpoint.pathFromSystemProperty();
+        SimulationEngine engine;
+        if (options.get("restore") != 0.0) {
+            try {
+                engine = SimulationEngine.fromCheckpoint(Checkpoint.read(checkpointPath));
+            } catch (IOException e) {
+                System.err.println("Could not read checkpoint: " + e.getMessage());
+                System.exit(1);
+                return;
+            }
+            System.out.println("Restored tick " + engine.getTickCount() + " from " + checkpointPath);
+        } else {
+            int count = options.get("particles").intValue();
+            var world = fitWorld(options.get("width"), options.get("height"), count);
+            if (world.x > options.get("width"))
+                System.out.printf("Enlarged the world to %.0f x %.0f px to fit %d particles%n", world.x, world.y, count);
+            engine = new SimulationEngine(world.x, world.y, SimulationEngine.DEFAULT_GRAVITY, options.get("cutoff"));
+            if (options.get("periodic") != 0.0)
+                engine.setBoundaryCondition(BoundaryCondition.PERIODIC);
+            placeParticles(engine, count);
+            // A restored run continues with the long-range gravitation and adaptive step of its checkpoint
+            engine.getBarnesHut().setGravitationalConstant(options.get("gravitation"));
+            engine.getBarnesHut().setTheta(options.get("theta"));
+            engine.setAdaptiveStep(options.get("adaptive"));
+        }
+        if (engine.getForceKernel() == ForceKernel.TABULATED)
+            System.out.println("Tabulated forces: " + engine.getParticles().getForceTable().checkAccuracy(ACCURACY_SAMPLES));
+
+        double dt = 1.0 / options.get("tps");
+        long steps = options.get("steps").longValue();
+        long reportInterval = Math.max(1, steps / REPORTS);
+
+        TickStatsJmx.register(engine.getStats());
+        JfrTickListener.attach(engine.getStats());
+        System.out.println("Running " + steps + " ticks with " + engine.getParticles().size() + " particles");
+        var checkpoints = new CheckpointWriter(checkpointPath, options.get("checkpoint").longValue());
+        TrajectoryWriter trajectory = null;
+        long trajectoryInterval = options.get("trajectory").longValue();
+        if (trajectoryInterval > 0) {
+            try {
+                trajectory = new TrajectoryWriter(TrajectoryWriter.pathFromSystemProperty(), trajectoryInterval, TrajectoryWriter.DEFAULT_CAPACITY,
+                        options.get("velocities") != 0.0, DropPolicy.DROP_NEWEST);
+            } catch (IOException e) {
+                System.err.println("Could not create trajectory: " + e.getMessage());
+                System.exit(1);
+                return;
+            }
+        }
+
+        long start = System.nanoTime();
+        for (long step = 1; step <= steps; step++) {
+            engine.tick(dt);
+            checkpoints.afterTick(engine);
+            if (trajectory != null)
+                trajectory.afterTick(engine);
+            if (step % reportInterval == 0)
+                System.out.printf("tick %d, %d particles, %.1f ticks/s%n", step, engine.getParticles().size(), step / ((System.nanoTime() - start) / 1E9));
+        }
+
+        double seconds = (System.nanoTime() - start) / 1E9;
+        System.out.printf("Finished %d ticks in %.3f s (%.1f ticks/s, %.3f simulated s)%n", steps, seconds, steps / seconds, engine.getSimulatedTime());
+        System.out.println(engine.getStats());
+        checkpoints.close();
+        if (checkpoints.getWritten() + checkpoints.getSkipped() > 0)
+            System.out.println("Checkpoints: " + checkpoints.getWritten() + " written, " + checkpoints.getSkipped() + " skipped");
+        if (trajectory != null) {
+            try {
+                trajectory.close();
+            } catch (IOException e) {
+                System.err.println("Could not write trajectory: " + e.getMessage());
+            }
+            System.out.println("Trajectory frames: " + trajectory.getWritten() + " written, " + trajectory.getDropped() + " dropped");
+        }
+    }
+}
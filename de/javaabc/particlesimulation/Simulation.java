@@ -1,54 +1,64 @@
 package de.javaabc.particlesimulation;
 
 import de.javaabc.particlesimulation.display.Display;
+import de.javaabc.particlesimulation.display.ParticleRenderer;
+import de.javaabc.particlesimulation.display.RasterRenderer;
 import de.javaabc.particlesimulation.display.Renderable;
 import de.javaabc.particlesimulation.input.KeyInput;
 import de.javaabc.particlesimulation.input.MouseInput;
-import de.javaabc.particlesimulation.particle.FixedParticle;
+import de.javaabc.particlesimulation.monitoring.jfr.JfrTickListener;
+import de.javaabc.particlesimulation.monitoring.jmx.TickStatsJmx;
 import de.javaabc.particlesimulation.particle.Particle;
-import de.javaabc.particlesimulation.particle.ParticleContainer;
 import de.javaabc.particlesimulation.util.math.Vec;
 
 import javax.swing.*;
 import java.awt.*;
+import java.io.IOException;
 import java.util.Optional;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 /**
- * A simulation of dot {@link Particle}s.
+ * A Swing front end of a {@link SimulationEngine} that shows dot {@link Particle}s in real time.
  */
 public class Simulation extends JFrame implements Renderable {
     /**
-     * the default mass of a particle in kg (unit doesn't matter though)
+     * the maximum number of ticks to run without requesting a frame in between
      */
-    private static final double DEFAULT_PARTICLE_MASS = 1.0;
+    private static final int MAX_TICK_BATCH = 100;
 
     /**
-     * the default epsilon value for the Lennard-Jones-Potential computation of particles
+     * the number of frames and ticks per second
      */
-    private static final double DEFAULT_EPSILON = 0.0000001;
+    private final double fps, tps;
 
     /**
-     * the default sigma value for the Lennard-Jones-Potential computation of particles
+     * the headless simulation core
      */
-    private static final double DEFAULT_SIGMA = 200.0;
+    private final SimulationEngine engine;
 
     /**
-     * the number of frames and ticks per second
+     * the panel that shows this simulation
      */
-    private final double fps, tps;
+    private final Display display;
+
+    /**
+     * the renderer that draws all particles of the engine as Java2D shapes
+     */
+    private final ParticleRenderer particleRenderer;
+
+    /**
+     * the renderer that rasterizes all particles of the engine into an image, for large systems
+     */
+    private final RasterRenderer rasterRenderer;
 
     /**
-     * a {@link Vec}tor representing the gravitational force applied on each particle
+     * the background writer of checkpoints saved on request
      */
-    private Vec gravity;
+    private final CheckpointWriter checkpoints = new CheckpointWriter(Checkpoint.pathFromSystemProperty(), 0);
 
     /**
-     * the container of particles
+     * the scheduler that runs all ticks
      */
-    private final ParticleContainer particles;
+    private TickScheduler scheduler;
 
     /**
      * the last nanosecond time stamp a frame was rendered
@@ -60,11 +70,6 @@ public class Simulation extends JFrame implements Renderable {
      */
     private boolean pause = false;
 
-    /**
-     * the maximum distance to even compute forces between particles
-     */
-    private final double cutoffDistance;
-
     /**
      * the keyboard input handler
      */
@@ -87,18 +92,19 @@ public class Simulation extends JFrame implements Renderable {
         super("Simulation");
         this.fps = fps;
         this.tps = tps;
-        this.gravity = gravity;
-        this.cutoffDistance = cutoffDistance;
 
         setSize(Toolkit.getDefaultToolkit().getScreenSize());
         setResizable(false);
         setUndecorated(true);
         setDefaultCloseOperation(EXIT_ON_CLOSE);
-        setContentPane(new Display(this));
+        display = new Display(this);
+        setContentPane(display);
 
-        int blockWidth = (int) Math.ceil(getWidth() / cutoffDistance);
-        int blockHeight = (int) Math.ceil(getHeight() / cutoffDistance);
-        particles = new ParticleContainer(blockWidth, blockHeight, cutoffDistance);
+        engine = new SimulationEngine(getWidth(), getHeight(), gravity, cutoffDistance);
+        TickStatsJmx.register(engine.getStats());
+        JfrTickListener.attach(engine.getStats());
+        particleRenderer = new ParticleRenderer(engine.getParticles(), engine.getSnapshots());
+        rasterRenderer = new RasterRenderer(engine.getSnapshots(), getWidth(), getHeight());
 
         keyInput = new KeyInput(this);
         mouseInput = new MouseInput(this);
@@ -109,54 +115,51 @@ public class Simulation extends JFrame implements Renderable {
 
     /**
      * Starts the tick-render-loop of this simulation.
+     * Ticks are run in batches by a {@link TickScheduler}. If a frame is due after a batch, a render snapshot is published
+     * and a repaint is requested, so painting never reads the live simulation state.
      */
     private void startLoop() {
         lastFrameTime = System.nanoTime();
         long nanosPerFrame = Math.round(1E9 / fps);
         double dt = 1.0 / tps;
 
-        ScheduledExecutorService exe = Executors.newSingleThreadScheduledExecutor();
-        exe.scheduleAtFixedRate(() -> {
-            try {
-                long now = System.nanoTime();
-
-                if (!pause)
-                    tick(dt);
-
-                if (now - lastFrameTime > nanosPerFrame) {
-                    getContentPane().repaint();
-                    lastFrameTime = now;
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
+        scheduler = new TickScheduler(tps, MAX_TICK_BATCH, TickScheduler.OverrunPolicy.SLOW_DOWN, () -> {
+            if (!pause)
+                engine.tick(dt);
+        }, () -> {
+            long now = System.nanoTime();
+            if (now - lastFrameTime > nanosPerFrame) {
+                engine.publishSnapshot();
+                getContentPane().repaint();
+                lastFrameTime = now;
             }
-        }, 0L, Math.round(dt * 1E9), TimeUnit.NANOSECONDS);
-    }
-
-    /**
-     * Performs one calculation in this simulation.
-     *
-     * @param dt the time between two ticks in seconds
-     */
-    private void tick(double dt) {
-        particles.forEachPair(Particle::tickForceTo);
-        particles.forEachParallel(Particle::tickSpecialForces);
-        particles.forEachParallel(p -> p.tickSpeed(dt));
-        particles.forEachParallel(p -> p.tickPos(dt));
-        particles.forEachParallel(Particle::tickReset);
-        particles.updateBlocks();
+        });
+        scheduler.start();
     }
 
     @Override
     public void render(Graphics2D g) {
+        long start = System.nanoTime();
         g.setColor(Color.WHITE);
         g.fillRect(0, 0, getWidth(), getHeight());
 
-        // particles.renderGrid(g);
+        // particleRenderer.renderGrid(g);
 
-        particles.forEach(p -> p.render(g));
+        if (display.isRasterized())
+            rasterRenderer.render(g);
+        else
+            particleRenderer.render(g);
 
         mouseInput.render(g);
+
+        if (scheduler != null) {
+            g.setColor(Color.GRAY);
+            g.drawString(scheduler.toString(), 10, 20);
+            g.drawString(String.format("%.4f s simulated%s", engine.getSnapshots().latest().getTime(),
+                    engine.getMaxDisplacement() > 0.0 ? String.format(", adaptive step x%.2f", engine.getStepScale()) : ""), 10, 35);
+        }
+
+        engine.getStats().recordFrame(System.nanoTime() - start);
     }
 
     /**
@@ -165,7 +168,7 @@ public class Simulation extends JFrame implements Renderable {
      * @param pos the position of the particle to add
      */
     public void addParticleAt(Vec pos) {
-        particles.add(new Particle(this, pos, DEFAULT_PARTICLE_MASS, DEFAULT_EPSILON, DEFAULT_SIGMA));
+        engine.addParticleAt(pos);
         System.out.println("Created particle at " + pos);
     }
 
@@ -175,7 +178,7 @@ public class Simulation extends JFrame implements Renderable {
      * @param pos the position of the particle to add
      */
     public void addFixedParticleAt(Vec pos) {
-        particles.add(new FixedParticle(this, pos, DEFAULT_PARTICLE_MASS, DEFAULT_EPSILON, DEFAULT_SIGMA));
+        engine.addFixedParticleAt(pos);
         System.out.println("Created fixed particle at " + pos);
     }
 
@@ -186,15 +189,15 @@ public class Simulation extends JFrame implements Renderable {
      * @return an {@link Optional} containing the found particle or an empty Optional if nothing found
      */
     public Optional<Particle> findParticle(Vec pos) {
-        return particles.find(pos);
+        return engine.findParticle(pos);
     }
 
     public static void main(String[] args) {
-        new Simulation(60.0, 10000.0, new Vec(0.0, 0.1), 200.0);
+        new Simulation(60.0, 10000.0, SimulationEngine.DEFAULT_GRAVITY, 200.0);
     }
 
-    public ParticleContainer getParticles() {
-        return particles;
+    public SimulationEngine getEngine() {
+        return engine;
     }
 
     public void togglePause() {
@@ -202,15 +205,39 @@ public class Simulation extends JFrame implements Renderable {
     }
 
     public void toggleGravity() {
-        gravity = gravity == Vec.ZERO ? new Vec(0.0, 0.1) : Vec.ZERO;
+        engine.toggleGravity();
+    }
+
+    public void toggleRasterized() {
+        display.toggleRasterized();
     }
 
-    public Vec getGravity() {
-        return gravity;
+    public void toggleAdaptiveStep() {
+        engine.setAdaptiveStep(engine.getMaxDisplacement() > 0.0 ? 0.0 : SimulationEngine.DEFAULT_MAX_DISPLACEMENT);
+    }
+
+    /**
+     * Saves the current state of the simulation as checkpoint in the background.
+     */
+    public void saveCheckpoint() {
+        if (checkpoints.write(engine))
+            System.out.println("Saving checkpoint " + checkpoints.getPath());
+    }
+
+    /**
+     * Replaces the current state of the simulation by the last saved checkpoint.
+     */
+    public void loadCheckpoint() {
+        try {
+            engine.restore(Checkpoint.read(checkpoints.getPath()));
+            System.out.println("Loaded checkpoint " + checkpoints.getPath() + " at tick " + engine.getTickCount());
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Could not load checkpoint: " + e.getMessage());
+        }
     }
 
     public double getCutoffDistance() {
-        return cutoffDistance;
+        return engine.getCutoffDistance();
     }
 
     public KeyInput getKeyInput() {
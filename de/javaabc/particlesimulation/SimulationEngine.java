@@ -0,0 +1,572 @@
+package de.javaabc.particlesimulation;
+
+import de.javaabc.particlesimulation.particle.BarnesHut;
+import de.javaabc.particlesimulation.particle.BoundaryCondition;
+import de.javaabc.particlesimulation.particle.FixedParticle;
+import de.javaabc.particlesimulation.particle.ForceAccumulation;
+import de.javaabc.particlesimulation.particle.ForceKernel;
+import de.javaabc.particlesimulation.particle.Integration;
+import de.javaabc.particlesimulation.particle.PairForceAction;
+import de.javaabc.particlesimulation.particle.PairTraversal;
+import de.javaabc.particlesimulation.particle.Particle;
+import de.javaabc.particlesimulation.particle.ParticleContainer;
+import de.javaabc.particlesimulation.particle.SnapshotBuffer;
+import de.javaabc.particlesimulation.monitoring.TickPhase;
+import de.javaabc.particlesimulation.monitoring.TickStats;
+import de.javaabc.particlesimulation.util.math.Vec;
+
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * The core of a dot {@link Particle} simulation.
+ * The engine does not depend on Swing or AWT, so it can run headless without any display.
+ * Closing the engine stops its worker threads.
+ */
+public class SimulationEngine implements AutoCloseable {
+    /**
+     * the default mass of a particle in kg (unit doesn't matter though)
+     */
+    public static final double DEFAULT_PARTICLE_MASS = 1.0;
+
+    /**
+     * the default epsilon value for the Lennard-Jones-Potential computation of particles
+     */
+    public static final double DEFAULT_EPSILON = 0.0000001;
+
+    /**
+     * the default sigma value for the Lennard-Jones-Potential computation of particles
+     */
+    public static final double DEFAULT_SIGMA = 200.0;
+
+    /**
+     * the default gravitational force acting on each particle
+     */
+    public static final Vec DEFAULT_GRAVITY = new Vec(0.0, 0.1);
+
+    /**
+     * the default maximum distance in px any particle may move in one adaptive step
+     */
+    public static final double DEFAULT_MAX_DISPLACEMENT = 1.0;
+
+    /**
+     * the default maximum length of an adaptive step as multiple of the base time step
+     */
+    public static final double DEFAULT_MAX_STEP_SCALE = 100.0;
+
+    /**
+     * the minimum length of an adaptive step as multiple of the base time step, so the simulation never stalls
+     */
+    private static final double MIN_STEP_SCALE = 0.001;
+
+    /**
+     * the width and height of the simulated world in px
+     */
+    private final double width, height;
+
+    /**
+     * a {@link Vec}tor representing the gravitational force applied on each particle
+     */
+    private Vec gravity;
+
+    /**
+     * the container of particles
+     */
+    private final ParticleContainer particles;
+
+    /**
+     * the maximum distance to even compute forces between particles
+     */
+    private final double cutoffDistance;
+
+    /**
+     * the strategy to accumulate pair forces on multiple threads
+     */
+    private ForceAccumulation forceAccumulation = ForceAccumulation.WORKER_BUFFERS;
+
+    /**
+     * the strategy to find all particle pairs within the cutoff distance
+     */
+    private PairTraversal pairTraversal = PairTraversal.NEIGHBOR_LIST;
+
+    /**
+     * the implementation of the Lennard-Jones pair force computation
+     */
+    private ForceKernel forceKernel = ForceKernel.fromSystemProperty();
+
+    /**
+     * the strategy to run the per-particle phases of each tick
+     */
+    private Integration integration = Integration.FUSED;
+
+    /**
+     * the solver for the long-range gravitation between all particles, disabled by default
+     */
+    private final BarnesHut barnesHut;
+
+    /**
+     * the triple buffer of snapshots to draw from without touching the live particle state
+     */
+    private final SnapshotBuffer snapshots = new SnapshotBuffer();
+
+    /**
+     * the per-phase instrumentation of all ticks
+     */
+    private final TickStats stats = new TickStats();
+
+    /**
+     * the maximum distance in px any particle may move in one step, or zero for a fixed step
+     */
+    private double maxDisplacement;
+
+    /**
+     * the maximum length of an adaptive step as multiple of the base time step
+     */
+    private double maxStepScale = DEFAULT_MAX_STEP_SCALE;
+
+    /**
+     * the length of the last step as multiple of the base time step
+     */
+    private double stepScale = 1.0;
+
+    /**
+     * the sum of all steps computed so far in seconds
+     */
+    private double simulatedTime;
+
+    /**
+     * the number of ticks computed so far
+     */
+    private long tickCount;
+
+    /**
+     * Creates a new simulation engine.
+     *
+     * @param width          the width of the simulated world in px
+     * @param height         the height of the simulated world in px
+     * @param gravity        the gravitational force acting on each particle
+     * @param cutoffDistance the maximum distance to even compute forces between particles
+     */
+    public SimulationEngine(double width, double height, Vec gravity, double cutoffDistance) {
+        this.width = width;
+        this.height = height;
+        this.gravity = gravity;
+        this.cutoffDistance = cutoffDistance;
+
+        int blockWidth = (int) Math.ceil(width / cutoffDistance);
+        int blockHeight = (int) Math.ceil(height / cutoffDistance);
+        particles = new ParticleContainer(blockWidth, blockHeight, cutoffDistance);
+        barnesHut = new BarnesHut(particles.getStore());
+    }
+
+    /**
+     * Performs one calculation in this simulation.
+     * With an adaptive step, see {@link #setAdaptiveStep}, the step is a multiple of the given time, chosen from the current speeds and forces.
+     *
+     * @param dt the base time between two ticks in seconds
+     */
+    public void tick(double dt) {
+        synchronized (particles) {
+            var store = particles.getStore();
+            var boundaryCondition = particles.getBoundaryCondition();
+            long start = stats.startTick(tickCount + 1);
+            particles.applyRemovals();
+            tickPairForces();
+            long t = stats.endPhase(TickPhase.PAIR_FORCES, start);
+            barnesHut.applyForces();
+            t = stats.endPhase(TickPhase.LONG_RANGE, t);
+            boundaryCondition.applyForces(store, width, height, cutoffDistance);
+            t = stats.endPhase(TickPhase.BOUNDARY, t);
+            // The speeds complete the previous step, so they use its length, the next length is chosen from the updated speeds
+            if (integration == Integration.FUSED) {
+                stepScale = clampStepScale(store.tickSpringsAndSpeed(dt * stepScale, dt, maxDisplacement));
+                t = stats.endPhase(TickPhase.SPEED, t);
+                store.tickPosAndReset(dt, stepScale, gravity);
+                t = stats.endPhase(TickPhase.POSITION, t);
+            } else {
+                store.tickSpringForces();
+                t = stats.endPhase(TickPhase.SPECIAL_FORCES, t);
+                store.tickSpeed(dt * stepScale);
+                stepScale = clampStepScale(maxDisplacement > 0.0 ? store.stepScale(dt, maxDisplacement) : 1.0);
+                t = stats.endPhase(TickPhase.SPEED, t);
+                store.tickPos(dt, stepScale);
+                t = stats.endPhase(TickPhase.POSITION, t);
+                boundaryCondition.confine(store);
+                t = stats.endPhase(TickPhase.CONFINE, t);
+                store.tickReset(gravity);
+                t = stats.endPhase(TickPhase.RESET, t);
+            }
+            particles.updateBlocks();
+            tickCount++;
+            simulatedTime += dt * stepScale;
+            stats.endTick(TickPhase.UPDATE_BLOCKS, start, t, tickCount, particles, pairTraversal == PairTraversal.NEIGHBOR_LIST);
+        }
+    }
+
+    /**
+     * @return the length of the next step as multiple of the base time step, limited to the allowed range, or 1 for a fixed step
+     */
+    private double clampStepScale(double scale) {
+        if (maxDisplacement <= 0.0)
+            return 1.0;
+        return Math.max(MIN_STEP_SCALE, Math.min(maxStepScale, scale));
+    }
+
+    /**
+     * Computes the Lennard-Jones-Potential between all particle pairs using the selected strategies, and from all ghosts.
+     */
+    private void tickPairForces() {
+        var forceTable = particles.getForceTable();
+        boolean tabulated = forceKernel == ForceKernel.TABULATED;
+        if (tabulated)
+            forceTable.update();
+        PairForceAction action = tabulated ? forceTable::tickForceTo : Particle::tickForceTo;
+
+        switch (pairTraversal) {
+            case BLOCKS -> {
+                switch (forceAccumulation) {
+                    case SYNCHRONIZED -> particles.forEachPair(tabulated ? forceTable::tickForceTo : Particle::tickForceTo);
+                    case WORKER_BUFFERS -> particles.forEachPairBuffered(action);
+                }
+            }
+            case HALF_SHELL -> particles.forEachPairHalfShell(action);
+            case NEIGHBOR_LIST -> {
+                if (forceKernel == ForceKernel.VECTOR)
+                    particles.tickNeighborForcesVectorized();
+                else
+                    particles.forEachNeighborPair(action);
+            }
+            case DOMAINS -> particles.tickDomainForces(forceKernel);
+        }
+        particles.tickGhostForces(forceKernel);
+    }
+
+    /**
+     * Adds a particle at a given position.
+     *
+     * @param pos the position of the particle to add
+     * @return the new particle
+     */
+    public Particle addParticleAt(Vec pos) {
+        synchronized (particles) {
+            var p = new Particle(particles.getStore(), pos, DEFAULT_PARTICLE_MASS, DEFAULT_EPSILON, DEFAULT_SIGMA);
+            particles.add(p);
+            return p;
+        }
+    }
+
+    /**
+     * Adds a non-moving particle at a given position.
+     *
+     * @param pos the position of the particle to add
+     * @return the new particle
+     */
+    public Particle addFixedParticleAt(Vec pos) {
+        synchronized (particles) {
+            var p = new FixedParticle(particles.getStore(), pos, DEFAULT_PARTICLE_MASS, DEFAULT_EPSILON, DEFAULT_SIGMA);
+            particles.add(p);
+            return p;
+        }
+    }
+
+    /**
+     * Adds a particle with custom parameters at a given position.
+     *
+     * @param pos     the position of the particle to add
+     * @param mass    the mass of the particle in kg
+     * @param epsilon the depth of the Lennard-Jones-Potential
+     * @param sigma   the particle distance where the Lennard-Jones-Potential is equal to zero
+     * @param fixed   the option to never move the particle
+     * @return the new particle
+     */
+    public Particle addParticle(Vec pos, double mass, double epsilon, double sigma, boolean fixed) {
+        synchronized (particles) {
+            var store = particles.getStore();
+            var p = fixed ? new FixedParticle(store, pos, mass, epsilon, sigma) : new Particle(store, pos, mass, epsilon, sigma);
+            particles.add(p);
+            return p;
+        }
+    }
+
+    /**
+     * Connects two particles with a spring, see {@link Particle#connectWith}. Waits for a running tick.
+     * Particles that were removed in the meantime are not connected.
+     *
+     * @param p     the particle that makes the connection
+     * @param other the particle to connect with
+     */
+    public void connectParticles(Particle p, Particle other) {
+        synchronized (particles) {
+            p.connectWith(other);
+        }
+    }
+
+    /**
+     * Removes many particles at once. Waits for a running tick, see {@link #removeParticlesLater} to return immediately.
+     *
+     * @param ps the particles to remove
+     */
+    public void removeParticles(Collection<Particle> ps) {
+        synchronized (particles) {
+            particles.removeAll(ps);
+        }
+    }
+
+    /**
+     * Removes many particles in one batch before the next tick, without waiting for a running tick.
+     *
+     * @param ps the particles to remove
+     */
+    public void removeParticlesLater(Collection<Particle> ps) {
+        particles.removeLater(ps);
+    }
+
+    /**
+     * Copies the positions and connections of all particles into a new render snapshot, see {@link #getSnapshots()}.
+     * Must only be called by the thread that runs the ticks, between two ticks.
+     */
+    public void publishSnapshot() {
+        synchronized (particles) {
+            particles.applyRemovals(); // Also while paused
+            snapshots.publish(particles.getStore(), tickCount, simulatedTime);
+        }
+    }
+
+    /**
+     * Copies the complete state of this simulation. Only the memory copy happens while holding the lock,
+     * so the checkpoint can be written on another thread while the ticks go on.
+     *
+     * @return a detached checkpoint of the current state
+     */
+    public Checkpoint checkpoint() {
+        synchronized (particles) {
+            return new Checkpoint(width, height, cutoffDistance, gravity, particles.getBoundaryCondition(), tickCount, simulatedTime,
+                    new Checkpoint.AdaptiveStep(stepScale, maxDisplacement, maxStepScale),
+                    new Checkpoint.Gravitation(barnesHut.getGravitationalConstant(), barnesHut.getTheta(), barnesHut.getSoftening()),
+                    particles.getStore().getSpeciesTable().copy(), particles.copyData());
+        }
+    }
+
+    /**
+     * Replaces the complete state of this simulation by a checkpoint, including the adaptive step, the long-range gravitation
+     * and all species with their overridden interactions. The particles are loaded in bulk, see {@link ParticleContainer#restore}.
+     *
+     * @param checkpoint the checkpoint to restore
+     * @throws IllegalArgumentException if the checkpoint was taken from a world with a different size or cutoff distance
+     */
+    public void restore(Checkpoint checkpoint) {
+        if (checkpoint.getWidth() != width || checkpoint.getHeight() != height || checkpoint.getCutoffDistance() != cutoffDistance)
+            throw new IllegalArgumentException("Checkpoint of a " + checkpoint.getWidth() + " x " + checkpoint.getHeight()
+                    + " world with cutoff " + checkpoint.getCutoffDistance() + " does not match this " + width + " x " + height
+                    + " world with cutoff " + cutoffDistance);
+
+        synchronized (particles) {
+            gravity = checkpoint.getGravity();
+            tickCount = checkpoint.getTickCount();
+            simulatedTime = checkpoint.getSimulatedTime();
+            var adaptiveStep = checkpoint.getAdaptiveStep();
+            stepScale = adaptiveStep.stepScale();
+            maxDisplacement = adaptiveStep.maxDisplacement();
+            maxStepScale = adaptiveStep.maxStepScale();
+            var gravitation = checkpoint.getGravitation();
+            barnesHut.setGravitationalConstant(gravitation.gravitationalConstant());
+            barnesHut.setTheta(gravitation.theta());
+            barnesHut.setSoftening(gravitation.softening());
+            particles.getStore().getSpeciesTable().restore(checkpoint.getInteractions());
+            particles.setBoundaryCondition(checkpoint.getBoundaryCondition());
+            particles.restore(checkpoint.getParticles(), gravity);
+        }
+    }
+
+    /**
+     * Creates a new simulation engine from a checkpoint.
+     *
+     * @param checkpoint the checkpoint to restore
+     * @return the new engine
+     */
+    public static SimulationEngine fromCheckpoint(Checkpoint checkpoint) {
+        var engine = new SimulationEngine(checkpoint.getWidth(), checkpoint.getHeight(), checkpoint.getGravity(), checkpoint.getCutoffDistance());
+        engine.restore(checkpoint);
+        return engine;
+    }
+
+    /**
+     * Stops all worker threads owned by this engine. The engine stays usable, the workers are started again when needed.
+     */
+    @Override
+    public void close() {
+        synchronized (particles) {
+            particles.shutdown();
+        }
+    }
+
+    /**
+     * Tries to find a particle at a given position.
+     *
+     * @param pos the position to find a particle at
+     * @return an {@link Optional} containing the found particle or an empty Optional if nothing found
+     */
+    public Optional<Particle> findParticle(Vec pos) {
+        return particles.find(pos);
+    }
+
+    public ParticleContainer getParticles() {
+        return particles;
+    }
+
+    public void toggleGravity() {
+        gravity = gravity.sqLength() == 0.0 ? DEFAULT_GRAVITY : Vec.ZERO; // By value, a restored gravity is a new instance
+    }
+
+    public Vec getGravity() {
+        return gravity;
+    }
+
+    public double getCutoffDistance() {
+        return cutoffDistance;
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the solver for the long-range gravitation between all particles, see {@link BarnesHut#setGravitationalConstant}
+     */
+    public BarnesHut getBarnesHut() {
+        return barnesHut;
+    }
+
+    /**
+     * @return the triple buffer of render snapshots, to be read by a single painting thread
+     */
+    public SnapshotBuffer getSnapshots() {
+        return snapshots;
+    }
+
+    /**
+     * @return the per-phase instrumentation of all ticks
+     */
+    public TickStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Enables or disables the adaptive step. With an adaptive step, each tick advances the simulation by the longest multiple of the base time step
+     * in which no particle moves further than a given distance, between 0.001 and {@link #setMaxStepScale} times the base step.
+     * Calm phases then advance much faster in simulated time, while close encounters are resolved with shorter steps.
+     *
+     * @param maxDisplacement the maximum distance in px any particle may move in one step, or zero for a fixed step
+     */
+    public void setAdaptiveStep(double maxDisplacement) {
+        synchronized (particles) {
+            this.maxDisplacement = Math.max(0.0, maxDisplacement);
+        }
+    }
+
+    /**
+     * @return the maximum distance in px any particle may move in one step, or zero for a fixed step
+     */
+    public double getMaxDisplacement() {
+        return maxDisplacement;
+    }
+
+    /**
+     * @param maxStepScale the maximum length of an adaptive step as multiple of the base time step
+     */
+    public void setMaxStepScale(double maxStepScale) {
+        this.maxStepScale = maxStepScale;
+    }
+
+    public double getMaxStepScale() {
+        return maxStepScale;
+    }
+
+    /**
+     * @return the length of the last step as multiple of the base time step
+     */
+    public double getStepScale() {
+        return stepScale;
+    }
+
+    /**
+     * @return the sum of all steps computed so far in seconds
+     */
+    public double getSimulatedTime() {
+        return simulatedTime;
+    }
+
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    public void setForceAccumulation(ForceAccumulation forceAccumulation) {
+        this.forceAccumulation = forceAccumulation;
+    }
+
+    /**
+     * Selects the implementation of the Lennard-Jones pair force computation.
+     * Falls back to {@link ForceKernel#SCALAR} with a warning if the vector kernel is requested but not available.
+     *
+     * @param forceKernel the kernel to use
+     * @throws IllegalArgumentException if the kernel does not support the current pair traversal, see {@link ForceKernel#supports}
+     */
+    public void setForceKernel(ForceKernel forceKernel) {
+        if (forceKernel == ForceKernel.VECTOR && !ForceKernel.isVectorAvailable()) {
+            System.err.println("Vector API not available, start with --add-modules jdk.incubator.vector; Using " + ForceKernel.SCALAR);
+            forceKernel = ForceKernel.SCALAR;
+        }
+        if (!forceKernel.supports(pairTraversal))
+            throw new IllegalArgumentException("The " + forceKernel + " kernel does not support the " + pairTraversal + " traversal");
+        this.forceKernel = forceKernel;
+    }
+
+    public ForceKernel getForceKernel() {
+        return forceKernel;
+    }
+
+    /**
+     * Changes the behaviour of particles at the edges of the simulated world.
+     *
+     * @param boundaryCondition the new boundary condition
+     * @throws IllegalArgumentException if the world is periodic and too small, see {@link ParticleContainer#setBoundaryCondition}
+     */
+    public void setBoundaryCondition(BoundaryCondition boundaryCondition) {
+        synchronized (particles) {
+            particles.setBoundaryCondition(boundaryCondition);
+        }
+    }
+
+    /**
+     * Selects how all particle pairs within the cutoff distance are found.
+     *
+     * @param pairTraversal the traversal to use
+     * @throws IllegalArgumentException if the current force kernel does not support the traversal, see {@link ForceKernel#supports}
+     */
+    public void setPairTraversal(PairTraversal pairTraversal) {
+        if (!forceKernel.supports(pairTraversal))
+            throw new IllegalArgumentException("The " + forceKernel + " kernel does not support the " + pairTraversal + " traversal");
+        this.pairTraversal = pairTraversal;
+    }
+
+    public PairTraversal getPairTraversal() {
+        return pairTraversal;
+    }
+
+    /**
+     * Selects how the per-particle phases of each tick are run. Both strategies compute identical results.
+     *
+     * @param integration the strategy to use
+     */
+    public void setIntegration(Integration integration) {
+        this.integration = integration;
+    }
+
+    public Integration getIntegration() {
+        return integration;
+    }
+}
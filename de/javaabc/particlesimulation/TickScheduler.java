@@ -0,0 +1,243 @@
+package de.javaabc.particlesimulation;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A stepping scheduler that runs a tick action at a fixed target rate on a dedicated thread.
+ * Instead of scheduling one task per tick, the thread wakes up, runs all ticks that are owed since the last wake-up in one tight batch
+ * and then sleeps until the next tick is due. The achieved ticks per second are measured and can be compared with the target.
+ * If a tick or the action after a batch fails, the scheduler stops and keeps the exception, see {@link #getFailure()}.
+ */
+public class TickScheduler {
+    /**
+     * What to do if the ticks cannot keep up with the target rate.
+     */
+    public enum OverrunPolicy {
+        /**
+         * Owed ticks beyond the maximum batch size are kept and run in later batches, so the simulation time never falls behind the wall clock
+         * as long as the overload is temporary.
+         */
+        CATCH_UP,
+
+        /**
+         * Owed ticks beyond the maximum batch size are dropped, so the simulation time runs slower than the wall clock while overloaded.
+         */
+        SLOW_DOWN
+    }
+
+    /**
+     * the interval in ns to measure the achieved ticks per second over
+     */
+    private static final long MEASURE_INTERVAL_NANOS = 1_000_000_000L;
+
+    /**
+     * the target number of ticks per second
+     */
+    private final double tps;
+
+    /**
+     * the target time between two ticks in ns
+     */
+    private final double nanosPerTick;
+
+    /**
+     * the maximum number of ticks to run in one batch
+     */
+    private final int maxBatch;
+
+    /**
+     * the behaviour if the ticks cannot keep up with the target rate
+     */
+    private final OverrunPolicy policy;
+
+    /**
+     * the action to run on each tick
+     */
+    private final Runnable tick;
+
+    /**
+     * the action to run after each batch, e.g. to request a new frame
+     */
+    private final Runnable afterBatch;
+
+    /**
+     * the thread that runs all ticks
+     */
+    private Thread thread;
+
+    /**
+     * the option to keep running
+     */
+    private volatile boolean running;
+
+    /**
+     * the total number of ticks run and dropped so far
+     */
+    private volatile long ticks, droppedTicks;
+
+    /**
+     * the number of ticks per second achieved in the last measure interval
+     */
+    private volatile double achievedTps;
+
+    /**
+     * the first exception thrown by a tick or the action after a batch, or null
+     */
+    private volatile RuntimeException failure;
+
+    /**
+     * Creates a new scheduler that is not started yet.
+     *
+     * @param tps        the target number of ticks per second
+     * @param maxBatch   the maximum number of ticks to run in one batch
+     * @param policy     the behaviour if the ticks cannot keep up with the target rate
+     * @param tick       the action to run on each tick
+     * @param afterBatch the action to run after each batch
+     * @throws IllegalArgumentException if the rate or the batch size is not positive
+     */
+    public TickScheduler(double tps, int maxBatch, OverrunPolicy policy, Runnable tick, Runnable afterBatch) {
+        if (tps <= 0.0)
+            throw new IllegalArgumentException("Ticks per second must be positive, but are " + tps);
+        if (maxBatch <= 0)
+            throw new IllegalArgumentException("Maximum batch size must be positive, but is " + maxBatch);
+
+        this.tps = tps;
+        nanosPerTick = 1E9 / tps;
+        this.maxBatch = maxBatch;
+        this.policy = policy;
+        this.tick = tick;
+        this.afterBatch = afterBatch;
+    }
+
+    /**
+     * Starts running ticks on a new daemon thread.
+     *
+     * @throws IllegalStateException if this scheduler is already running
+     */
+    public synchronized void start() {
+        if (running)
+            throw new IllegalStateException("Scheduler is already running");
+
+        failure = null;
+        running = true;
+        thread = new Thread(this::loop, "tick-scheduler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops running ticks after the current batch.
+     */
+    public synchronized void stop() {
+        running = false;
+        if (thread != null)
+            LockSupport.unpark(thread);
+    }
+
+    /**
+     * The loop of the scheduler thread.
+     */
+    private void loop() {
+        long start = System.nanoTime();
+        long due = 0; // the number of ticks due since start, including dropped ones
+        long measureStart = start, measureTicks = ticks;
+
+        while (running) {
+            long now = System.nanoTime();
+            long owed = (long) ((now - start) / nanosPerTick) - due;
+            if (owed <= 0) {
+                LockSupport.parkNanos(start + (long) ((due + 1) * nanosPerTick) - now);
+                continue;
+            }
+
+            int batch = (int) Math.min(owed, maxBatch);
+            for (int i = 0; i < batch; i++) {
+                try {
+                    tick.run();
+                } catch (RuntimeException e) {
+                    fail(e);
+                    return;
+                }
+                ticks++;
+                due++;
+            }
+
+            if (owed > batch && policy == OverrunPolicy.SLOW_DOWN) {
+                droppedTicks += owed - batch;
+                due += owed - batch;
+            }
+
+            try {
+                afterBatch.run();
+            } catch (RuntimeException e) {
+                fail(e);
+                return;
+            }
+
+            if (now - measureStart >= MEASURE_INTERVAL_NANOS) {
+                achievedTps = (ticks - measureTicks) * 1E9 / (now - measureStart);
+                measureStart = now;
+                measureTicks = ticks;
+            }
+        }
+    }
+
+    /**
+     * Records the exception that stopped the scheduler thread.
+     *
+     * @param e the exception thrown by a tick or the action after a batch
+     */
+    private void fail(RuntimeException e) {
+        System.err.println("Tick scheduler stopped after " + ticks + " ticks");
+        e.printStackTrace();
+        failure = e;
+        achievedTps = 0.0;
+        running = false;
+    }
+
+    /**
+     * @return the exception that stopped this scheduler, or null if no tick failed
+     */
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return the target number of ticks per second
+     */
+    public double getTps() {
+        return tps;
+    }
+
+    /**
+     * @return the number of ticks per second achieved in the last second
+     */
+    public double getAchievedTps() {
+        return achievedTps;
+    }
+
+    /**
+     * @return the total number of ticks run successfully so far
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * @return the total number of ticks dropped by the {@link OverrunPolicy#SLOW_DOWN} policy so far
+     */
+    public long getDroppedTicks() {
+        return droppedTicks;
+    }
+
+    /**
+     * @return a short report of the achieved and the target rate, or of the failure that stopped this scheduler
+     */
+    @Override
+    public String toString() {
+        var failure = this.failure;
+        if (failure != null)
+            return "Stopped after " + ticks + " ticks: " + failure;
+        return String.format("%.0f / %.0f ticks/s (%.0f %%), %d ticks dropped", achievedTps, tps, 100.0 * achievedTps / tps, droppedTicks);
+    }
+}
@@ -11,6 +11,11 @@ public class Display extends JPanel {
      */
     private final Simulation simulation;
 
+    /**
+     * the option to draw particles with the {@link RasterRenderer} instead of Java2D shapes
+     */
+    private boolean rasterized;
+
     public Display(Simulation simulation) {
         super();
         this.simulation = simulation;
@@ -22,4 +27,15 @@ public class Display extends JPanel {
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         simulation.render(g2);
     }
+
+    /**
+     * Switches between drawing particles with the {@link RasterRenderer} and the {@link ParticleRenderer}.
+     */
+    public void toggleRasterized() {
+        rasterized = !rasterized;
+    }
+
+    public boolean isRasterized() {
+        return rasterized;
+    }
 }
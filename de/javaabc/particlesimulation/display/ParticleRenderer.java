@@ -0,0 +1,75 @@
+package de.javaabc.particlesimulation.display;
+
+import de.javaabc.particlesimulation.particle.Particle;
+import de.javaabc.particlesimulation.particle.ParticleContainer;
+import de.javaabc.particlesimulation.particle.RenderSnapshot;
+import de.javaabc.particlesimulation.particle.SnapshotBuffer;
+
+import java.awt.*;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+
+import static de.javaabc.particlesimulation.particle.Particle.RENDER_RADIUS;
+
+/**
+ * Draws all {@link Particle}s of a {@link ParticleContainer} and their spring connections.
+ * Only the latest {@link RenderSnapshot} is drawn, so painting never reads the live simulation state and never blocks a tick.
+ */
+public class ParticleRenderer implements Renderable {
+    /**
+     * the container of particles, only used for its block layout
+     */
+    private final ParticleContainer particles;
+
+    /**
+     * the triple buffer of snapshots to draw
+     */
+    private final SnapshotBuffer snapshots;
+
+    /**
+     * Creates a new particle renderer.
+     *
+     * @param particles the container of particles, only used for its block layout
+     * @param snapshots the triple buffer of snapshots to draw
+     */
+    public ParticleRenderer(ParticleContainer particles, SnapshotBuffer snapshots) {
+        this.particles = particles;
+        this.snapshots = snapshots;
+    }
+
+    @Override
+    public void render(Graphics2D g) {
+        var snapshot = snapshots.latest();
+
+        g.setColor(Color.BLACK);
+        var line = new Line2D.Float();
+        for (int c = 0; c < snapshot.connectionCount(); c++) {
+            int i = snapshot.connectionFrom(c), j = snapshot.connectionTo(c);
+            line.setLine(snapshot.x(i), snapshot.y(i), snapshot.x(j), snapshot.y(j));
+            g.draw(line);
+        }
+
+        // Dot particles do not have a size, but in order to visualize we use a circle with predefined radius
+        var circle = new Ellipse2D.Double();
+        for (int i = 0; i < snapshot.size(); i++) {
+            g.setColor(snapshot.isFixed(i) ? Color.ORANGE : Color.BLACK);
+            circle.setFrame(snapshot.x(i) - RENDER_RADIUS, snapshot.y(i) - RENDER_RADIUS, RENDER_RADIUS * 2.0, RENDER_RADIUS * 2.0);
+            g.fill(circle);
+        }
+    }
+
+    /**
+     * Renders a grid representing the blocks of the particle container.
+     *
+     * @param g the graphics to draw
+     */
+    public void renderGrid(Graphics2D g) {
+        double blockSize = particles.getBlockSize();
+        g.setStroke(new BasicStroke(2F));
+        g.setColor(Color.GRAY);
+        for (int y = 0; y < particles.getHeight(); y++)
+            for (int x = 0; x < particles.getWidth(); x++)
+                g.draw(new Rectangle2D.Double(x * blockSize, y * blockSize, blockSize, blockSize));
+    }
+}
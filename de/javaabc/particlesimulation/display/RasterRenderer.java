@@ -0,0 +1,236 @@
+package de.javaabc.particlesimulation.display;
+
+import de.javaabc.particlesimulation.particle.Particle;
+import de.javaabc.particlesimulation.particle.RenderSnapshot;
+import de.javaabc.particlesimulation.particle.SnapshotBuffer;
+
+import java.awt.*;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import static de.javaabc.particlesimulation.particle.Particle.RENDER_RADIUS;
+
+/**
+ * Draws all {@link Particle}s of the latest {@link RenderSnapshot} into an {@code int[]}-backed image instead of filling Java2D shapes.
+ * Each particle is a pre-rendered antialiased sprite that is alpha blended directly into the pixels.
+ * The image is split into horizontal tiles, particles are sorted into all tiles their sprite overlaps,
+ * and the tiles are rasterized in parallel, so no two threads ever write the same pixel.
+ * All spring connections are drawn below the particles as one single path.
+ */
+public class RasterRenderer implements Renderable {
+    /**
+     * the number of pixel rows of one tile
+     */
+    private static final int TILE_HEIGHT = 32;
+
+    /**
+     * the colors of the background, movable particles and fixed particles as RGB
+     */
+    private static final int BACKGROUND = 0xFFFFFF, PARTICLE = 0x000000, FIXED_PARTICLE = Color.ORANGE.getRGB() & 0xFFFFFF;
+
+    /**
+     * the number of subsamples per axis and pixel to compute the coverage of the sprite
+     */
+    private static final int SUBSAMPLES = 4;
+
+    /**
+     * the triple buffer of snapshots to draw
+     */
+    private final SnapshotBuffer snapshots;
+
+    /**
+     * the image all particles are drawn into and its size
+     */
+    private final BufferedImage image;
+    private final int width, height;
+
+    /**
+     * the RGB pixels of the image
+     */
+    private final int[] pixels;
+
+    /**
+     * the distance of the sprite center to its edges and the width and height of the sprite in px
+     */
+    private final int spriteRadius, spriteSize;
+
+    /**
+     * the coverage of each sprite pixel, from 0 (transparent) to 256 (opaque)
+     */
+    private final int[] spriteAlpha;
+
+    /**
+     * the number of tiles
+     */
+    private final int tileCount;
+
+    /**
+     * the offsets of each tile in the sorted particle indices
+     */
+    private final int[] tileStart;
+
+    /**
+     * the snapshot indices of all particles, sorted by tile, with each particle once per overlapped tile
+     */
+    private int[] tileParticles = new int[0];
+
+    /**
+     * the reused path of all spring connections
+     */
+    private final Path2D.Float connections = new Path2D.Float();
+
+    /**
+     * Creates a new raster renderer.
+     *
+     * @param snapshots the triple buffer of snapshots to draw
+     * @param width     the width of the drawn area in px
+     * @param height    the height of the drawn area in px
+     */
+    public RasterRenderer(SnapshotBuffer snapshots, int width, int height) {
+        this.snapshots = snapshots;
+        this.width = width;
+        this.height = height;
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        spriteRadius = (int) Math.ceil(RENDER_RADIUS);
+        spriteSize = 2 * spriteRadius + 1;
+        spriteAlpha = new int[spriteSize * spriteSize];
+        for (int sy = 0; sy < spriteSize; sy++)
+            for (int sx = 0; sx < spriteSize; sx++) {
+                int covered = 0;
+                for (int i = 0; i < SUBSAMPLES; i++)
+                    for (int j = 0; j < SUBSAMPLES; j++) {
+                        double dx = sx + (j + 0.5) / SUBSAMPLES - (spriteRadius + 0.5);
+                        double dy = sy + (i + 0.5) / SUBSAMPLES - (spriteRadius + 0.5);
+                        if (dx * dx + dy * dy <= RENDER_RADIUS * RENDER_RADIUS)
+                            covered++;
+                    }
+                spriteAlpha[sy * spriteSize + sx] = covered * 256 / (SUBSAMPLES * SUBSAMPLES);
+            }
+
+        tileCount = (height + TILE_HEIGHT - 1) / TILE_HEIGHT;
+        tileStart = new int[tileCount + 1];
+    }
+
+    @Override
+    public void render(Graphics2D g) {
+        var snapshot = snapshots.latest();
+
+        IntStream.range(0, tileCount).parallel().forEach(t ->
+                Arrays.fill(pixels, t * TILE_HEIGHT * width, Math.min(height, (t + 1) * TILE_HEIGHT) * width, BACKGROUND));
+
+        renderConnections(snapshot);
+        sortIntoTiles(snapshot);
+        IntStream.range(0, tileCount).parallel().forEach(t -> renderTile(snapshot, t));
+
+        g.drawImage(image, 0, 0, null);
+    }
+
+    /**
+     * Draws all spring connections as one path.
+     *
+     * @param snapshot the snapshot to draw
+     */
+    private void renderConnections(RenderSnapshot snapshot) {
+        if (snapshot.connectionCount() == 0)
+            return;
+
+        connections.reset();
+        for (int c = 0; c < snapshot.connectionCount(); c++) {
+            int i = snapshot.connectionFrom(c), j = snapshot.connectionTo(c);
+            connections.moveTo(snapshot.x(i), snapshot.y(i));
+            connections.lineTo(snapshot.x(j), snapshot.y(j));
+        }
+
+        var ig = image.createGraphics();
+        ig.setColor(new Color(PARTICLE));
+        ig.draw(connections);
+        ig.dispose();
+    }
+
+    /**
+     * @return the top pixel row of the sprite of a particle
+     */
+    private int spriteTop(RenderSnapshot snapshot, int i) {
+        return (int) Math.floor(snapshot.y(i)) - spriteRadius;
+    }
+
+    /**
+     * @return the left pixel column of the sprite of a particle
+     */
+    private int spriteLeft(RenderSnapshot snapshot, int i) {
+        return (int) Math.floor(snapshot.x(i)) - spriteRadius;
+    }
+
+    /**
+     * Sorts the indices of all visible particles into all tiles their sprite overlaps using a counting sort.
+     *
+     * @param snapshot the snapshot to draw
+     */
+    private void sortIntoTiles(RenderSnapshot snapshot) {
+        Arrays.fill(tileStart, 0);
+        int entries = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            int left = spriteLeft(snapshot, i), top = spriteTop(snapshot, i);
+            if (left + spriteSize <= 0 || left >= width || top + spriteSize <= 0 || top >= height)
+                continue;
+
+            for (int t = Math.max(0, top / TILE_HEIGHT), last = Math.min(tileCount - 1, (top + spriteSize - 1) / TILE_HEIGHT); t <= last; t++) {
+                tileStart[t + 1]++;
+                entries++;
+            }
+        }
+
+        for (int t = 0; t < tileCount; t++)
+            tileStart[t + 1] += tileStart[t];
+        if (tileParticles.length < entries)
+            tileParticles = new int[Math.max(entries, 2 * tileParticles.length)];
+
+        int[] next = Arrays.copyOf(tileStart, tileCount);
+        for (int i = 0; i < snapshot.size(); i++) {
+            int left = spriteLeft(snapshot, i), top = spriteTop(snapshot, i);
+            if (left + spriteSize <= 0 || left >= width || top + spriteSize <= 0 || top >= height)
+                continue;
+
+            for (int t = Math.max(0, top / TILE_HEIGHT), last = Math.min(tileCount - 1, (top + spriteSize - 1) / TILE_HEIGHT); t <= last; t++)
+                tileParticles[next[t]++] = i;
+        }
+    }
+
+    /**
+     * Blends the sprites of all particles overlapping a tile into the pixels of this tile.
+     *
+     * @param snapshot the snapshot to draw
+     * @param t        the index of the tile
+     */
+    private void renderTile(RenderSnapshot snapshot, int t) {
+        int minRow = t * TILE_HEIGHT, maxRow = Math.min(height, minRow + TILE_HEIGHT);
+        for (int k = tileStart[t]; k < tileStart[t + 1]; k++) {
+            int i = tileParticles[k];
+            int left = spriteLeft(snapshot, i), top = spriteTop(snapshot, i);
+            int color = snapshot.isFixed(i) ? FIXED_PARTICLE : PARTICLE;
+            int srcRb = color & 0xFF00FF, srcG = color & 0x00FF00;
+
+            int fromRow = Math.max(minRow, top), toRow = Math.min(maxRow, top + spriteSize);
+            int fromColumn = Math.max(0, left), toColumn = Math.min(width, left + spriteSize);
+            for (int row = fromRow; row < toRow; row++) {
+                int sprite = (row - top) * spriteSize - left;
+                int pixel = row * width;
+                for (int column = fromColumn; column < toColumn; column++) {
+                    int a = spriteAlpha[sprite + column];
+                    if (a == 0)
+                        continue;
+
+                    int dst = pixels[pixel + column];
+                    int rb = (srcRb * a + (dst & 0xFF00FF) * (256 - a)) >>> 8 & 0xFF00FF;
+                    int g = (srcG * a + (dst & 0x00FF00) * (256 - a)) >>> 8 & 0x00FF00;
+                    pixels[pixel + column] = rb | g;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package de.javaabc.particlesimulation.distributed;
+
+import de.javaabc.particlesimulation.SimulationEngine;
+import de.javaabc.particlesimulation.particle.BoundaryCondition;
+import de.javaabc.particlesimulation.particle.GhostParticles;
+import de.javaabc.particlesimulation.particle.Particle;
+import de.javaabc.particlesimulation.util.math.IntVec;
+import de.javaabc.particlesimulation.util.math.Vec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * One rank of a simulation that is distributed over several processes.
+ * <p>
+ * The block grid is split into vertical slabs of block columns, one per rank, and each rank only holds the particles of its own slab.
+ * Every rank is connected to the ranks of its left and right slab over TCP. Each tick consists of two exchanges with both neighbors:
+ * <ol>
+ *     <li>The particles of the outermost owned block columns are sent as halo. The received halo particles are added as fixed ghost particles,
+ *     so the local {@link SimulationEngine} computes all pair forces on the owned particles, and removed again after the tick.</li>
+ *     <li>All particles that left the slab during the tick are removed and sent to the rank that owns them now.</li>
+ * </ol>
+ * Each exchange waits for the messages of both neighbors of the same tick, which is a barrier between neighbored ranks.
+ * Spring connections are not sent, so they are dropped when a particle migrates. Periodic worlds are not supported.
+ */
+public class DistributedEngine implements Closeable {
+    /**
+     * the phase of the halo exchange before the forces are computed
+     */
+    private static final int HALO = 0;
+
+    /**
+     * the phase of the migration after the particles moved
+     */
+    private static final int MIGRATION = 1;
+
+    /**
+     * the time to wait between two attempts to connect to a neighbored rank that is not listening yet, in ms
+     */
+    private static final long CONNECT_RETRY_MILLIS = 50L;
+
+    /**
+     * the number of attempts to connect to a neighbored rank
+     */
+    private static final int CONNECT_ATTEMPTS = 200;
+
+    /**
+     * the local simulation that holds the owned particles and the ghost particles
+     */
+    private final SimulationEngine engine;
+
+    /**
+     * the index of this rank and the total number of ranks
+     */
+    private final int rank, rankCount;
+
+    /**
+     * the first owned block column and the last owned block column, exclusive
+     */
+    private final int minColumn, maxColumn;
+
+    /**
+     * the links to the ranks of the left and right slab, or null at the edges of the world
+     */
+    private final NeighborLink left, right;
+
+    /**
+     * all links to neighbored ranks
+     */
+    private final List<NeighborLink> links = new ArrayList<>();
+
+    /**
+     * the selector to drive the non-blocking exchanges over all links
+     */
+    private final Selector selector;
+
+    /**
+     * the number of ticks computed so far
+     */
+    private long tickCount;
+
+    /**
+     * Creates a new rank and connects it to its neighbored ranks.
+     * Rank r listens on {@code basePort + r} on localhost, connects to its left neighbor and accepts the connection of its right neighbor.
+     *
+     * @param engine    the local simulation, spanning the whole world
+     * @param rank      the index of this rank, starting at zero
+     * @param rankCount the total number of ranks
+     * @param basePort  the port of rank 0
+     * @throws IOException              if a neighbored rank cannot be connected
+     * @throws IllegalArgumentException if the rank is out of range, there are more ranks than block columns or the world is periodic
+     */
+    public DistributedEngine(SimulationEngine engine, int rank, int rankCount, int basePort) throws IOException {
+        int columns = engine.getParticles().getWidth();
+        if (rank < 0 || rank >= rankCount)
+            throw new IllegalArgumentException("Rank " + rank + " is out of range for " + rankCount + " ranks");
+        if (rankCount > columns)
+            throw new IllegalArgumentException("Cannot split " + columns + " block columns into " + rankCount + " ranks");
+        if (engine.getParticles().getBoundaryCondition() == BoundaryCondition.PERIODIC)
+            throw new IllegalArgumentException("A distributed world cannot be periodic");
+
+        this.engine = engine;
+        this.rank = rank;
+        this.rankCount = rankCount;
+        minColumn = rank * columns / rankCount;
+        maxColumn = (rank + 1) * columns / rankCount;
+
+        selector = Selector.open();
+        try (var server = ServerSocketChannel.open()) {
+            if (rank + 1 < rankCount)
+                server.bind(new InetSocketAddress("localhost", basePort + rank));
+
+            left = rank > 0 ? connect(rank - 1, new InetSocketAddress("localhost", basePort + rank - 1)) : null;
+            right = rank + 1 < rankCount ? accept(server, rank + 1) : null;
+        }
+
+        for (var link : links)
+            link.getChannel().register(selector, 0, link);
+    }
+
+    /**
+     * Connects to the rank of the left slab, retrying until it listens.
+     *
+     * @param neighbor the rank to connect to
+     * @param address  the address the rank listens on
+     * @return the link to the rank
+     * @throws IOException if the rank cannot be connected
+     */
+    private NeighborLink connect(int neighbor, InetSocketAddress address) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                var channel = SocketChannel.open(address);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, rank));
+                return addLink(neighbor, channel);
+            } catch (ConnectException e) {
+                if (attempt >= CONNECT_ATTEMPTS)
+                    throw e;
+            }
+
+            try {
+                Thread.sleep(CONNECT_RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while connecting to rank " + neighbor, e);
+            }
+        }
+    }
+
+    /**
+     * Accepts the connection of the rank of the right slab.
+     *
+     * @param server   the listening channel of this rank
+     * @param neighbor the rank that is expected to connect
+     * @return the link to the rank
+     * @throws IOException if the connection fails or another rank connected
+     */
+    private NeighborLink accept(ServerSocketChannel server, int neighbor) throws IOException {
+        var channel = server.accept();
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+        var hello = ByteBuffer.allocate(Integer.BYTES);
+        while (hello.hasRemaining())
+            if (channel.read(hello) < 0)
+                throw new IOException("Connection closed before rank " + neighbor + " identified itself");
+
+        int connected = hello.getInt(0);
+        if (connected != neighbor) {
+            channel.close();
+            throw new IOException("Expected rank " + neighbor + " to connect, but rank " + connected + " did");
+        }
+        return addLink(neighbor, channel);
+    }
+
+    /**
+     * @return a new link over a connection, added to all links
+     */
+    private NeighborLink addLink(int neighbor, SocketChannel channel) throws IOException {
+        var link = new NeighborLink(neighbor, channel);
+        links.add(link);
+        return link;
+    }
+
+    /**
+     * Checks if a position is inside the slab of this rank.
+     *
+     * @param pos the position to check
+     * @return true iff a particle at this position is owned by this rank
+     */
+    public boolean owns(Vec pos) {
+        double blockSize = engine.getParticles().getBlockSize();
+        return pos.x >= minColumn * blockSize && pos.x < maxColumn * blockSize;
+    }
+
+    /**
+     * Performs one calculation on this rank, together with all other ranks.
+     *
+     * @param dt the time between two ticks in seconds
+     * @throws IOException if the exchange with a neighbored rank fails
+     */
+    public void tick(double dt) throws IOException {
+        var particles = engine.getParticles();
+        int height = particles.getHeight();
+
+        // Send the outermost owned columns as halo and add the received ones as ghosts
+        begin(HALO);
+        if (left != null)
+            particles.iterator(new IntVec(minColumn, 0), new IntVec(minColumn + 1, height)).forEachRemaining(left::put);
+        if (right != null)
+            particles.iterator(new IntVec(maxColumn - 1, 0), new IntVec(maxColumn, height)).forEachRemaining(right::put);
+        exchange();
+        var ghosts = particles.getGhosts();
+        for (var link : links)
+            for (var s : link.received())
+                ghosts.add(s.pos(), s.epsilon(), s.sigma());
+
+        engine.tick(dt);
+        ghosts.clear();
+
+        // Hand over all particles that left the slab
+        begin(MIGRATION);
+        List<Particle> emigrants = new ArrayList<>();
+        if (left != null)
+            collect(particles.iterator(IntVec.ZERO, new IntVec(minColumn, height)), left, emigrants);
+        if (right != null)
+            collect(particles.iterator(new IntVec(maxColumn, 0), new IntVec(particles.getWidth(), height)), right, emigrants);
+        engine.removeParticles(emigrants);
+        exchange();
+        for (var link : links)
+            for (var s : link.received())
+                engine.addParticle(s.pos(), s.mass(), s.epsilon(), s.sigma(), s.fixed()).setMotion(s.velocity(), s.force(), s.previousForce());
+
+        tickCount++;
+    }
+
+    /**
+     * Adds all particles of an iterator to the outgoing message of a link and to a list.
+     */
+    private static void collect(Iterator<Particle> it, NeighborLink link, List<Particle> emigrants) {
+        while (it.hasNext()) {
+            var p = it.next();
+            link.put(p);
+            emigrants.add(p);
+        }
+    }
+
+    /**
+     * Starts the messages of a new phase on all links.
+     *
+     * @param phase the phase within the current tick
+     */
+    private void begin(int phase) {
+        for (var link : links)
+            link.begin(tickCount, phase);
+    }
+
+    /**
+     * Sends the messages of the current phase to all neighbored ranks and receives theirs, waiting until all are complete.
+     *
+     * @throws IOException if a connection fails
+     */
+    private void exchange() throws IOException {
+        int pending = 0;
+        for (var link : links) {
+            link.finish();
+            link.getChannel().keyFor(selector).interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            pending += 2;
+        }
+
+        while (pending > 0) {
+            selector.select();
+            for (var it = selector.selectedKeys().iterator(); it.hasNext(); ) {
+                var key = it.next();
+                it.remove();
+
+                var link = (NeighborLink) key.attachment();
+                if (key.isWritable() && link.write()) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                    pending--;
+                }
+                if (key.isReadable() && link.read()) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                    pending--;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the local simulation of this rank
+     */
+    public SimulationEngine getEngine() {
+        return engine;
+    }
+
+    public int getRank() {
+        return rank;
+    }
+
+    public int getRankCount() {
+        return rankCount;
+    }
+
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (var link : links)
+            link.close();
+        selector.close();
+    }
+}
@@ -0,0 +1,73 @@
+package de.javaabc.particlesimulation.distributed;
+
+import de.javaabc.particlesimulation.HeadlessRunner;
+import de.javaabc.particlesimulation.particle.ForceKernel;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Starts all ranks of a distributed simulation as separate JVM processes on localhost and waits until all of them are done.
+ * All options except {@code --ranks} are passed on to every {@link DistributedRunner}.
+ * <p>
+ * Usage: {@code java de.javaabc.particlesimulation.distributed.DistributedLauncher --ranks n [--port p] [options of HeadlessRunner]}
+ */
+public class DistributedLauncher {
+    public static void main(String[] args) throws InterruptedException {
+        int ranks;
+        try {
+            ranks = HeadlessRunner.parseOptions(args, DistributedRunner.DEFAULTS).get("ranks").intValue();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        List<Process> processes = new ArrayList<>();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> processes.forEach(Process::destroy)));
+        try {
+            for (int rank = 0; rank < ranks; rank++)
+                processes.add(new ProcessBuilder(command(rank, ranks, args)).inheritIO().start());
+        } catch (IOException e) {
+            System.err.println("Failed to start rank " + processes.size() + ": " + e.getMessage());
+            System.exit(1);
+        }
+
+        int failed = 0;
+        for (var process : processes)
+            if (process.waitFor() != 0)
+                failed++;
+
+        if (failed > 0) {
+            System.err.println(failed + " of " + ranks + " ranks failed");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Builds the command line to start one rank in a new JVM with the class path of this JVM.
+     *
+     * @param rank  the index of the rank
+     * @param ranks the total number of ranks
+     * @param args  the command line arguments of the launcher
+     * @return the command line of the rank
+     */
+    private static List<String> command(int rank, int ranks, String[] args) {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        if (ForceKernel.isVectorAvailable())
+            command.addAll(List.of("--add-modules", "jdk.incubator.vector"));
+        var kernel = System.getProperty("particlesimulation.kernel");
+        if (kernel != null)
+            command.add("-Dparticlesimulation.kernel=" + kernel);
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"), DistributedRunner.class.getName()));
+
+        for (int i = 0; i < args.length; i += 2)
+            if (!args[i].equals("--rank") && !args[i].equals("--ranks"))
+                command.addAll(List.of(args[i], args[i + 1]));
+        command.addAll(List.of("--rank", Integer.toString(rank), "--ranks", Integer.toString(ranks)));
+        return command;
+    }
+}
@@ -0,0 +1,79 @@
+package de.javaabc.particlesimulation.distributed;
+
+import de.javaabc.particlesimulation.HeadlessRunner;
+import de.javaabc.particlesimulation.SimulationEngine;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A command line runner for one rank of a distributed simulation, usually started by the {@link DistributedLauncher}.
+ * Each rank places only the particles of the lattice that lie in its own slab and steps the simulation together with all other ranks.
+ * <p>
+ * Usage: {@code java de.javaabc.particlesimulation.distributed.DistributedRunner --rank r --ranks n [--port p] [options of HeadlessRunner]}
+ */
+public class DistributedRunner {
+    /**
+     * the default values of all command line options
+     */
+    static final Map<String, Double> DEFAULTS;
+
+    static {
+        Map<String, Double> defaults = new HashMap<>(HeadlessRunner.DEFAULTS);
+        defaults.remove("gravitation"); // The long-range gravitation needs all particles and is not distributed
+        defaults.remove("theta");
+        defaults.remove("checkpoint"); // Each rank only holds a slab, checkpoints cover a whole world
+        defaults.remove("restore");
+        defaults.remove("trajectory");
+        defaults.remove("velocities");
+        defaults.remove("adaptive"); // All ranks would have to agree on each step
+        defaults.remove("periodic"); // Slabs only exchange halos with their inner neighbors
+        defaults.put("rank", 0.0);
+        defaults.put("ranks", 1.0);
+        defaults.put("port", 47000.0);
+        DEFAULTS = Map.copyOf(defaults);
+    }
+
+    /**
+     * the number of progress reports during a run
+     */
+    private static final int REPORTS = 10;
+
+    public static void main(String[] args) {
+        Map<String, Double> options;
+        try {
+            options = HeadlessRunner.parseOptions(args, DEFAULTS);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        int rank = options.get("rank").intValue();
+        int count = options.get("particles").intValue();
+        var world = HeadlessRunner.fitWorld(options.get("width"), options.get("height"), count); // Identical on all ranks
+        var engine = new SimulationEngine(world.x, world.y, SimulationEngine.DEFAULT_GRAVITY, options.get("cutoff"));
+        try (var distributed = new DistributedEngine(engine, rank, options.get("ranks").intValue(), options.get("port").intValue())) {
+            HeadlessRunner.placeParticles(engine, count, distributed::owns);
+
+            double dt = 1.0 / options.get("tps");
+            long steps = options.get("steps").longValue();
+            long reportInterval = Math.max(1, steps / REPORTS);
+
+            System.out.println("[rank " + rank + "] Running " + steps + " ticks with " + engine.getParticles().size() + " particles");
+            long start = System.nanoTime();
+            for (long step = 1; step <= steps; step++) {
+                distributed.tick(dt);
+                if (step % reportInterval == 0)
+                    System.out.printf("[rank %d] tick %d, %d particles, %.1f ticks/s%n", rank, step, engine.getParticles().size(), step / ((System.nanoTime() - start) / 1E9));
+            }
+
+            double seconds = (System.nanoTime() - start) / 1E9;
+            System.out.printf("[rank %d] Finished %d ticks in %.3f s (%.1f ticks/s, %.3f simulated s)%n", rank, steps, seconds, steps / seconds, steps * dt);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("[rank " + rank + "] " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
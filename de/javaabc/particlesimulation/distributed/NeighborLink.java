@@ -0,0 +1,209 @@
+package de.javaabc.particlesimulation.distributed;
+
+import de.javaabc.particlesimulation.particle.Particle;
+import de.javaabc.particlesimulation.util.math.Vec;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A TCP connection to a neighbored rank that exchanges one batched binary message per phase in each direction.
+ * <p>
+ * A message consists of a header with the tick, the phase and the number of particles, followed by one fixed-size record per particle.
+ * Sending and receiving are non-blocking, so both neighbors can send at the same time without filling each other's socket buffers.
+ */
+class NeighborLink implements Closeable {
+    /**
+     * the size of a message header in bytes: tick, phase and number of particles
+     */
+    private static final int HEADER_BYTES = Long.BYTES + 2 * Integer.BYTES;
+
+    /**
+     * the size of one particle record in bytes: position, velocity, force, previous force, mass, epsilon, sigma and the fixed flag
+     */
+    private static final int RECORD_BYTES = 11 * Double.BYTES + 1;
+
+    /**
+     * the offset of the particle count in the message header
+     */
+    private static final int COUNT_OFFSET = Long.BYTES + Integer.BYTES;
+
+    /**
+     * the rank at the other end of this link
+     */
+    private final int rank;
+
+    /**
+     * the non-blocking connection to the other rank
+     */
+    private final SocketChannel channel;
+
+    /**
+     * the outgoing message of the current phase
+     */
+    private ByteBuffer out = ByteBuffer.allocateDirect(HEADER_BYTES + 64 * RECORD_BYTES);
+
+    /**
+     * the header of the incoming message of the current phase
+     */
+    private final ByteBuffer header = ByteBuffer.allocateDirect(HEADER_BYTES);
+
+    /**
+     * the particle records of the incoming message
+     */
+    private ByteBuffer in = ByteBuffer.allocate(64 * RECORD_BYTES);
+
+    /**
+     * the option that the header of the incoming message has been read completely
+     */
+    private boolean headerRead;
+
+    /**
+     * the tick and phase the incoming message must belong to
+     */
+    private long tick;
+    private int phase;
+
+    /**
+     * the number of particles in the outgoing message
+     */
+    private int count;
+
+    /**
+     * Creates a new link over an established connection.
+     *
+     * @param rank    the rank at the other end of this link
+     * @param channel the connection to the other rank, switched to non-blocking mode by this link
+     * @throws IOException if the channel cannot be configured
+     */
+    NeighborLink(int rank, SocketChannel channel) throws IOException {
+        this.rank = rank;
+        this.channel = channel;
+        channel.configureBlocking(false);
+    }
+
+    /**
+     * Starts a new outgoing message and prepares receiving the incoming message of the same phase.
+     *
+     * @param tick  the current tick
+     * @param phase the current phase within the tick
+     */
+    void begin(long tick, int phase) {
+        this.tick = tick;
+        this.phase = phase;
+        count = 0;
+        out.clear();
+        out.putLong(tick).putInt(phase).putInt(0);
+        header.clear();
+        headerRead = false;
+    }
+
+    /**
+     * Appends the state of a particle to the outgoing message.
+     *
+     * @param p the particle to send
+     */
+    void put(Particle p) {
+        if (out.remaining() < RECORD_BYTES) {
+            var grown = ByteBuffer.allocateDirect(2 * out.capacity());
+            out.flip();
+            grown.put(out);
+            out = grown;
+        }
+
+        Vec pos = p.getPos(), velocity = p.getVelocity(), force = p.getForce(), previousForce = p.getPreviousForce();
+        out.putDouble(pos.x).putDouble(pos.y)
+                .putDouble(velocity.x).putDouble(velocity.y)
+                .putDouble(force.x).putDouble(force.y)
+                .putDouble(previousForce.x).putDouble(previousForce.y)
+                .putDouble(p.getMass()).putDouble(p.getEpsilon()).putDouble(p.getSigma())
+                .put((byte) (p.isFixed() ? 1 : 0));
+        count++;
+    }
+
+    /**
+     * Completes the outgoing message, so it can be written.
+     */
+    void finish() {
+        out.putInt(COUNT_OFFSET, count);
+        out.flip();
+    }
+
+    /**
+     * Writes as much of the outgoing message as the connection currently accepts.
+     *
+     * @return true iff the whole message has been written
+     * @throws IOException if the connection failed
+     */
+    boolean write() throws IOException {
+        channel.write(out);
+        return !out.hasRemaining();
+    }
+
+    /**
+     * Reads as much of the incoming message as is currently available, but never more.
+     *
+     * @return true iff the whole message has been read
+     * @throws IOException if the connection failed, was closed or the message does not belong to the current tick and phase
+     */
+    boolean read() throws IOException {
+        if (!headerRead) {
+            if (channel.read(header) < 0)
+                throw new EOFException("Rank " + rank + " closed the connection");
+            if (header.hasRemaining())
+                return false;
+
+            header.flip();
+            long messageTick = header.getLong();
+            int messagePhase = header.getInt();
+            int messageCount = header.getInt();
+            if (messageTick != tick || messagePhase != phase)
+                throw new IOException("Rank " + rank + " sent tick " + messageTick + " phase " + messagePhase + ", but expected tick " + tick + " phase " + phase);
+
+            if (in.capacity() < messageCount * RECORD_BYTES)
+                in = ByteBuffer.allocate(Math.max(messageCount * RECORD_BYTES, 2 * in.capacity()));
+            in.clear().limit(messageCount * RECORD_BYTES);
+            headerRead = true;
+        }
+
+        if (in.hasRemaining() && channel.read(in) < 0)
+            throw new EOFException("Rank " + rank + " closed the connection");
+        return !in.hasRemaining();
+    }
+
+    /**
+     * Decodes all particles of the completely read incoming message.
+     *
+     * @return the states of all received particles
+     */
+    List<ParticleState> received() {
+        in.flip();
+        List<ParticleState> states = new ArrayList<>(in.remaining() / RECORD_BYTES);
+        while (in.hasRemaining())
+            states.add(new ParticleState(
+                    new Vec(in.getDouble(), in.getDouble()),
+                    new Vec(in.getDouble(), in.getDouble()),
+                    new Vec(in.getDouble(), in.getDouble()),
+                    new Vec(in.getDouble(), in.getDouble()),
+                    in.getDouble(), in.getDouble(), in.getDouble(),
+                    in.get() != 0));
+        return states;
+    }
+
+    /**
+     * @return the non-blocking connection to the other rank
+     */
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
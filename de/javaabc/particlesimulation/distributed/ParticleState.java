@@ -0,0 +1,18 @@
+package de.javaabc.particlesimulation.distributed;
+
+import de.javaabc.particlesimulation.util.math.Vec;
+
+/**
+ * The complete state of a particle as it is sent to another rank.
+ *
+ * @param pos           the position in px
+ * @param velocity      the speed in px / s
+ * @param force         the force that currently acts on the particle, i.e. the gravity after a tick
+ * @param previousForce the force that acted on the particle in the previous tick
+ * @param mass          the mass in kg
+ * @param epsilon       the depth of the Lennard-Jones-Potential
+ * @param sigma         the particle distance where the Lennard-Jones-Potential is equal to zero
+ * @param fixed         the option to never move the particle
+ */
+record ParticleState(Vec pos, Vec velocity, Vec force, Vec previousForce, double mass, double epsilon, double sigma, boolean fixed) {
+}
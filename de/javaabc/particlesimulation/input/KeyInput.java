@@ -6,7 +6,11 @@ import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 
 import static java.awt.event.KeyEvent.VK_G;
+import static java.awt.event.KeyEvent.VK_L;
+import static java.awt.event.KeyEvent.VK_R;
+import static java.awt.event.KeyEvent.VK_S;
 import static java.awt.event.KeyEvent.VK_SPACE;
+import static java.awt.event.KeyEvent.VK_T;
 
 /**
  * Handles keyboard input from the user.
@@ -45,6 +49,10 @@ public class KeyInput implements KeyListener {
         switch (e.getKeyCode()) {
             case VK_SPACE -> simulation.togglePause(); // Pause or resume simulation
             case VK_G -> simulation.toggleGravity(); // Enable or disable gravity
+            case VK_R -> simulation.toggleRasterized(); // Switch between Java2D and raster rendering
+            case VK_S -> simulation.saveCheckpoint(); // Save the simulation state
+            case VK_L -> simulation.loadCheckpoint(); // Load the last saved simulation state
+            case VK_T -> simulation.toggleAdaptiveStep(); // Switch between fixed and adaptive time steps
         }
     }
 
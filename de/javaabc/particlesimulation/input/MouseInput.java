@@ -34,6 +34,11 @@ public class MouseInput implements MouseListener, MouseMotionListener, Renderabl
      */
     private Particle connectStart;
 
+    /**
+     * the mouse position where {@link #connectStart} was selected, as the start of the connection line
+     */
+    private Vec connectStartPos;
+
     /**
      * the size of the grid on which particles can be placed in px
      */
@@ -61,7 +66,7 @@ public class MouseInput implements MouseListener, MouseMotionListener, Renderabl
             double y = gridSnap * Math.round(mousePos.y / gridSnap);
             g.fill(new Ellipse2D.Double(x - Particle.RENDER_RADIUS, y - Particle.RENDER_RADIUS, 2.0 * Particle.RENDER_RADIUS, 2.0 * Particle.RENDER_RADIUS));
         } else // Render connection line
-            g.draw(new Line2D.Double(connectStart.getPos().x, connectStart.getPos().y, mousePos.x, mousePos.y));
+            g.draw(new Line2D.Double(connectStartPos.x, connectStartPos.y, mousePos.x, mousePos.y));
     }
 
     @Override
@@ -84,11 +89,13 @@ public class MouseInput implements MouseListener, MouseMotionListener, Renderabl
                         simulation.addParticleAt(new Vec(x, y));
                 }
             }
-            case BUTTON2 -> simulation.getParticles().removeAllAt(new Vec(e.getX(), e.getY())); // Middle button: remove particle
+            case BUTTON2 -> simulation.getEngine().getParticles().removeAllAt(new Vec(e.getX(), e.getY())); // Middle button: remove particle
             case BUTTON3 -> {
                 // Right mouse button: Start particle connection
-                if (connectStart == null)
-                    simulation.findParticle(new Vec(e.getX(), e.getY())).ifPresent(p -> connectStart = p);
+                if (connectStart == null) {
+                    connectStartPos = new Vec(e.getX(), e.getY());
+                    simulation.findParticle(connectStartPos).ifPresent(p -> connectStart = p);
+                }
             }
         }
     }
@@ -97,7 +104,7 @@ public class MouseInput implements MouseListener, MouseMotionListener, Renderabl
     public void mouseReleased(MouseEvent e) {
         if (e.getButton() == BUTTON3) {
             if (connectStart != null) // Select second particle to connect with
-                simulation.findParticle(mousePos).ifPresent(connectStart::connectWith);
+                simulation.findParticle(mousePos).ifPresent(p -> simulation.getEngine().connectParticles(connectStart, p));
             connectStart = null;
         }
     }
@@ -0,0 +1,69 @@
+package de.javaabc.particlesimulation.monitoring;
+
+/**
+ * The summary of all values recorded in the rolling window of a histogram.
+ * Percentiles are accurate to 25 %.
+ */
+public class HistogramSummary {
+    private final long count;
+    private final double mean;
+    private final long p50, p90, p99, max;
+    private final double perSecond;
+
+    /**
+     * Creates a new summary.
+     *
+     * @param count     the number of values
+     * @param mean      the average value
+     * @param p50       the median value
+     * @param p90       the 90th percentile
+     * @param p99       the 99th percentile
+     * @param max       the maximum value
+     * @param perSecond the number of values per second
+     */
+    public HistogramSummary(long count, double mean, long p50, long p90, long p99, long max, double perSecond) {
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.max = max;
+        this.perSecond = perSecond;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP90() {
+        return p90;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return the number of values per second, e.g. the ticks per second of a tick duration histogram
+     */
+    public double getPerSecond() {
+        return perSecond;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("mean %.0f, p50 %d, p99 %d, max %d", mean, p50, p99, max);
+    }
+}
@@ -0,0 +1,166 @@
+package de.javaabc.particlesimulation.monitoring;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative values over a rolling time window, cheap enough to record into on every tick.
+ * <p>
+ * The window is split into a ring of time slots. Each slot counts the values in log-linear buckets:
+ * every power of two is split into {@value SUB_BUCKETS} buckets, so each percentile is accurate to 25 % without any allocation.
+ * A slot is cleared when it is reused for a new time slot. Values are recorded by a single thread and can be read by any thread.
+ */
+class RollingHistogram {
+    /**
+     * the number of buckets per power of two, must be a power of two itself
+     */
+    private static final int SUB_BUCKETS = 4;
+
+    /**
+     * the binary logarithm of {@link #SUB_BUCKETS}
+     */
+    private static final int SUB_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+
+    /**
+     * the number of buckets that cover all non-negative longs
+     */
+    private static final int BUCKETS = bucketOf(Long.MAX_VALUE) + 1;
+
+    /**
+     * the number of values in each bucket of each slot, followed by the count, sum and maximum of each slot
+     */
+    private final AtomicLongArray counts;
+
+    /**
+     * the time slot number each slot currently holds
+     */
+    private final AtomicLongArray slotNumbers;
+
+    /**
+     * the number of slots
+     */
+    private final int slots;
+
+    /**
+     * the duration of one slot in ns
+     */
+    private final long slotNanos;
+
+    /**
+     * the time stamp of the creation in ns, to compute rates before the first window is complete
+     */
+    private final long created;
+
+    /**
+     * Creates a new rolling histogram.
+     *
+     * @param slots     the number of time slots in the window
+     * @param slotNanos the duration of one slot in ns
+     */
+    RollingHistogram(int slots, long slotNanos) {
+        this.slots = slots;
+        this.slotNanos = slotNanos;
+        counts = new AtomicLongArray(slots * (BUCKETS + 3));
+        slotNumbers = new AtomicLongArray(slots);
+        for (int s = 0; s < slots; s++)
+            slotNumbers.set(s, -1);
+        created = System.nanoTime();
+    }
+
+    /**
+     * @return the bucket a value is counted in
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return the largest value that is counted in a bucket
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    /**
+     * Counts a value in the current time slot. Must always be called by the same thread.
+     *
+     * @param value the value to count, negative values are ignored
+     * @param now   the current time stamp in ns, see {@link System#nanoTime()}
+     */
+    void record(long value, long now) {
+        if (value < 0)
+            return;
+
+        long slotNumber = (now - created) / slotNanos;
+        int slot = (int) (slotNumber % slots);
+        int base = slot * (BUCKETS + 3);
+        if (slotNumbers.get(slot) != slotNumber) {
+            slotNumbers.set(slot, -1);
+            for (int i = base; i < base + BUCKETS + 3; i++)
+                counts.set(i, 0);
+            slotNumbers.set(slot, slotNumber);
+        }
+
+        counts.incrementAndGet(base + bucketOf(value));
+        counts.incrementAndGet(base + BUCKETS);
+        counts.addAndGet(base + BUCKETS + 1, value);
+        if (value > counts.get(base + BUCKETS + 2))
+            counts.set(base + BUCKETS + 2, value);
+    }
+
+    /**
+     * Summarizes all values of the current window.
+     *
+     * @param now the current time stamp in ns, see {@link System#nanoTime()}
+     * @return the summary
+     */
+    HistogramSummary summarize(long now) {
+        long slotNumber = (now - created) / slotNanos;
+        long[] buckets = new long[BUCKETS];
+        long count = 0, sum = 0, max = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            long number = slotNumbers.get(slot);
+            if (number < 0 || number <= slotNumber - slots)
+                continue;
+
+            int base = slot * (BUCKETS + 3);
+            for (int b = 0; b < BUCKETS; b++)
+                buckets[b] += counts.get(base + b);
+            count += counts.get(base + BUCKETS);
+            sum += counts.get(base + BUCKETS + 1);
+            max = Math.max(max, counts.get(base + BUCKETS + 2));
+        }
+
+        // The window covers the complete previous slots and the elapsed part of the current one
+        double seconds = Math.min(now - created, (slots - 1) * slotNanos + (now - created) % slotNanos) / 1E9;
+        return new HistogramSummary(count, count == 0 ? 0.0 : (double) sum / count,
+                percentile(buckets, count, 0.5, max), percentile(buckets, count, 0.9, max), percentile(buckets, count, 0.99, max),
+                max, seconds > 0.0 ? count / seconds : 0.0);
+    }
+
+    /**
+     * @return the upper bound of the bucket containing a given percentile, but at most the maximum value
+     */
+    private static long percentile(long[] buckets, long count, double percentile, long max) {
+        if (count == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(percentile * count);
+        long seen = 0;
+        for (int b = 0; b < buckets.length; b++) {
+            seen += buckets[b];
+            if (seen >= rank)
+                return Math.min(upperBound(b), max);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,33 @@
+package de.javaabc.particlesimulation.monitoring;
+
+/**
+ * Receives the start and end of every measured tick and phase from {@link TickStats}, e.g. to forward them to an event recorder.
+ * All methods are called by the thread that runs the ticks, while holding the lock of the particle container.
+ * For each tick, {@link #tickStarted(long)} is followed by {@link #phaseEnded(TickPhase)} for every phase but the last one,
+ * and then by {@link #tickEnded(TickPhase, long, int, int)}.
+ */
+public interface TickListener {
+    /**
+     * Called when a tick and its first phase start.
+     *
+     * @param tick the number of the tick
+     */
+    void tickStarted(long tick);
+
+    /**
+     * Called when a phase ended and the next one starts.
+     *
+     * @param phase the phase that ended
+     */
+    void phaseEnded(TickPhase phase);
+
+    /**
+     * Called when the last phase and the complete tick ended.
+     *
+     * @param lastPhase    the last phase of the tick
+     * @param tick         the number of the tick
+     * @param particles    the number of particles after the tick
+     * @param blockChanges the number of particles that changed their block, or -1 if particles were added or removed
+     */
+    void tickEnded(TickPhase lastPhase, long tick, int particles, int blockChanges);
+}
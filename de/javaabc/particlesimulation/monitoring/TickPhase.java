@@ -0,0 +1,52 @@
+package de.javaabc.particlesimulation.monitoring;
+
+/**
+ * The phases of one tick of a {@link de.javaabc.particlesimulation.SimulationEngine}, in the order they run.
+ * With {@link de.javaabc.particlesimulation.particle.Integration#FUSED}, the special forces, confine and reset phases are part of other phases.
+ */
+public enum TickPhase {
+    /**
+     * the Lennard-Jones forces between all particle pairs within the cutoff distance
+     */
+    PAIR_FORCES,
+
+    /**
+     * the long-range gravitation between all particles
+     */
+    LONG_RANGE,
+
+    /**
+     * the forces of the walls of the world
+     */
+    BOUNDARY,
+
+    /**
+     * the spring forces and other forces of single particles
+     */
+    SPECIAL_FORCES,
+
+    /**
+     * the new speeds of all particles, with the fused integration also the spring forces
+     */
+    SPEED,
+
+    /**
+     * the new positions of all particles, with the fused integration also confining them and resetting the forces
+     */
+    POSITION,
+
+    /**
+     * keeping all particles inside the world
+     */
+    CONFINE,
+
+    /**
+     * resetting the forces for the next tick
+     */
+    RESET,
+
+    /**
+     * sorting all particles into their blocks
+     */
+    UPDATE_BLOCKS
+}
@@ -0,0 +1,249 @@
+package de.javaabc.particlesimulation.monitoring;
+
+import de.javaabc.particlesimulation.particle.ParticleContainer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Low-overhead instrumentation of the ticks of a {@link de.javaabc.particlesimulation.SimulationEngine}.
+ * <p>
+ * Each {@link TickPhase} is timed with two calls of {@link System#nanoTime()} and recorded in a {@link RollingHistogram} without any allocation.
+ * The number of particles that changed their block is recorded on every tick, the number of pairs within the cutoff distance and
+ * the occupancy of all blocks are sampled every {@value SAMPLE_INTERVAL} ticks.
+ * <p>
+ * Only {@code java.base} is required. All statistics can be exposed over JMX with
+ * {@link de.javaabc.particlesimulation.monitoring.jmx.TickStatsJmx}, and every tick and phase can be forwarded to a {@link TickListener},
+ * e.g. {@link de.javaabc.particlesimulation.monitoring.jfr.JfrTickListener} to emit JFR events.
+ */
+public class TickStats implements TickStatsMXBean {
+    /**
+     * the JMX name of the registered statistics
+     */
+    public static final String OBJECT_NAME = "de.javaabc.particlesimulation:type=TickStats";
+
+    /**
+     * the number of seconds covered by all histograms
+     */
+    public static final int WINDOW_SECONDS = 10;
+
+    /**
+     * the number of ticks between two samples of the pair count and block occupancy
+     */
+    private static final int SAMPLE_INTERVAL = 64;
+
+    /**
+     * the durations of each phase, complete ticks and frames
+     */
+    private final RollingHistogram[] phaseNanos = new RollingHistogram[TickPhase.values().length];
+    private final RollingHistogram tickNanos = histogram(), frameNanos = histogram();
+
+    /**
+     * the sampled numbers of pairs within the cutoff distance, particles that changed their block and particles per block
+     */
+    private final RollingHistogram pairs = histogram(), blockChanges = histogram(), blockOccupancy = histogram();
+
+    /**
+     * the option to measure ticks
+     */
+    private volatile boolean enabled = true;
+
+    /**
+     * the number of ticks computed so far and the number of particles after the last tick
+     */
+    private volatile long tickCount;
+    private volatile int particleCount;
+
+    /**
+     * the receiver of all measured ticks and phases, or null
+     */
+    private volatile TickListener listener;
+
+    /**
+     * the listener of the running tick, or null
+     */
+    private TickListener tickListener;
+
+    /**
+     * Creates new, enabled tick statistics.
+     */
+    public TickStats() {
+        for (int i = 0; i < phaseNanos.length; i++)
+            phaseNanos[i] = histogram();
+    }
+
+    /**
+     * @return a new histogram over the rolling window
+     */
+    private static RollingHistogram histogram() {
+        return new RollingHistogram(WINDOW_SECONDS, 1_000_000_000L);
+    }
+
+    /**
+     * Sets the receiver of all measured ticks and phases, which takes effect with the next tick.
+     *
+     * @param listener the listener, or null to remove it
+     */
+    public void setListener(TickListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Starts measuring a tick. Must be called by the thread that runs the ticks.
+     *
+     * @param tick the number of the tick to measure
+     * @return the start time stamp of the tick and its first phase, or 0 if disabled
+     */
+    public long startTick(long tick) {
+        if (!enabled)
+            return 0;
+
+        tickListener = listener;
+        if (tickListener != null)
+            tickListener.tickStarted(tick);
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the duration of a phase. Must be called by the thread that runs the ticks.
+     *
+     * @param phase the phase that ended
+     * @param start the start time stamp of the phase
+     * @return the start time stamp of the next phase, or 0 if disabled
+     */
+    public long endPhase(TickPhase phase, long start) {
+        if (start == 0)
+            return 0;
+
+        long now = System.nanoTime();
+        phaseNanos[phase.ordinal()].record(now - start, now);
+        if (tickListener != null)
+            tickListener.phaseEnded(phase);
+        return now;
+    }
+
+    /**
+     * Records the duration of the last phase and the complete tick, and samples the particle container every few ticks.
+     * Must be called by the thread that runs the ticks, while holding the lock of the container.
+     * The pairs within the cutoff distance are only sampled if the neighbor list is kept up to date anyway,
+     * as counting them would build it from scratch otherwise.
+     *
+     * @param lastPhase    the last phase of the tick
+     * @param tickStart    the start time stamp of the tick
+     * @param phaseStart   the start time stamp of the last phase
+     * @param tickCount    the number of ticks computed so far, including this tick
+     * @param particles    the container of all particles
+     * @param neighborList true if the pairs are traversed with the neighbor list of the container
+     */
+    public void endTick(TickPhase lastPhase, long tickStart, long phaseStart, long tickCount, ParticleContainer particles, boolean neighborList) {
+        if (tickStart == 0)
+            return;
+
+        long now = System.nanoTime();
+        phaseNanos[lastPhase.ordinal()].record(now - phaseStart, now);
+        tickNanos.record(now - tickStart, now);
+
+        int changes = particles.getBlockChanges();
+        blockChanges.record(changes, now);
+        this.tickCount = tickCount;
+        particleCount = particles.size();
+
+        if (tickListener != null) {
+            tickListener.tickEnded(lastPhase, tickCount, particleCount, changes);
+            tickListener = null;
+        }
+
+        if (tickCount % SAMPLE_INTERVAL == 0) {
+            if (neighborList)
+                pairs.record(particles.countPairsWithinCutoff(), now);
+            particles.forEachBlockSize(size -> blockOccupancy.record(size, now));
+        }
+    }
+
+    /**
+     * Records the duration of rendering a frame. Must always be called by the same thread.
+     *
+     * @param nanos the duration in ns
+     */
+    public void recordFrame(long nanos) {
+        if (enabled)
+            frameNanos.record(nanos, System.nanoTime());
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    @Override
+    public int getParticleCount() {
+        return particleCount;
+    }
+
+    @Override
+    public double getTicksPerSecond() {
+        return getTickNanos().getPerSecond();
+    }
+
+    @Override
+    public double getFramesPerSecond() {
+        return getFrameNanos().getPerSecond();
+    }
+
+    @Override
+    public HistogramSummary getTickNanos() {
+        return tickNanos.summarize(System.nanoTime());
+    }
+
+    @Override
+    public Map<String, HistogramSummary> getPhaseNanos() {
+        long now = System.nanoTime();
+        Map<String, HistogramSummary> summaries = new LinkedHashMap<>();
+        for (var phase : TickPhase.values())
+            summaries.put(phase.name(), phaseNanos[phase.ordinal()].summarize(now));
+        return summaries;
+    }
+
+    @Override
+    public HistogramSummary getFrameNanos() {
+        return frameNanos.summarize(System.nanoTime());
+    }
+
+    @Override
+    public HistogramSummary getPairsWithinCutoff() {
+        return pairs.summarize(System.nanoTime());
+    }
+
+    @Override
+    public HistogramSummary getBlockChanges() {
+        return blockChanges.summarize(System.nanoTime());
+    }
+
+    @Override
+    public HistogramSummary getBlockOccupancy() {
+        return blockOccupancy.summarize(System.nanoTime());
+    }
+
+    /**
+     * @return a multi-line report of the tick and phase durations in the current window
+     */
+    @Override
+    public String toString() {
+        var report = new StringBuilder(String.format("%-15s %s (%.1f ticks/s)%n", "TICK", getTickNanos(), getTicksPerSecond()));
+        getPhaseNanos().forEach((phase, summary) -> report.append(String.format("%-15s %s%n", phase, summary)));
+        report.append(String.format("%-15s %s%n", "PAIRS", getPairsWithinCutoff()));
+        report.append(String.format("%-15s %s%n", "BLOCK_CHANGES", getBlockChanges()));
+        report.append(String.format("%-15s %s", "OCCUPANCY", getBlockOccupancy()));
+        return report.toString();
+    }
+}
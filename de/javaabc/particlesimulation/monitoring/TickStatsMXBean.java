@@ -0,0 +1,69 @@
+package de.javaabc.particlesimulation.monitoring;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link TickStats}, registered as {@value TickStats#OBJECT_NAME}.
+ * All histograms cover a rolling window of the last {@value TickStats#WINDOW_SECONDS} seconds, durations are in ns.
+ */
+public interface TickStatsMXBean {
+    /**
+     * @return true if ticks are measured
+     */
+    boolean isEnabled();
+
+    /**
+     * @param enabled the option to measure ticks
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * @return the number of ticks computed so far
+     */
+    long getTickCount();
+
+    /**
+     * @return the number of particles after the last tick
+     */
+    int getParticleCount();
+
+    /**
+     * @return the achieved ticks per second
+     */
+    double getTicksPerSecond();
+
+    /**
+     * @return the achieved frames per second, zero without a display
+     */
+    double getFramesPerSecond();
+
+    /**
+     * @return the durations of complete ticks
+     */
+    HistogramSummary getTickNanos();
+
+    /**
+     * @return the durations of each {@link TickPhase}, by phase name
+     */
+    Map<String, HistogramSummary> getPhaseNanos();
+
+    /**
+     * @return the durations of rendering a frame
+     */
+    HistogramSummary getFrameNanos();
+
+    /**
+     * @return the numbers of particle pairs within the cutoff distance, sampled every few ticks while the pairs are traversed with the neighbor list
+     */
+    HistogramSummary getPairsWithinCutoff();
+
+    /**
+     * @return the numbers of particles that changed their block per tick
+     */
+    HistogramSummary getBlockChanges();
+
+    /**
+     * @return the numbers of particles per block, sampled every few ticks
+     */
+    HistogramSummary getBlockOccupancy();
+}
@@ -0,0 +1,122 @@
+package de.javaabc.particlesimulation.monitoring.jfr;
+
+import de.javaabc.particlesimulation.monitoring.TickListener;
+import de.javaabc.particlesimulation.monitoring.TickPhase;
+import de.javaabc.particlesimulation.monitoring.TickStats;
+import jdk.jfr.EventType;
+
+/**
+ * Emits a {@link TickPhaseEvent} for every phase and a {@link TickEvent} for every tick measured by {@link TickStats},
+ * but only creates events while they are recorded. Requires the module {@code jdk.jfr}, see {@link #attach(TickStats)}.
+ */
+public class JfrTickListener implements TickListener {
+    /**
+     * the JFR event types, to only create events while they are recorded.
+     * Looked up by the constructor, so checking for JFR with {@link #isAvailable()} does not need JFR.
+     */
+    private final EventType phaseEvents, tickEvents;
+
+    /**
+     * the JFR events of the running phase and tick, or null if not recorded
+     */
+    private TickPhaseEvent phaseEvent;
+    private TickEvent tickEvent;
+
+    /**
+     * the number of the running tick and the number of particles after the previous tick
+     */
+    private long tick;
+    private int particles;
+
+    /**
+     * Creates a new listener. Requires JFR, see {@link #isAvailable()}.
+     */
+    public JfrTickListener() {
+        phaseEvents = EventType.getEventType(TickPhaseEvent.class);
+        tickEvents = EventType.getEventType(TickEvent.class);
+    }
+
+    /**
+     * @return true if JFR is available in this runtime
+     */
+    public static boolean isAvailable() {
+        return ModuleLayer.boot().findModule("jdk.jfr").isPresent();
+    }
+
+    /**
+     * Emits JFR events for all ticks measured by the given statistics, if JFR is available.
+     * Must not be called while ticks are running.
+     *
+     * @param stats the statistics to listen to
+     * @return true if attached, false if JFR is not available
+     */
+    public static boolean attach(TickStats stats) {
+        if (!isAvailable())
+            return false;
+
+        stats.setListener(new JfrTickListener());
+        return true;
+    }
+
+    @Override
+    public void tickStarted(long tick) {
+        this.tick = tick;
+        if (tickEvents.isEnabled()) {
+            tickEvent = new TickEvent();
+            tickEvent.tick = tick;
+            tickEvent.begin();
+        }
+        startPhaseEvent();
+    }
+
+    @Override
+    public void phaseEnded(TickPhase phase) {
+        if (phaseEvent != null) {
+            commitPhaseEvent(phase);
+            startPhaseEvent();
+        }
+    }
+
+    @Override
+    public void tickEnded(TickPhase lastPhase, long tick, int particles, int blockChanges) {
+        commitPhaseEvent(lastPhase);
+        this.particles = particles;
+        if (tickEvent == null)
+            return;
+
+        tickEvent.end();
+        if (tickEvent.shouldCommit()) {
+            tickEvent.particles = particles;
+            tickEvent.blockChanges = blockChanges;
+            tickEvent.commit();
+        }
+        tickEvent = null;
+    }
+
+    /**
+     * Starts a JFR event for the next phase, if phase events are recorded.
+     */
+    private void startPhaseEvent() {
+        if (phaseEvents.isEnabled()) {
+            phaseEvent = new TickPhaseEvent();
+            phaseEvent.tick = tick;
+            phaseEvent.begin();
+        }
+    }
+
+    /**
+     * Commits the JFR event of the running phase, if any.
+     */
+    private void commitPhaseEvent(TickPhase phase) {
+        if (phaseEvent == null)
+            return;
+
+        phaseEvent.end();
+        if (phaseEvent.shouldCommit()) {
+            phaseEvent.phase = phase.name();
+            phaseEvent.particles = particles;
+            phaseEvent.commit();
+        }
+        phaseEvent = null;
+    }
+}
@@ -0,0 +1,30 @@
+package de.javaabc.particlesimulation.monitoring.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A JFR event for one complete tick.
+ * Only ticks slower than the threshold are recorded by default, which can be lowered in the recording settings.
+ */
+@Name("de.javaabc.particlesimulation.Tick")
+@Label("Tick")
+@Description("One complete simulation tick")
+@Category("Particle Simulation")
+@StackTrace(false)
+@Threshold("1 ms")
+class TickEvent extends jdk.jfr.Event {
+    @Label("Tick")
+    long tick;
+
+    @Label("Particles")
+    int particles;
+
+    @Label("Block Changes")
+    @Description("The number of particles that changed their block, or -1 if particles were added or removed")
+    int blockChanges;
+}
@@ -0,0 +1,30 @@
+package de.javaabc.particlesimulation.monitoring.jfr;
+
+import de.javaabc.particlesimulation.monitoring.TickPhase;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A JFR event for one {@link TickPhase} of one tick.
+ * Only phases slower than the threshold are recorded by default, which can be lowered in the recording settings.
+ */
+@Name("de.javaabc.particlesimulation.TickPhase")
+@Label("Tick Phase")
+@Description("One phase of one simulation tick")
+@Category("Particle Simulation")
+@StackTrace(false)
+@Threshold("1 ms")
+class TickPhaseEvent extends jdk.jfr.Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Tick")
+    long tick;
+
+    @Label("Particles")
+    int particles;
+}
@@ -0,0 +1,45 @@
+package de.javaabc.particlesimulation.monitoring.jmx;
+
+import de.javaabc.particlesimulation.monitoring.TickStats;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Exposes {@link TickStats} over JMX. Requires the module {@code java.management}, which the simulation core does not depend on.
+ */
+public class TickStatsJmx {
+    /**
+     * @return true if JMX is available in this runtime
+     */
+    public static boolean isAvailable() {
+        return ModuleLayer.boot().findModule("java.management").isPresent();
+    }
+
+    /**
+     * Registers the given statistics with the platform MBean server under {@value TickStats#OBJECT_NAME}.
+     *
+     * @param stats the statistics to register
+     * @return true if registered, false if the name is already taken or JMX is not available
+     */
+    public static boolean register(TickStats stats) {
+        return isAvailable() && Registration.register(stats);
+    }
+
+    /**
+     * Holds all references to JMX, so they are only resolved once JMX was found to be available.
+     * The exception handler alone would require JMX to load the enclosing class.
+     */
+    private static class Registration {
+        private static boolean register(TickStats stats) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(stats, new ObjectName(TickStats.OBJECT_NAME));
+                return true;
+            } catch (JMException e) {
+                System.err.println("Could not register " + TickStats.OBJECT_NAME + ": " + e.getMessage());
+                return false;
+            }
+        }
+    }
+}
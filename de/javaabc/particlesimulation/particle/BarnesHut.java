@@ -0,0 +1,496 @@
+package de.javaabc.particlesimulation.particle;
+
+import java.io.Serial;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * A Barnes-Hut solver for the long-range gravitational attraction between all particles.
+ * <p>
+ * Each tick, all particles are sorted along a Morton curve over their bounding square and a quadtree is built over the sorted order,
+ * so every node covers a contiguous range of particles. The tree is built in parallel and stores the mass and the center of mass of each node.
+ * The force on a particle sums up whole nodes that appear smaller than the opening angle theta, seen from the particle,
+ * and the single particles of all nearby leaves. Each worker writes only the forces of its own particles, so no locking is needed.
+ * <p>
+ * Distances are plain distances, i.e. periodic images are not considered.
+ */
+public class BarnesHut {
+    /**
+     * the maximum number of particles in a leaf
+     */
+    private static final int LEAF_SIZE = 8;
+
+    /**
+     * the number of bits per axis of a Morton code, which is also the maximum depth of the tree.
+     * Two times 15 bits keep the code in the upper half of a key positive, so keys sort by code.
+     */
+    private static final int MAX_LEVEL = 15;
+
+    /**
+     * the minimum number of particles of a subtree to build its children in parallel
+     */
+    private static final int PARALLEL_THRESHOLD = 4096;
+
+    /**
+     * the number of particles per parallel work item of the force pass
+     */
+    private static final int CHUNK_SIZE = 1024;
+
+    /**
+     * the maximum number of nodes on the traversal stack, i.e. three siblings waiting on each level plus the current node
+     */
+    private static final int STACK_SIZE = 3 * MAX_LEVEL + 4;
+
+    /**
+     * the default opening angle theta
+     */
+    public static final double DEFAULT_THETA = 0.5;
+
+    /**
+     * the default softening length in px
+     */
+    public static final double DEFAULT_SOFTENING = 1.0;
+
+    /**
+     * the store holding the state of all particles
+     */
+    private final ParticleStore store;
+
+    /**
+     * the gravitational constant G, or zero to disable long-range gravity
+     */
+    private double gravitationalConstant;
+
+    /**
+     * the opening angle theta, i.e. the maximum ratio of node size and distance to approximate a node by its center of mass
+     */
+    private double theta = DEFAULT_THETA;
+
+    /**
+     * the softening length in px that keeps the force finite for very close particles
+     */
+    private double softening = DEFAULT_SOFTENING;
+
+    /**
+     * the Morton code of each particle in the upper 32 bits and its id in the lower 32 bits, sorted
+     */
+    private long[] keys = new long[0];
+
+    /**
+     * the total mass and the center of mass of each node
+     */
+    private double[] nodeMass, nodeX, nodeY;
+
+    /**
+     * the side length of the square of each node in px
+     */
+    private double[] nodeSize;
+
+    /**
+     * the range of sorted particles of each node, the end is exclusive
+     */
+    private int[] nodeFrom, nodeTo;
+
+    /**
+     * the index of the first child of each node, or -1 for leaves, and the number of children
+     */
+    private int[] firstChild, childCount;
+
+    /**
+     * the traversal stack of each thread of the force pass
+     */
+    private final ThreadLocal<int[]> stacks = ThreadLocal.withInitial(() -> new int[STACK_SIZE]);
+
+    /**
+     * the number of allocated nodes in the current build
+     */
+    private final AtomicInteger nodeCount = new AtomicInteger();
+
+    /**
+     * the option that the current build needed more nodes than allocated
+     */
+    private volatile boolean overflow;
+
+    /**
+     * Creates a new disabled Barnes-Hut solver.
+     *
+     * @param store the store holding the state of all particles
+     */
+    public BarnesHut(ParticleStore store) {
+        this.store = store;
+        allocateNodes(64);
+    }
+
+    /**
+     * Replaces all node arrays by arrays of a given capacity.
+     *
+     * @param capacity the number of nodes
+     */
+    private void allocateNodes(int capacity) {
+        nodeMass = new double[capacity];
+        nodeX = new double[capacity];
+        nodeY = new double[capacity];
+        nodeSize = new double[capacity];
+        nodeFrom = new int[capacity];
+        nodeTo = new int[capacity];
+        firstChild = new int[capacity];
+        childCount = new int[capacity];
+    }
+
+    /**
+     * Adds the gravitational attraction of all other particles to the forces of all movable particles.
+     * Does nothing if the gravitational constant is zero.
+     */
+    public void applyForces() {
+        int n = store.size();
+        if (n == 0 || gravitationalConstant == 0.0)
+            return;
+
+        buildTree(n);
+
+        double sqTheta = theta * theta, sqSoftening = softening * softening;
+        IntStream.range(0, (n + CHUNK_SIZE - 1) / CHUNK_SIZE).parallel().forEach(chunk -> {
+            int[] stack = stacks.get();
+            for (int k = chunk * CHUNK_SIZE, end = Math.min(n, k + CHUNK_SIZE); k < end; k++) {
+                int i = (int) keys[k];
+                if (!store.fixed[i])
+                    tickForce(k, stack, sqTheta, sqSoftening);
+            }
+        });
+    }
+
+    /**
+     * Sorts all particles along the Morton curve and builds the quadtree, growing the node arrays until it fits.
+     *
+     * @param n the number of particles
+     */
+    private void buildTree(int n) {
+        double[] x = store.x, y = store.y;
+        // The bounding box in a single reduction: minimum x and y, then maximum x and y
+        double[] box = IntStream.range(0, n).parallel().collect(() -> new double[]{Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY}, (b, i) -> {
+            b[0] = Math.min(b[0], x[i]);
+            b[1] = Math.min(b[1], y[i]);
+            b[2] = Math.max(b[2], x[i]);
+            b[3] = Math.max(b[3], y[i]);
+        }, (b1, b2) -> {
+            b1[0] = Math.min(b1[0], b2[0]);
+            b1[1] = Math.min(b1[1], b2[1]);
+            b1[2] = Math.max(b1[2], b2[2]);
+            b1[3] = Math.max(b1[3], b2[3]);
+        });
+        double minX = box[0], minY = box[1], maxX = box[2], maxY = box[3];
+        double size = Math.max(Math.max(maxX - minX, maxY - minY), Double.MIN_NORMAL);
+        double scale = (1 << MAX_LEVEL) / size;
+
+        if (keys.length < n)
+            keys = new long[Math.max(n, 2 * keys.length)];
+        long[] keys = this.keys;
+        int maxCell = (1 << MAX_LEVEL) - 1;
+        IntStream.range(0, n).parallel().forEach(i -> {
+            int cx = Math.min(maxCell, (int) ((x[i] - minX) * scale));
+            int cy = Math.min(maxCell, (int) ((y[i] - minY) * scale));
+            keys[i] = (long) interleave(cx, cy) << 32 | i;
+        });
+        Arrays.parallelSort(keys, 0, n);
+
+        while (true) {
+            overflow = false;
+            nodeCount.set(1);
+            nodeFrom[0] = 0;
+            nodeTo[0] = n;
+            nodeSize[0] = size;
+            build(0, 0);
+            if (!overflow)
+                return;
+
+            allocateNodes(2 * Math.max(nodeMass.length, nodeCount.get()));
+        }
+    }
+
+    /**
+     * Interleaves the bits of two cell coordinates to a Morton code, with the vertical bit being the more significant one.
+     *
+     * @param cx the horizontal cell coordinate with {@value #MAX_LEVEL} bits
+     * @param cy the vertical cell coordinate with {@value #MAX_LEVEL} bits
+     * @return the Morton code
+     */
+    private static int interleave(int cx, int cy) {
+        return spread(cx) | spread(cy) << 1;
+    }
+
+    /**
+     * @return the 15 lowest bits of a value, spread to every second bit
+     */
+    private static int spread(int v) {
+        v = (v | v << 8) & 0x00FF00FF;
+        v = (v | v << 4) & 0x0F0F0F0F;
+        v = (v | v << 2) & 0x33333333;
+        v = (v | v << 1) & 0x55555555;
+        return v;
+    }
+
+    /**
+     * @return the quadrant of a sorted particle within a node on a given level
+     */
+    private int quadrant(int k, int level) {
+        return (int) (keys[k] >>> (32 + 2 * (MAX_LEVEL - 1 - level))) & 3;
+    }
+
+    /**
+     * Finds the first sorted particle of a node whose quadrant is at least a given one.
+     *
+     * @param from     the first sorted particle of the node
+     * @param to       the last sorted particle of the node, exclusive
+     * @param level    the level of the node
+     * @param quadrant the quadrant to find
+     * @return the index of the first sorted particle in this or a later quadrant, or {@code to} if there is none
+     */
+    private int lowerBound(int from, int to, int level, int quadrant) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (quadrant(mid, level) < quadrant)
+                from = mid + 1;
+            else
+                to = mid;
+        }
+        return from;
+    }
+
+    /**
+     * Computes the gravitational force on a particle by traversing the tree.
+     * Nodes that contain the particle itself are always opened, so it never attracts itself through the center of mass of a node,
+     * no matter how large the opening angle or the softening is.
+     *
+     * @param k           the index of the particle in the Morton order
+     * @param stack       the traversal stack of the current thread
+     * @param sqTheta     the opening angle, squared
+     * @param sqSoftening the softening length, squared
+     */
+    private void tickForce(int k, int[] stack, double sqTheta, double sqSoftening) {
+        double[] x = store.x, y = store.y, mass = store.mass;
+        int i = (int) keys[k];
+        double xi = x[i], yi = y[i];
+        double sumX = 0.0, sumY = 0.0;
+
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            double dx = nodeX[node] - xi, dy = nodeY[node] - yi;
+            double sqDis = dx * dx + dy * dy + sqSoftening;
+            boolean containsParticle = k >= nodeFrom[node] && k < nodeTo[node];
+
+            if (firstChild[node] < 0) {
+                // Leaf: sum up all of its particles directly
+                for (int l = nodeFrom[node]; l < nodeTo[node]; l++) {
+                    int j = (int) keys[l];
+                    if (j == i)
+                        continue;
+
+                    double px = x[j] - xi, py = y[j] - yi;
+                    double sqD = px * px + py * py + sqSoftening;
+                    double f = mass[j] / (sqD * Math.sqrt(sqD));
+                    sumX += px * f;
+                    sumY += py * f;
+                }
+            } else if (!containsParticle && nodeSize[node] * nodeSize[node] < sqTheta * sqDis) {
+                // Far away: approximate the whole node by its center of mass
+                double f = nodeMass[node] / (sqDis * Math.sqrt(sqDis));
+                sumX += dx * f;
+                sumY += dy * f;
+            } else {
+                for (int c = firstChild[node], end = c + childCount[node]; c < end; c++)
+                    stack[top++] = c;
+            }
+        }
+
+        double scale = gravitationalConstant * mass[i];
+        store.fx[i] += sumX * scale;
+        store.fy[i] += sumY * scale;
+    }
+
+    /**
+     * @param gravitationalConstant the gravitational constant G, or zero to disable long-range gravity
+     */
+    public void setGravitationalConstant(double gravitationalConstant) {
+        this.gravitationalConstant = gravitationalConstant;
+    }
+
+    public double getGravitationalConstant() {
+        return gravitationalConstant;
+    }
+
+    /**
+     * Changes the accuracy of the approximation. Smaller angles are more accurate, zero computes all pairs exactly.
+     * Nodes that contain a particle are never approximated for it, so even large angles never let a particle attract itself.
+     *
+     * @param theta the opening angle theta, i.e. the maximum ratio of node size and distance to approximate a node by its center of mass
+     * @throws IllegalArgumentException if the angle is negative
+     */
+    public void setTheta(double theta) {
+        if (theta < 0.0)
+            throw new IllegalArgumentException("Opening angle must not be negative, but is " + theta);
+        this.theta = theta;
+    }
+
+    public double getTheta() {
+        return theta;
+    }
+
+    /**
+     * @param softening the softening length in px that keeps the force finite for very close particles
+     */
+    public void setSoftening(double softening) {
+        this.softening = softening;
+    }
+
+    public double getSoftening() {
+        return softening;
+    }
+
+    /**
+     * Builds one node of the tree and, recursively, all of its children.
+     * The range and size of the node have to be set before. Children of large nodes are built in parallel, all others on the current thread.
+     *
+     * @param node  the index of the node to build
+     * @param level the level of the node, zero for the root
+     */
+    private void build(int node, int level) {
+        int from = nodeFrom[node], to = nodeTo[node];
+        if (to - from <= LEAF_SIZE || level == MAX_LEVEL) {
+            buildLeaf(node, from, to);
+            return;
+        }
+
+        // Find the ranges of all quadrants, the first one always starts at the node
+        int b1 = lowerBound(from, to, level, 1);
+        int b2 = lowerBound(b1, to, level, 2);
+        int b3 = lowerBound(b2, to, level, 3);
+        int children = (b1 > from ? 1 : 0) + (b2 > b1 ? 1 : 0) + (b3 > b2 ? 1 : 0) + (to > b3 ? 1 : 0);
+
+        int first = nodeCount.getAndAdd(children);
+        if (first + children > nodeMass.length) {
+            overflow = true;
+            return;
+        }
+
+        firstChild[node] = first;
+        childCount[node] = children;
+        double childSize = nodeSize[node] / 2.0;
+        int c = addChild(first, from, b1, childSize);
+        c = addChild(c, b1, b2, childSize);
+        c = addChild(c, b2, b3, childSize);
+        addChild(c, b3, to, childSize);
+
+        if (to - from >= PARALLEL_THRESHOLD) {
+            // Fork all but the last child and build the last one on the current thread
+            BuildTask forked = null;
+            for (c = first; c < first + children - 1; c++) {
+                forked = new BuildTask(this, c, level + 1, forked);
+                forked.fork();
+            }
+            build(first + children - 1, level + 1);
+            for (; forked != null; forked = forked.next)
+                forked.join();
+        } else {
+            for (c = first; c < first + children; c++)
+                build(c, level + 1);
+        }
+
+        if (overflow)
+            return;
+
+        // Combine the mass and center of mass of all children
+        double m = 0.0, mx = 0.0, my = 0.0;
+        for (c = first; c < first + children; c++) {
+            m += nodeMass[c];
+            mx += nodeMass[c] * nodeX[c];
+            my += nodeMass[c] * nodeY[c];
+        }
+        setCenter(node, m, mx, my);
+    }
+
+    /**
+     * Sets the range and size of a child node, unless its range is empty.
+     *
+     * @return the index of the next child node
+     */
+    private int addChild(int c, int from, int to, double size) {
+        if (to == from)
+            return c;
+
+        nodeFrom[c] = from;
+        nodeTo[c] = to;
+        nodeSize[c] = size;
+        return c + 1;
+    }
+
+    /**
+     * Computes the mass and center of mass of a leaf directly from its particles.
+     */
+    private void buildLeaf(int node, int from, int to) {
+        double[] x = store.x, y = store.y, mass = store.mass;
+        double m = 0.0, mx = 0.0, my = 0.0;
+        for (int k = from; k < to; k++) {
+            int j = (int) keys[k];
+            m += mass[j];
+            mx += mass[j] * x[j];
+            my += mass[j] * y[j];
+        }
+        firstChild[node] = -1;
+        childCount[node] = 0;
+        setCenter(node, m, mx, my);
+    }
+
+    /**
+     * Stores the total mass and the center of mass of a node.
+     */
+    private void setCenter(int node, double m, double mx, double my) {
+        nodeMass[node] = m;
+        nodeX[node] = m == 0.0 ? nodeX[node] : mx / m;
+        nodeY[node] = m == 0.0 ? nodeY[node] : my / m;
+    }
+
+    /**
+     * Builds one child node on another worker thread, see {@link #build}.
+     * The tasks of all forked siblings form a linked list, so no array has to be allocated to join them.
+     */
+    private static class BuildTask extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * the solver to build the node of
+         */
+        private final BarnesHut solver;
+
+        /**
+         * the index of the node to build
+         */
+        private final int node;
+
+        /**
+         * the level of the node, zero for the root
+         */
+        private final int level;
+
+        /**
+         * the task of the previously forked sibling, or null
+         */
+        private final BuildTask next;
+
+        private BuildTask(BarnesHut solver, int node, int level, BuildTask next) {
+            this.solver = solver;
+            this.node = node;
+            this.level = level;
+            this.next = next;
+        }
+
+        @Override
+        protected void compute() {
+            solver.build(node, level);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package de.javaabc.particlesimulation.particle;
+
+import java.util.stream.IntStream;
+
+/**
+ * The behaviour of particles at the edges of the simulated world.
+ */
+public enum BoundaryCondition {
+    /**
+     * Particles bounce off the walls of the world.
+     * A particle close to a wall feels the Lennard-Jones force of its own mirror image behind that wall,
+     * which is computed directly from the particle's position and species.
+     * Particles that still leave the block grid are removed.
+     */
+    REFLECTIVE {
+        @Override
+        public void applyForces(ParticleStore store, double width, double height, double cutoffDistance) {
+            double r = cutoffDistance / 2.0;
+            double[] x = store.x, y = store.y, fx = store.fx, fy = store.fy;
+            var table = store.speciesTable;
+            IntStream.range(0, store.size()).parallel().forEach(i -> {
+                if (store.fixed[i])
+                    return;
+
+                int pair = store.species[i] * (table.count() + 1);
+                double xi = x[i], yi = y[i];
+
+                // The mirror image behind the wall has the distance 2 * d to the particle, where d is the distance to the wall
+                if (xi < r)
+                    fx[i] -= 2.0 * xi * wallForceFactor(table, pair, 2.0 * xi);
+                else if (xi > width - r)
+                    fx[i] -= 2.0 * (xi - width) * wallForceFactor(table, pair, 2.0 * (width - xi));
+
+                if (yi < r)
+                    fy[i] -= 2.0 * yi * wallForceFactor(table, pair, 2.0 * yi);
+                else if (yi > height - r)
+                    fy[i] -= 2.0 * (yi - height) * wallForceFactor(table, pair, 2.0 * (height - yi));
+            });
+        }
+
+        @Override
+        public void confine(ParticleStore store) {
+        }
+    },
+
+    /**
+     * The world wraps around in both directions, so there are no walls and no particle ever leaves the grid.
+     * The periodic box is the full block grid, i.e. the world size rounded up to whole blocks,
+     * and all pair distances are computed using the nearest periodic image of the other particle.
+     */
+    PERIODIC {
+        @Override
+        public void applyForces(ParticleStore store, double width, double height, double cutoffDistance) {
+        }
+
+        @Override
+        public void confine(ParticleStore store) {
+            IntStream.range(0, store.size()).parallel().forEach(store::wrap);
+        }
+    };
+
+    /**
+     * Computes the forces of the boundary on all particles close to it.
+     *
+     * @param store          the store holding the state of all particles
+     * @param width          the width of the simulated world in px
+     * @param height         the height of the simulated world in px
+     * @param cutoffDistance the maximum distance to compute forces between particles
+     */
+    public abstract void applyForces(ParticleStore store, double width, double height, double cutoffDistance);
+
+    /**
+     * Moves all particles that crossed the boundary back into the world, if this boundary condition allows it.
+     *
+     * @param store the store holding the state of all particles
+     */
+    public abstract void confine(ParticleStore store);
+
+    /**
+     * Computes the Lennard-Jones force between a particle and its mirror image, divided by their distance.
+     *
+     * @param table the interaction parameters of all species
+     * @param pair  the index of the species pair of the particle with itself
+     * @param d     the distance between the particle and its mirror image
+     * @return the factor to scale the positional difference with, or zero if out of range
+     */
+    private static double wallForceFactor(SpeciesTable table, int pair, double d) {
+        double sqDis = d * d;
+        if (sqDis == 0.0 || sqDis > table.sqCutoff[pair])
+            return 0.0;
+
+        return ForceTable.analytic(sqDis, table.mixedEpsilon[pair], table.mixedSigma[pair]);
+    }
+}
@@ -0,0 +1,163 @@
+package de.javaabc.particlesimulation.particle;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * A flat cell layout of all particles, rebuilt from scratch with a parallel counting sort.
+ * The ids of all particles in cell c are stored at the indices [cellStart[c], cellStart[c + 1]) of {@link #cellParticles}.
+ * Particles outside the grid are collected in an additional last cell.
+ */
+class CellIndex {
+    /**
+     * the cell index of each particle id
+     */
+    private int[] cellOf;
+
+    /**
+     * the offsets of each cell in {@link #cellParticles}
+     */
+    int[] cellStart;
+
+    /**
+     * the particle ids, sorted by cell
+     */
+    int[] cellParticles;
+
+    /**
+     * the number of cells inside the grid
+     */
+    int cells;
+
+    /**
+     * the modification count of the store at the last rebuild, used to detect added or removed particles
+     */
+    private int modCount = -1;
+
+    /**
+     * the number of particles that changed their cell in the last rebuild, or -1 if particles were added or removed before it
+     */
+    private int changed = -1;
+
+    /**
+     * the per-chunk counts of each cell, reused as write offsets, indexed by chunk and cell
+     */
+    private int[][] counts = new int[0][];
+
+    /**
+     * the number of particles that changed their cell, indexed by chunk
+     */
+    private int[] changes = new int[0];
+
+    CellIndex() {
+        cellOf = cellParticles = new int[0];
+        cellStart = new int[1];
+    }
+
+    /**
+     * Recomputes the cell of every particle in parallel and sorts all particle ids by cell.
+     * Each worker counts the particles of its chunk per cell, a prefix sum over all (cell, chunk) counts yields
+     * the write offsets and each worker finally scatters its chunk, so no synchronization is needed.
+     *
+     * @param store       the store holding the positions of all particles
+     * @param scaleFactor the factor to convert a position in px to a cell position
+     * @param width       the horizontal number of cells
+     * @param height      the vertical number of cells
+     */
+    void rebuild(ParticleStore store, double scaleFactor, int width, int height) {
+        int n = store.size();
+        boolean sameParticles = modCount == store.modCount();
+        modCount = store.modCount();
+        cells = width * height;
+        if (cellOf.length < n) {
+            cellOf = new int[store.handles.length];
+            cellParticles = new int[store.handles.length];
+        }
+        if (cellStart.length != cells + 2)
+            cellStart = new int[cells + 2];
+
+        int chunks = Math.max(1, Math.min(n, 4 * ForkJoinPool.getCommonPoolParallelism()));
+        int chunkSize = (n + chunks - 1) / chunks;
+        ensureChunks(chunks);
+        int[][] counts = this.counts;
+        int[] changes = this.changes;
+        double[] x = store.x, y = store.y;
+
+        // Compute the cell of each particle and count per chunk
+        IntStream.range(0, chunks).parallel().forEach(k -> {
+            int[] count = counts[k];
+            Arrays.fill(count, 0, cells + 1, 0);
+            int changedCells = 0;
+            for (int i = k * chunkSize, end = Math.min(n, i + chunkSize); i < end; i++) {
+                int cx = (int) (x[i] * scaleFactor);
+                int cy = (int) (y[i] * scaleFactor);
+                int cell = cx >= 0 && cy >= 0 && cx < width && cy < height ? cy * width + cx : cells;
+                if (cellOf[i] != cell)
+                    changedCells++;
+                cellOf[i] = cell;
+                count[cell]++;
+            }
+            changes[k] = changedCells;
+        });
+        int changedCells = 0;
+        for (int k = 0; k < chunks; k++)
+            changedCells += changes[k];
+        changed = sameParticles ? changedCells : -1;
+
+        // Prefix sum over all cells and chunks
+        int pos = 0;
+        for (int c = 0; c <= cells; c++) {
+            cellStart[c] = pos;
+            for (int k = 0; k < chunks; k++) {
+                int count = counts[k][c];
+                counts[k][c] = pos;
+                pos += count;
+            }
+        }
+        cellStart[cells + 1] = pos;
+
+        // Scatter particle ids
+        IntStream.range(0, chunks).parallel().forEach(k -> {
+            int[] offset = counts[k];
+            for (int i = k * chunkSize, end = Math.min(n, i + chunkSize); i < end; i++)
+                cellParticles[offset[cellOf[i]]++] = i;
+        });
+    }
+
+    /**
+     * Grows the per-chunk count arrays, so a rebuild with a constant number of chunks and cells allocates nothing.
+     *
+     * @param chunks the number of chunks of the next rebuild
+     */
+    private void ensureChunks(int chunks) {
+        if (changes.length < chunks) {
+            counts = Arrays.copyOf(counts, chunks);
+            changes = new int[chunks];
+        }
+        for (int k = 0; k < chunks; k++)
+            if (counts[k] == null || counts[k].length < cells + 1)
+                counts[k] = new int[cells + 1];
+    }
+
+    /**
+     * @return the modification count of the store at the last rebuild
+     */
+    int modCount() {
+        return modCount;
+    }
+
+    /**
+     * @return the number of particles that changed their cell in the last rebuild, or -1 if particles were added or removed before it
+     */
+    int changed() {
+        return changed;
+    }
+
+    /**
+     * @return the number of particles inside the grid
+     */
+    int inside() {
+        return cellStart[cells];
+    }
+}
@@ -0,0 +1,703 @@
+package de.javaabc.particlesimulation.particle;
+
+import java.util.Arrays;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * A spatial domain decomposition of the block grid into rectangular regions, each owned by one dedicated worker thread.
+ * Every worker keeps the ids, positions and species of the particles in its region in its own contiguous arrays, sorted by block,
+ * across all passes. Before each pair pass, a worker refreshes the positions of its own particles and hands the few particles
+ * that crossed a region border over to their new owner. It then copies its own particles and a halo of all blocks around its region,
+ * taken from the arrays of the neighbored regions, into a local working set. Pairs within the region are computed once and update
+ * both particles, pairs with halo copies only update the owned particle. Each worker finally adds the forces of its owned particles
+ * to the store, so no thread ever writes a particle owned by another thread and no per-thread force buffers need to be reduced.
+ * <p>
+ * Only if particles were added or removed since the last pass, which changes the particle ids, all regions are refilled
+ * from the {@link CellIndex}.
+ */
+class DomainDecomposition {
+    /**
+     * the container holding the block grid
+     */
+    private final ParticleContainer container;
+
+    /**
+     * the store holding the state of all particles
+     */
+    private final ParticleStore store;
+
+    /**
+     * the factor to convert a position in px to a block position, as used by the container
+     */
+    private final double scaleFactor;
+
+    /**
+     * the regions, indexed by worker
+     */
+    private final Region[] regions;
+
+    /**
+     * the column / row of regions that owns each block column / row
+     */
+    private final int[] tileOfColumn, tileOfRow;
+
+    /**
+     * the number of regions per row
+     */
+    private final int tilesX;
+
+    /**
+     * the dedicated worker threads, one per region
+     */
+    private final Thread[] workers;
+
+    /**
+     * the barriers to start and finish a pass on all workers together with the calling thread
+     */
+    private final CyclicBarrier start, finish;
+
+    /**
+     * the barrier between the phases of a pass, on the workers only
+     */
+    private final CyclicBarrier phase;
+
+    /**
+     * the tabulated forces to use in the current pass, or null for the analytic force
+     */
+    private ForceTable forceTable;
+
+    /**
+     * the option to refill all regions from the cell index in the current pass
+     */
+    private boolean refill;
+
+    /**
+     * the modification count of the store at the last pass, used to detect added or removed particles
+     */
+    private int modCount = -1;
+
+    /**
+     * the first error thrown by any worker during the current pass
+     */
+    private volatile Throwable error;
+
+    /**
+     * Creates a new domain decomposition and starts its workers.
+     *
+     * @param container the container holding the block grid
+     * @param store     the store holding the state of all particles
+     * @param count     the requested number of regions, reduced if the grid has fewer blocks
+     */
+    DomainDecomposition(ParticleContainer container, ParticleStore store, int count) {
+        this.container = container;
+        this.store = store;
+        scaleFactor = 1.0 / container.getBlockSize();
+
+        int width = container.getWidth(), height = container.getHeight();
+        count = Math.max(1, Math.min(count, width * height));
+
+        // Pick the tiling whose regions are closest to square
+        int tilesX = 1, tilesY = count;
+        double bestRatio = Double.MAX_VALUE;
+        for (int tx = 1; tx <= count; tx++) {
+            int ty = count / tx;
+            if (tx * ty != count || tx > width || ty > height)
+                continue;
+
+            double ratio = Math.abs(Math.log((double) width / tx * ty / height));
+            if (ratio < bestRatio) {
+                bestRatio = ratio;
+                tilesX = tx;
+                tilesY = ty;
+            }
+        }
+        if (bestRatio == Double.MAX_VALUE) { // e.g. a prime count larger than both grid dimensions
+            tilesX = Math.min(count, width);
+            tilesY = Math.min(count / tilesX, height);
+        }
+        this.tilesX = tilesX;
+
+        tileOfColumn = new int[width];
+        tileOfRow = new int[height];
+        regions = new Region[tilesX * tilesY];
+        for (int ty = 0; ty < tilesY; ty++)
+            for (int tx = 0; tx < tilesX; tx++) {
+                int minX = tx * width / tilesX, maxX = (tx + 1) * width / tilesX;
+                int minY = ty * height / tilesY, maxY = (ty + 1) * height / tilesY;
+                Arrays.fill(tileOfColumn, minX, maxX, tx);
+                Arrays.fill(tileOfRow, minY, maxY, ty);
+                regions[ty * tilesX + tx] = new Region(ty * tilesX + tx, minX, maxX, tilesX > 1, minY, maxY, tilesY > 1);
+            }
+
+        start = new CyclicBarrier(regions.length + 1);
+        finish = new CyclicBarrier(regions.length + 1);
+        phase = new CyclicBarrier(regions.length);
+        workers = new Thread[regions.length];
+        for (int r = 0; r < regions.length; r++) {
+            var region = regions[r];
+            workers[r] = new Thread(() -> work(region), "domain-worker-" + r);
+            workers[r].setDaemon(true);
+            workers[r].start();
+        }
+    }
+
+    /**
+     * The loop of one worker thread that computes the forces of its region once per pass.
+     * A worker that fails still passes every barrier of the pass, so no other thread waits for it.
+     * If a worker dies anyway, it breaks all barriers, so the calling thread fails instead of waiting forever.
+     *
+     * @param region the region owned by this worker
+     */
+    private void work(Region region) {
+        try {
+            while (true) {
+                start.await();
+                runPhase(refill ? region::refill : region::refresh);
+                phase.await();
+                runPhase(region::migrate);
+                phase.await();
+                runPhase(region::tickForces);
+                finish.await();
+            }
+        } catch (InterruptedException | BrokenBarrierException e) {
+            // Shut down
+        } catch (Throwable e) {
+            fail(e);
+            start.reset();
+            phase.reset();
+            finish.reset();
+        }
+    }
+
+    /**
+     * Runs one phase of a pass on the current worker, unless any worker already failed in this pass.
+     *
+     * @param phase the phase to run
+     */
+    private void runPhase(Runnable phase) {
+        if (error != null)
+            return;
+
+        try {
+            phase.run();
+        } catch (Throwable e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Records the first error of the current pass.
+     *
+     * @param e the error thrown by a worker
+     */
+    private synchronized void fail(Throwable e) {
+        if (error == null)
+            error = e;
+    }
+
+    /**
+     * Computes the Lennard-Jones forces between all particle pairs within the cutoff distance on all workers
+     * and waits until every worker is done. After a failed pass, the decomposition must be shut down, see {@link #shutdown()}.
+     *
+     * @param forceTable the tabulated forces to interpolate, or null to compute the analytic force
+     * @throws RuntimeException if any worker failed with an exception
+     * @throws Error            if any worker failed with an error, e.g. an {@link OutOfMemoryError}
+     */
+    void tickForces(ForceTable forceTable) {
+        // Published to the workers by the barrier
+        this.forceTable = forceTable;
+        refill = modCount != store.modCount();
+        modCount = store.modCount();
+        error = null;
+        try {
+            start.await();
+            finish.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Domain workers were interrupted", e);
+        } catch (BrokenBarrierException e) {
+            if (error == null)
+                throw new IllegalStateException("Domain workers were stopped", e);
+        }
+
+        var failure = error;
+        if (failure instanceof RuntimeException e)
+            throw e;
+        if (failure instanceof Error e)
+            throw e;
+        if (failure != null)
+            throw new IllegalStateException("Domain worker failed", failure);
+    }
+
+    /**
+     * Stops all worker threads.
+     */
+    void shutdown() {
+        for (Thread worker : workers)
+            worker.interrupt();
+    }
+
+    /**
+     * @param column the global block column
+     * @param row    the global block row
+     * @return the region owning the block
+     */
+    private Region regionOf(int column, int row) {
+        return regions[tileOfRow[row] * tilesX + tileOfColumn[column]];
+    }
+
+    /**
+     * @param id the id of a particle
+     * @return the block column of the particle, clamped to the grid
+     */
+    private int clampedColumn(int id) {
+        return Math.max(0, Math.min(container.getWidth() - 1, (int) (store.x[id] * scaleFactor)));
+    }
+
+    /**
+     * @param id the id of a particle
+     * @return the block row of the particle, clamped to the grid
+     */
+    private int clampedRow(int id) {
+        return Math.max(0, Math.min(container.getHeight() - 1, (int) (store.y[id] * scaleFactor)));
+    }
+
+    /**
+     * A rectangle of blocks owned by one worker. It keeps the particles of its blocks across passes
+     * and builds a local working set of its own particles and the halo copies around it in each pass.
+     */
+    private class Region {
+        /**
+         * the index of this region
+         */
+        private final int index;
+
+        /**
+         * the first owned block column and row
+         */
+        private final int minX, minY;
+
+        /**
+         * the number of owned block columns and rows
+         */
+        private final int ownedColumns, ownedRows;
+
+        /**
+         * the options to add a halo column / row on both sides of the region, which is not necessary if the region spans the grid
+         */
+        private final boolean haloX, haloY;
+
+        /**
+         * the number of local block columns and rows, including halos
+         */
+        private final int columns, rows;
+
+        /**
+         * the store ids of the particles owned by this region, sorted by owned block
+         */
+        private int[] ownIds = new int[0];
+
+        /**
+         * the positions of the owned particles, refreshed in each pass
+         */
+        private double[] ownX = new double[0], ownY = new double[0];
+
+        /**
+         * the species of the owned particles
+         */
+        private int[] ownSpecies = new int[0];
+
+        /**
+         * the number of owned particles
+         */
+        private int ownCount;
+
+        /**
+         * the offsets of each owned block in the owned arrays, indexed by row * ownedColumns + column relative to the region
+         */
+        private final int[] ownStart;
+
+        /**
+         * the owned block of each owned particle in the current pass, or -1 if it left the region
+         */
+        private int[] ownBlock = new int[0];
+
+        /**
+         * the spare array to sort the owned ids into
+         */
+        private int[] sortedIds = new int[0];
+
+        /**
+         * the ids of the particles that left this region in the current pass and the indices of their new regions
+         */
+        private int[] outIds = new int[0], outRegions = new int[0];
+
+        /**
+         * the number of particles that left this region in the current pass
+         */
+        private int outCount;
+
+        /**
+         * the offsets of each local block in the local arrays, indexed by row * columns + column
+         */
+        private final int[] blockStart;
+
+        /**
+         * the store ids of all local particles
+         */
+        private int[] ids = new int[0];
+
+        /**
+         * the local copies of the positions of all local particles
+         */
+        private double[] x = new double[0], y = new double[0];
+
+        /**
+         * the local copies of the species of all local particles
+         */
+        private int[] species = new int[0];
+
+        /**
+         * the forces on all local particles accumulated in the current pass
+         */
+        private double[] fx = new double[0], fy = new double[0];
+
+        /**
+         * Creates a new region.
+         *
+         * @param index the index of this region
+         * @param minX  the first owned block column
+         * @param maxX  the last owned block column, exclusive
+         * @param haloX the option to add a halo column on both sides
+         * @param minY  the first owned block row
+         * @param maxY  the last owned block row, exclusive
+         * @param haloY the option to add a halo row on both sides
+         */
+        private Region(int index, int minX, int maxX, boolean haloX, int minY, int maxY, boolean haloY) {
+            this.index = index;
+            this.minX = minX;
+            this.minY = minY;
+            this.haloX = haloX;
+            this.haloY = haloY;
+            ownedColumns = maxX - minX;
+            ownedRows = maxY - minY;
+            columns = ownedColumns + (haloX ? 2 : 0);
+            rows = ownedRows + (haloY ? 2 : 0);
+            ownStart = new int[ownedColumns * ownedRows + 1];
+            blockStart = new int[columns * rows + 1];
+        }
+
+        /**
+         * Converts a local block position to a global block position.
+         *
+         * @param local  the local column or row
+         * @param min    the first owned global column or row
+         * @param halo   the option of a halo on this axis
+         * @param length the number of global columns or rows
+         * @return the global column or row, or -1 if outside a non-periodic grid
+         */
+        private int global(int local, int min, boolean halo, int length) {
+            int global = min + local - (halo ? 1 : 0);
+            if (global >= 0 && global < length)
+                return global;
+            return store.periodX != 0.0 ? Math.floorMod(global, length) : -1;
+        }
+
+        /**
+         * @return true iff the local block is owned by this region and not part of the halo
+         */
+        private boolean owns(int column, int row) {
+            return (!haloX || column > 0 && column < columns - 1) && (!haloY || row > 0 && row < rows - 1);
+        }
+
+        /**
+         * Computes the owned block of a particle, relative to this region.
+         *
+         * @param id the id of a particle in a block of this region
+         * @return the owned block of the particle
+         */
+        private int ownedBlockOf(int id) {
+            return (clampedRow(id) - minY) * ownedColumns + clampedColumn(id) - minX;
+        }
+
+        /**
+         * Grows the owned arrays to hold at least a given number of particles.
+         *
+         * @param required the required capacity
+         */
+        private void ensureOwnCapacity(int required) {
+            if (ownIds.length >= required)
+                return;
+
+            int capacity = Math.max(required, 2 * ownIds.length);
+            ownIds = Arrays.copyOf(ownIds, capacity);
+            ownBlock = Arrays.copyOf(ownBlock, capacity);
+            sortedIds = new int[capacity];
+            ownX = new double[capacity];
+            ownY = new double[capacity];
+            ownSpecies = new int[capacity];
+        }
+
+        /**
+         * Replaces the owned particles by all particles in the blocks of this region, taken from the cell index.
+         * Used whenever particles were added or removed, which invalidates the kept ids.
+         */
+        private void refill() {
+            var cells = container.cells;
+            int width = container.getWidth();
+
+            int count = 0;
+            for (int row = 0; row < ownedRows; row++)
+                for (int column = 0; column < ownedColumns; column++) {
+                    int cell = (minY + row) * width + minX + column;
+                    count += cells.cellStart[cell + 1] - cells.cellStart[cell];
+                }
+            ensureOwnCapacity(count);
+
+            int k = 0;
+            for (int row = 0; row < ownedRows; row++)
+                for (int column = 0; column < ownedColumns; column++) {
+                    int cell = (minY + row) * width + minX + column;
+                    for (int c = cells.cellStart[cell]; c < cells.cellStart[cell + 1]; c++, k++) {
+                        ownIds[k] = cells.cellParticles[c];
+                        ownBlock[k] = row * ownedColumns + column;
+                    }
+                }
+            ownCount = k;
+            outCount = 0;
+        }
+
+        /**
+         * Finds the current block of each owned particle and hands the particles that left this region over to their new region.
+         */
+        private void refresh() {
+            outCount = 0;
+            for (int k = 0; k < ownCount; k++) {
+                int id = ownIds[k];
+                int column = clampedColumn(id), row = clampedRow(id);
+                int localColumn = column - minX, localRow = row - minY;
+                if (localColumn >= 0 && localColumn < ownedColumns && localRow >= 0 && localRow < ownedRows) {
+                    ownBlock[k] = localRow * ownedColumns + localColumn;
+                    continue;
+                }
+
+                ownBlock[k] = -1;
+                if (outCount == outIds.length) {
+                    outIds = Arrays.copyOf(outIds, Math.max(16, 2 * outCount));
+                    outRegions = Arrays.copyOf(outRegions, outIds.length);
+                }
+                outIds[outCount] = id;
+                outRegions[outCount++] = regionOf(column, row).index;
+            }
+        }
+
+        /**
+         * Takes over the particles that other regions handed over to this region, sorts all owned particles by block
+         * and copies their positions and species from the store.
+         */
+        private void migrate() {
+            int n = ownCount;
+            for (var other : regions)
+                for (int j = 0; j < other.outCount; j++)
+                    if (other.outRegions[j] == index) {
+                        ensureOwnCapacity(n + 1);
+                        ownIds[n] = other.outIds[j];
+                        ownBlock[n++] = ownedBlockOf(other.outIds[j]);
+                    }
+
+            // Counting sort by owned block, dropping the particles that left
+            int blocks = ownedColumns * ownedRows;
+            Arrays.fill(ownStart, 0);
+            for (int k = 0; k < n; k++)
+                if (ownBlock[k] >= 0)
+                    ownStart[ownBlock[k] + 1]++;
+            for (int b = 0; b < blocks; b++)
+                ownStart[b + 1] += ownStart[b];
+
+            int[] sorted = sortedIds;
+            for (int k = 0; k < n; k++)
+                if (ownBlock[k] >= 0)
+                    sorted[ownStart[ownBlock[k]]++] = ownIds[k];
+            // Each offset now points to the start of the next block
+            System.arraycopy(ownStart, 0, ownStart, 1, blocks);
+            ownStart[0] = 0;
+            sortedIds = ownIds;
+            ownIds = sorted;
+            ownCount = ownStart[blocks];
+
+            for (int k = 0; k < ownCount; k++) {
+                int id = ownIds[k];
+                ownX[k] = store.x[id];
+                ownY[k] = store.y[id];
+                ownSpecies[k] = store.species[id];
+            }
+        }
+
+        /**
+         * Copies the particles of all local blocks into the local arrays, the owned blocks from this region
+         * and the halo blocks from the regions owning them.
+         */
+        private void gather() {
+            int width = container.getWidth(), height = container.getHeight();
+
+            int count = 0;
+            for (int row = 0; row < rows; row++)
+                for (int column = 0; column < columns; column++) {
+                    int gx = global(column, minX, haloX, width), gy = global(row, minY, haloY, height);
+                    if (gx >= 0 && gy >= 0)
+                        count += regionOf(gx, gy).blockSize(gx, gy);
+                }
+
+            if (ids.length < count) {
+                int capacity = Math.max(count, 2 * ids.length);
+                ids = new int[capacity];
+                x = new double[capacity];
+                y = new double[capacity];
+                species = new int[capacity];
+                fx = new double[capacity];
+                fy = new double[capacity];
+            }
+
+            int k = 0;
+            for (int row = 0; row < rows; row++)
+                for (int column = 0; column < columns; column++) {
+                    blockStart[row * columns + column] = k;
+                    int gx = global(column, minX, haloX, width), gy = global(row, minY, haloY, height);
+                    if (gx < 0 || gy < 0)
+                        continue;
+
+                    var owner = regionOf(gx, gy);
+                    int block = (gy - owner.minY) * owner.ownedColumns + gx - owner.minX;
+                    int from = owner.ownStart[block], length = owner.ownStart[block + 1] - from;
+                    System.arraycopy(owner.ownIds, from, ids, k, length);
+                    System.arraycopy(owner.ownX, from, x, k, length);
+                    System.arraycopy(owner.ownY, from, y, k, length);
+                    System.arraycopy(owner.ownSpecies, from, species, k, length);
+                    k += length;
+                }
+            blockStart[columns * rows] = k;
+            Arrays.fill(fx, 0, k, 0.0);
+            Arrays.fill(fy, 0, k, 0.0);
+        }
+
+        /**
+         * @param column the global block column, inside this region
+         * @param row    the global block row, inside this region
+         * @return the number of particles owned by this region in the block
+         */
+        private int blockSize(int column, int row) {
+            int block = (row - minY) * ownedColumns + column - minX;
+            return ownStart[block + 1] - ownStart[block];
+        }
+
+        /**
+         * Computes the forces on all owned particles and adds them to the store.
+         */
+        private void tickForces() {
+            gather();
+
+            for (int row = 0; row < rows; row++)
+                for (int column = 0; column < columns; column++)
+                    if (owns(column, row))
+                        tickBlock(column, row);
+
+            // Scatter the forces of the owned particles
+            for (int row = 0; row < rows; row++)
+                for (int column = 0; column < columns; column++) {
+                    if (!owns(column, row))
+                        continue;
+
+                    int block = row * columns + column;
+                    for (int i = blockStart[block]; i < blockStart[block + 1]; i++) {
+                        int id = ids[i];
+                        if (!store.fixed[id]) {
+                            store.fx[id] += fx[i];
+                            store.fy[id] += fy[i];
+                        }
+                    }
+                }
+        }
+
+        /**
+         * Computes the forces on all particles in an owned local block from the particles in all neighbored local blocks.
+         *
+         * @param column the local column of the block
+         * @param row    the local row of the block
+         */
+        private void tickBlock(int column, int row) {
+            boolean periodic = store.periodX != 0.0;
+            int block = row * columns + column;
+
+            for (int dy = -1; dy <= 1; dy++) {
+                int ny = row + dy;
+                if (!haloY && (ny < 0 || ny >= rows)) {
+                    if (!periodic)
+                        continue;
+                    ny = Math.floorMod(ny, rows);
+                }
+
+                for (int dx = -1; dx <= 1; dx++) {
+                    int nx = column + dx;
+                    if (!haloX && (nx < 0 || nx >= columns)) {
+                        if (!periodic)
+                            continue;
+                        nx = Math.floorMod(nx, columns);
+                    }
+
+                    int other = ny * columns + nx;
+                    tickBlockPair(block, other, owns(nx, ny));
+                }
+            }
+        }
+
+        /**
+         * Computes the forces between the particles of an owned block and another local block.
+         *
+         * @param block the owned local block
+         * @param other the other local block
+         * @param owned true iff the other block is owned as well, so each pair is computed once and updates both particles
+         */
+        private void tickBlockPair(int block, int other, boolean owned) {
+            var table = store.speciesTable;
+            double[] mixedEpsilon = table.mixedEpsilon, mixedSigma = table.mixedSigma, sqCutoff = table.sqCutoff;
+            int speciesCount = table.count();
+            var forceTable = DomainDecomposition.this.forceTable;
+
+            for (int i = blockStart[block]; i < blockStart[block + 1]; i++) {
+                double xi = x[i], yi = y[i];
+                int speciesRow = species[i] * speciesCount;
+                double sumX = 0.0, sumY = 0.0;
+
+                for (int j = owned ? Math.max(i + 1, blockStart[other]) : blockStart[other]; j < blockStart[other + 1]; j++) {
+                    double dx = store.imageX(xi - x[j]), dy = store.imageY(yi - y[j]);
+                    double sqDis = dx * dx + dy * dy;
+                    int pair = speciesRow + species[j];
+                    if (sqDis > sqCutoff[pair] || sqDis == 0.0)
+                        continue;
+
+                    double f;
+                    if (forceTable != null)
+                        f = forceTable.forceFactor(sqDis, pair);
+                    else {
+                        double combinedEpsilon = mixedEpsilon[pair];
+                        double combinedSigma = mixedSigma[pair];
+                        double sqSigmaPerDis = combinedSigma * combinedSigma / sqDis;
+                        double sigmaPerDisPow6 = sqSigmaPerDis * sqSigmaPerDis * sqSigmaPerDis;
+                        f = 24.0 * combinedEpsilon / sqDis * (sigmaPerDisPow6 - 2.0 * sigmaPerDisPow6 * sigmaPerDisPow6);
+                    }
+
+                    sumX += dx * f;
+                    sumY += dy * f;
+                    if (owned) {
+                        fx[j] += dx * f;
+                        fy[j] += dy * f;
+                    }
+                }
+
+                fx[i] -= sumX;
+                fy[i] -= sumY;
+            }
+        }
+    }
+}
@@ -1,10 +1,7 @@
 package de.javaabc.particlesimulation.particle;
 
-import de.javaabc.particlesimulation.Simulation;
 import de.javaabc.particlesimulation.util.math.Vec;
 
-import java.awt.*;
-
 /**
  * A particle that cannot move.
  */
@@ -12,44 +9,31 @@ public class FixedParticle extends Particle {
     /**
      * Creates a new unmovable particle.
      *
-     * @param simulation the reference back to the main simulation instance
+     * @param store the store to keep the state of this particle in
      * @param pos the final position of this unmovable particle
      * @param mass the mass of this particle
      * @param epsilon the epsilon parameter for the Lennard-Jones potential
      * @param sigma the sigma parameter for the Lennard-Jones potential
      */
-    public FixedParticle(Simulation simulation, Vec pos, double mass, double epsilon, double sigma) {
-        super(simulation, pos, mass, epsilon, sigma);
+    public FixedParticle(ParticleStore store, Vec pos, double mass, double epsilon, double sigma) {
+        super(store, pos, mass, epsilon, sigma, true);
     }
 
-    @Override
-    public void tickBoundaryForce() {
-    }
-
-    @Override
-    protected synchronized void addForce(Vec force) {
-    }
-
-    @Override
-    protected synchronized void subtractForce(Vec force) {
-    }
-
-    @Override
-    public void tickSpeed(double dt) {
-    }
-
-    @Override
-    public void tickPos(double dt) {
+    /**
+     * Creates a new handle for an unmovable particle that is already stored, e.g. when a checkpoint is restored.
+     *
+     * @param store the store that holds the state of this particle
+     * @param id    the index of this particle in the store
+     */
+    FixedParticle(ParticleStore store, int id) {
+        super(store, id);
     }
 
     @Override
-    public void tickReset() {
+    protected synchronized void addForce(double dfx, double dfy) {
     }
 
     @Override
-    public void render(Graphics2D g) {
-        super.renderConnections(g);
-        g.setColor(Color.ORANGE);
-        g.fill(getRenderBounds());
+    protected synchronized void subtractForce(double dfx, double dfy) {
     }
 }
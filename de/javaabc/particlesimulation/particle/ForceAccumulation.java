@@ -0,0 +1,17 @@
+package de.javaabc.particlesimulation.particle;
+
+/**
+ * The strategies to accumulate pair forces when computing them on multiple threads.
+ */
+public enum ForceAccumulation {
+    /**
+     * Every force is applied directly on both particles, guarded by the particle monitors.
+     */
+    SYNCHRONIZED,
+
+    /**
+     * Every worker thread accumulates forces in its own buffer.
+     * All buffers are reduced into the {@link ParticleStore} once after the pair pass.
+     */
+    WORKER_BUFFERS
+}
@@ -0,0 +1,124 @@
+package de.javaabc.particlesimulation.particle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A per-thread buffer of force differences.
+ * Each worker thread writes only into its own buffer, so no locks are needed during the pair pass.
+ * After the pass, all buffers are summed up into the {@link ParticleStore}.
+ */
+public class ForceBuffer {
+    /**
+     * the accumulated force differences per particle id
+     */
+    double[] fx, fy;
+
+    /**
+     * the pass this buffer was last cleared for
+     */
+    private long pass = -1;
+
+    private ForceBuffer() {
+        fx = fy = new double[0];
+    }
+
+    /**
+     * Adds a force difference to a particle.
+     *
+     * @param id  the id of the particle
+     * @param dfx the horizontal force difference
+     * @param dfy the vertical force difference
+     */
+    public void add(int id, double dfx, double dfy) {
+        fx[id] += dfx;
+        fy[id] += dfy;
+    }
+
+    /**
+     * The set of all force buffers of a {@link ParticleContainer}, one for each worker thread.
+     * Only the thread locals keep the buffers between passes, so the buffer of a retired worker thread is released with the thread.
+     */
+    static class Pool {
+        /**
+         * the buffers handed out in the current pass
+         */
+        private final List<ForceBuffer> buffers = new ArrayList<>();
+
+        /**
+         * the buffer of the current thread
+         */
+        private final ThreadLocal<ForceBuffer> local = ThreadLocal.withInitial(ForceBuffer::new);
+
+        /**
+         * the number of the current pair pass
+         */
+        private long pass;
+
+        /**
+         * the number of particles in the current pass
+         */
+        private int size;
+
+        /**
+         * Starts a new pair pass, invalidating all buffered forces.
+         *
+         * @param size the number of particles in the store
+         */
+        void begin(int size) {
+            this.size = size;
+            pass++;
+            synchronized (buffers) {
+                buffers.clear();
+            }
+        }
+
+        /**
+         * @return the cleared buffer of the current thread
+         */
+        ForceBuffer local() {
+            var buffer = local.get();
+            if (buffer.pass != pass) {
+                if (buffer.fx.length < size) {
+                    buffer.fx = new double[size];
+                    buffer.fy = new double[size];
+                } else {
+                    Arrays.fill(buffer.fx, 0, size, 0.0);
+                    Arrays.fill(buffer.fy, 0, size, 0.0);
+                }
+                buffer.pass = pass;
+                synchronized (buffers) {
+                    buffers.add(buffer);
+                }
+            }
+            return buffer;
+        }
+
+        /**
+         * Adds all buffered forces of the current pass to the forces in the store.
+         *
+         * @param store the store to add the forces to
+         */
+        void reduceInto(ParticleStore store) {
+            ForceBuffer[] used;
+            synchronized (buffers) {
+                used = buffers.toArray(ForceBuffer[]::new);
+            }
+
+            IntStream.range(0, size).parallel().forEach(i -> {
+                if (store.fixed[i])
+                    return;
+
+                double sumX = 0.0, sumY = 0.0;
+                for (var buffer : used) {
+                    sumX += buffer.fx[i];
+                    sumY += buffer.fy[i];
+                }
+                store.fx[i] += sumX;
+                store.fy[i] += sumY;
+            });
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package de.javaabc.particlesimulation.particle;
+
+/**
+ * The implementations of the Lennard-Jones pair force computation.
+ */
+public enum ForceKernel {
+    /**
+     * Each pair is computed on its own by {@link Particle#tickForceTo(Particle, ForceBuffer)}.
+     */
+    SCALAR,
+
+    /**
+     * Batches of neighbors are computed at once with the incubating Java Vector API.
+     * Only supports the {@link PairTraversal#NEIGHBOR_LIST} traversal and requires {@code --add-modules jdk.incubator.vector}.
+     */
+    VECTOR,
+
+    /**
+     * Each pair force is interpolated from a precomputed {@link ForceTable} on the squared distance.
+     * Trades a little precision for a higher pair throughput.
+     */
+    TABULATED;
+
+    /**
+     * the system property to select the kernel at startup
+     */
+    public static final String PROPERTY = "particlesimulation.kernel";
+
+    /**
+     * @param traversal the pair traversal to check
+     * @return true iff this kernel computes the pair forces of the given traversal
+     */
+    public boolean supports(PairTraversal traversal) {
+        return this != VECTOR || traversal == PairTraversal.NEIGHBOR_LIST;
+    }
+
+    /**
+     * @return true iff the Java Vector API module is available in this JVM
+     */
+    public static boolean isVectorAvailable() {
+        return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    }
+
+    /**
+     * Reads the kernel selected by the system property {@value #PROPERTY}.
+     * Falls back to {@link #SCALAR} if the property is not set or the vector kernel is not available.
+     *
+     * @return the selected kernel
+     */
+    public static ForceKernel fromSystemProperty() {
+        String name = System.getProperty(PROPERTY);
+        if (name == null)
+            return SCALAR;
+
+        ForceKernel kernel;
+        try {
+            kernel = valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown force kernel " + name + "; Using " + SCALAR);
+            return SCALAR;
+        }
+
+        if (kernel == VECTOR && !isVectorAvailable()) {
+            System.err.println("Vector API not available, start with --add-modules jdk.incubator.vector; Using " + SCALAR);
+            return SCALAR;
+        }
+
+        return kernel;
+    }
+}
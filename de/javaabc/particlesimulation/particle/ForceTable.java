@@ -0,0 +1,254 @@
+package de.javaabc.particlesimulation.particle;
+
+import static de.javaabc.particlesimulation.util.math.MathUtil.fastPow6;
+
+/**
+ * A tabulated Lennard-Jones force for each pair of species.
+ * The force divided by the distance, F(r^2) / r, is sampled at equidistant squared distances between r_min^2 and the cutoff distance squared,
+ * so a pair force only needs an interpolated table lookup on the squared distance and no square root.
+ * Below r_min, where the potential becomes too steep to interpolate, the analytic force is used.
+ */
+public class ForceTable {
+    /**
+     * the interpolation methods between two table entries
+     */
+    public enum Interpolation {
+        LINEAR, CUBIC
+    }
+
+    /**
+     * the default number of intervals per species pair
+     */
+    public static final int DEFAULT_RESOLUTION = 4096;
+
+    /**
+     * the default lower end of each table, relative to the mixed sigma of the species pair
+     */
+    public static final double DEFAULT_MIN_DISTANCE_FACTOR = 0.1;
+
+    /**
+     * the store holding the state of all particles
+     */
+    private final ParticleStore store;
+
+    /**
+     * the number of intervals per species pair of the next build
+     */
+    private int resolution = DEFAULT_RESOLUTION;
+
+    /**
+     * the interpolation method
+     */
+    private Interpolation interpolation = Interpolation.LINEAR;
+
+    /**
+     * the samples of the last build, replaced as a whole so a pair pass never sees a partially updated table
+     */
+    private volatile Samples samples;
+
+    /**
+     * The sampled force factors of all species pairs, together with the layout they were sampled with.
+     *
+     * @param resolution    the number of intervals per species pair
+     * @param values        the sampled force factors of all species pairs.
+     *                      Each pair has one extra sample in front and two behind its range, so cubic interpolation never needs bounds checks.
+     * @param sqMinDistance the lower end of each pair's table, squared
+     * @param inverseStep   the inverse sample spacing of each pair's table in squared distance
+     * @param version       the species table version the samples were taken for
+     */
+    private record Samples(int resolution, double[] values, double[] sqMinDistance, double[] inverseStep, int version) {
+    }
+
+    /**
+     * Creates a new force table that is built on first use.
+     *
+     * @param store the store holding the state of all particles
+     */
+    ForceTable(ParticleStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Changes the number of intervals per species pair. The table is rebuilt on the next use.
+     *
+     * @param resolution the number of intervals per species pair
+     * @throws IllegalArgumentException if the resolution is not positive
+     */
+    public void setResolution(int resolution) {
+        if (resolution <= 0)
+            throw new IllegalArgumentException("Resolution must be positive: " + resolution);
+        this.resolution = resolution;
+    }
+
+    /**
+     * Changes the interpolation between two table entries. Takes effect immediately, as both methods use the same samples.
+     *
+     * @param interpolation the interpolation method
+     */
+    public void setInterpolation(Interpolation interpolation) {
+        this.interpolation = interpolation;
+    }
+
+    /**
+     * Computes the analytic Lennard-Jones force between two particles divided by their distance.
+     *
+     * @param sqDis   the distance between both particles, squared
+     * @param epsilon the mixed depth of the Lennard-Jones-Potential
+     * @param sigma   the mixed particle distance where the Lennard-Jones-Potential is equal to zero
+     * @return the factor to scale the positional difference with
+     */
+    static double analytic(double sqDis, double epsilon, double sigma) {
+        double sigmaPerDisPow6 = fastPow6(sigma / Math.sqrt(sqDis));
+        return 24.0 * epsilon / sqDis * (sigmaPerDisPow6 - 2.0 * sigmaPerDisPow6 * sigmaPerDisPow6);
+    }
+
+    /**
+     * Samples the force factors of all species pairs if the interaction parameters have changed since the last build.
+     * Must be called before each pair pass.
+     */
+    public void update() {
+        var table = store.speciesTable;
+        var current = samples;
+        if (current != null && current.version() == table.version() && current.resolution() == resolution)
+            return;
+
+        int resolution = this.resolution;
+        int pairs = table.count() * table.count();
+        int stride = resolution + 3;
+        double[] values = new double[pairs * stride];
+        double[] sqMinDistance = new double[pairs];
+        double[] inverseStep = new double[pairs];
+
+        for (int pair = 0; pair < pairs; pair++) {
+            double epsilon = table.mixedEpsilon[pair], sigma = table.mixedSigma[pair];
+            double sqCutoff = table.sqCutoff[pair];
+            double minDistance = Math.min(DEFAULT_MIN_DISTANCE_FACTOR * sigma, 0.5 * Math.sqrt(sqCutoff));
+            double sqMin = minDistance * minDistance;
+            double step = (sqCutoff - sqMin) / resolution;
+
+            sqMinDistance[pair] = sqMin;
+            inverseStep[pair] = 1.0 / step;
+            int base = pair * stride;
+            for (int k = 1; k < stride; k++)
+                values[base + k] = analytic(sqMin + (k - 1) * step, epsilon, sigma);
+            // The guard sample in front lies at sqMin - step, which may be zero or negative, so it is extrapolated instead
+            values[base] = 2.0 * values[base + 1] - values[base + 2];
+        }
+
+        samples = new Samples(resolution, values, sqMinDistance, inverseStep, table.version());
+    }
+
+    /**
+     * Computes the tabulated Lennard-Jones force between two particles divided by their distance.
+     *
+     * @param sqDis the distance between both particles, squared
+     * @param pair  the index of the species pair in the species table
+     * @return the factor to scale the positional difference with, or zero if out of range
+     */
+    double forceFactor(double sqDis, int pair) {
+        var table = store.speciesTable;
+        if (sqDis > table.sqCutoff[pair] || sqDis == 0.0)
+            return 0.0;
+
+        var samples = this.samples;
+        if (sqDis < samples.sqMinDistance[pair])
+            return analytic(sqDis, table.mixedEpsilon[pair], table.mixedSigma[pair]);
+
+        int resolution = samples.resolution;
+        double[] values = samples.values;
+        double u = (sqDis - samples.sqMinDistance[pair]) * samples.inverseStep[pair];
+        int k = Math.min((int) u, resolution - 1);
+        double t = u - k;
+        int base = pair * (resolution + 3) + 1 + k;
+
+        double v1 = values[base], v2 = values[base + 1];
+        if (interpolation == Interpolation.LINEAR)
+            return v1 + t * (v2 - v1);
+
+        // Catmull-Rom spline through the four surrounding samples
+        double v0 = values[base - 1], v3 = values[base + 2];
+        return v1 + 0.5 * t * (v2 - v0 + t * (2.0 * v0 - 5.0 * v1 + 4.0 * v2 - v3 + t * (3.0 * (v1 - v2) + v3 - v0)));
+    }
+
+    /**
+     * Computes the tabulated Lennard-Jones-Potential between two particles and safely adds the forces to both particles.
+     *
+     * @param p1 the first particle
+     * @param p2 the second particle
+     */
+    public void tickForceTo(Particle p1, Particle p2) {
+        int i = p1.id, j = p2.id;
+        double dx = store.imageX(store.x[i] - store.x[j]);
+        double dy = store.imageY(store.y[i] - store.y[j]);
+        double f = forceFactor(dx * dx + dy * dy, store.species[i] * store.speciesTable.count() + store.species[j]);
+        if (f == 0.0)
+            return;
+
+        p1.subtractForce(dx * f, dy * f);
+        p2.addForce(dx * f, dy * f);
+    }
+
+    /**
+     * Computes the tabulated Lennard-Jones-Potential between two particles without any locking.
+     *
+     * @param p1     the first particle
+     * @param p2     the second particle
+     * @param buffer the force buffer of the current thread to write the forces into
+     */
+    public void tickForceTo(Particle p1, Particle p2, ForceBuffer buffer) {
+        int i = p1.id, j = p2.id;
+        double dx = store.imageX(store.x[i] - store.x[j]);
+        double dy = store.imageY(store.y[i] - store.y[j]);
+        double f = forceFactor(dx * dx + dy * dy, store.species[i] * store.speciesTable.count() + store.species[j]);
+        if (f == 0.0)
+            return;
+
+        buffer.add(i, -dx * f, -dy * f);
+        buffer.add(j, dx * f, dy * f);
+    }
+
+    /**
+     * The maximum deviation of the tabulated force from the analytic force.
+     *
+     * @param maxAbsoluteError the maximum absolute error of the force factor
+     * @param maxRelativeError the maximum error relative to the analytic force factor
+     * @param worstDistance    the distance in px where the maximum relative error occurred
+     */
+    public record Accuracy(double maxAbsoluteError, double maxRelativeError, double worstDistance) {
+        @Override
+        public String toString() {
+            return String.format("max absolute error %.3e, max relative error %.3e at distance %.3f", maxAbsoluteError, maxRelativeError, worstDistance);
+        }
+    }
+
+    /**
+     * Compares the tabulated force against the analytic force for all species pairs.
+     * Distances are sampled between the table entries, where interpolation errors are largest.
+     *
+     * @param samples the number of distances to check per species pair
+     * @return the maximum errors over all species pairs
+     */
+    public Accuracy checkAccuracy(int samples) {
+        update();
+        var table = store.speciesTable;
+        var built = this.samples;
+        double maxAbsolute = 0.0, maxRelative = 0.0, worstDistance = 0.0;
+
+        for (int pair = 0; pair < table.count() * table.count(); pair++) {
+            double sqMin = built.sqMinDistance[pair], sqCutoff = table.sqCutoff[pair];
+            for (int s = 0; s < samples; s++) {
+                double sqDis = sqMin + (s + 0.5) / samples * (sqCutoff - sqMin);
+                double expected = analytic(sqDis, table.mixedEpsilon[pair], table.mixedSigma[pair]);
+                double error = Math.abs(forceFactor(sqDis, pair) - expected);
+
+                maxAbsolute = Math.max(maxAbsolute, error);
+                if (expected != 0.0 && error / Math.abs(expected) > maxRelative) {
+                    maxRelative = error / Math.abs(expected);
+                    worstDistance = Math.sqrt(sqDis);
+                }
+            }
+        }
+
+        return new Accuracy(maxAbsolute, maxRelative, worstDistance);
+    }
+}
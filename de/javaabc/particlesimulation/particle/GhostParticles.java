@@ -0,0 +1,83 @@
+package de.javaabc.particlesimulation.particle;
+
+import de.javaabc.particlesimulation.util.math.Vec;
+
+import java.util.Arrays;
+
+/**
+ * Fixed particles that only exert forces on the particles of a {@link ParticleContainer}, e.g. the halo copied from another rank.
+ * Ghosts are kept apart from the {@link ParticleStore}, so replacing them on every tick neither counts as a structural modification
+ * nor invalidates the neighbor list or the cell layout of the real particles.
+ */
+public class GhostParticles {
+    /**
+     * the initial capacity of all arrays
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * the interaction parameters of all species, shared with the store of the real particles
+     */
+    private final SpeciesTable speciesTable;
+
+    /**
+     * the positions of all ghosts in px
+     */
+    double[] x, y;
+
+    /**
+     * the species id of each ghost, see {@link SpeciesTable}
+     */
+    int[] species;
+
+    /**
+     * the current number of ghosts
+     */
+    private int size;
+
+    /**
+     * Creates a new empty set of ghosts.
+     *
+     * @param speciesTable the interaction parameters of all species, shared with the store of the real particles
+     */
+    GhostParticles(SpeciesTable speciesTable) {
+        this.speciesTable = speciesTable;
+        x = new double[INITIAL_CAPACITY];
+        y = new double[INITIAL_CAPACITY];
+        species = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Adds a ghost.
+     *
+     * @param pos     the position of the ghost in px
+     * @param epsilon the depth of the Lennard-Jones-Potential
+     * @param sigma   the particle distance where the Lennard-Jones-Potential is equal to zero
+     */
+    public void add(Vec pos, double epsilon, double sigma) {
+        if (size == x.length) {
+            x = Arrays.copyOf(x, 2 * size);
+            y = Arrays.copyOf(y, 2 * size);
+            species = Arrays.copyOf(species, 2 * size);
+        }
+
+        x[size] = pos.x;
+        y[size] = pos.y;
+        species[size] = speciesTable.speciesOf(epsilon, sigma);
+        size++;
+    }
+
+    /**
+     * Removes all ghosts, keeping the arrays for the next ones.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return the current number of ghosts
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,19 @@
+package de.javaabc.particlesimulation.particle;
+
+/**
+ * The strategies to run the per-particle phases of a tick after the pair forces are computed.
+ * Both strategies compute identical results.
+ */
+public enum Integration {
+    /**
+     * Spring forces, speeds, the adaptive step, positions, confinement and the force reset each run as their own parallel pass.
+     */
+    PHASED,
+
+    /**
+     * Two parallel passes over contiguous chunks of particles: one for spring forces, speeds and the adaptive step,
+     * one for positions, confinement and the force reset. All spring forces need the positions before any particle moves,
+     * and the adaptive step needs the speeds of all particles, so these two passes cannot be merged.
+     */
+    FUSED
+}
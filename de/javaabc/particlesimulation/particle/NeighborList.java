@@ -0,0 +1,217 @@
+package de.javaabc.particlesimulation.particle;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * A Verlet neighbor list that caches all particle pairs within the cutoff distance plus a skin radius.
+ * The list is only rebuilt when some particle has moved further than half the skin since the last build,
+ * because until then no pair outside the list can have come closer than the cutoff distance.
+ * Pairs are stored once per distinct pair in a compressed row format indexed by particle id.
+ */
+class NeighborList {
+    /**
+     * the container to find neighbor candidates in
+     */
+    private final ParticleContainer container;
+
+    /**
+     * the store holding the positions of all particles
+     */
+    private final ParticleStore store;
+
+    /**
+     * the maximum distance to compute forces between particles
+     */
+    private final double cutoffDistance;
+
+    /**
+     * the additional distance to cache pairs for
+     */
+    private double skin;
+
+    /**
+     * the positions of all particles at the last build
+     */
+    private double[] buildX, buildY;
+
+    /**
+     * The offsets of each particle's neighbors in {@link #neighbors}.
+     * The neighbors of particle i are stored at the indices [start[i], start[i + 1]).
+     */
+    private int[] start;
+
+    /**
+     * the ids of all neighbors, grouped by particle
+     */
+    private int[] neighbors;
+
+    /**
+     * the number of particles at the last build
+     */
+    private int size;
+
+    /**
+     * the modification count of the store at the last build, used to detect added or removed particles
+     */
+    private int modCount = -1;
+
+    /**
+     * Creates a new neighbor list.
+     *
+     * @param container      the container to find neighbor candidates in
+     * @param store          the store holding the positions of all particles
+     * @param cutoffDistance the maximum distance to compute forces between particles
+     * @param skin           the additional distance to cache pairs for
+     */
+    NeighborList(ParticleContainer container, ParticleStore store, double cutoffDistance, double skin) {
+        this.container = container;
+        this.store = store;
+        this.cutoffDistance = cutoffDistance;
+        this.skin = skin;
+        buildX = buildY = new double[0];
+        start = new int[1];
+        neighbors = new int[0];
+    }
+
+    /**
+     * Changes the skin radius and forces a rebuild on the next use.
+     *
+     * @param skin the additional distance to cache pairs for
+     */
+    void setSkin(double skin) {
+        this.skin = skin;
+        invalidate();
+    }
+
+    /**
+     * Forces a rebuild on the next use.
+     */
+    void invalidate() {
+        modCount = -1;
+    }
+
+    /**
+     * Rebuilds this list if any particle has been added or removed or has moved further than half the skin.
+     */
+    void update() {
+        if (modCount != store.modCount() || hasMovedTooFar())
+            rebuild();
+    }
+
+    /**
+     * @return true iff some particle has moved further than half the skin since the last build
+     */
+    private boolean hasMovedTooFar() {
+        double maxSqDis = skin * skin / 4.0;
+        double[] x = store.x, y = store.y;
+        return IntStream.range(0, size).parallel().anyMatch(i -> {
+            double dx = store.imageX(x[i] - buildX[i]);
+            double dy = store.imageY(y[i] - buildY[i]);
+            return dx * dx + dy * dy > maxSqDis;
+        });
+    }
+
+    /**
+     * Collects all pairs within the cutoff distance plus skin using the block grid of the container.
+     */
+    private void rebuild() {
+        size = store.size();
+        modCount = store.modCount();
+        buildX = Arrays.copyOf(store.x, size);
+        buildY = Arrays.copyOf(store.y, size);
+
+        double range = cutoffDistance + skin;
+        double sqRange = range * range;
+        int blockRadius = container.blockRadius(range);
+
+        // First pass: count neighbors, second pass: fill them in
+        int[] counts = new int[size + 1];
+        IntStream.range(0, size).parallel().forEach(i ->
+                container.forEachCandidate(i, blockRadius, j -> {
+                    if (j > i && sqDistance(i, j) <= sqRange)
+                        counts[i + 1]++;
+                }));
+
+        for (int i = 0; i < size; i++)
+            counts[i + 1] += counts[i];
+
+        int[] filled = new int[counts[size]];
+        IntStream.range(0, size).parallel().forEach(i -> {
+            int[] next = {counts[i]};
+            container.forEachCandidate(i, blockRadius, j -> {
+                if (j > i && sqDistance(i, j) <= sqRange)
+                    filled[next[0]++] = j;
+            });
+        });
+
+        start = counts;
+        neighbors = filled;
+    }
+
+    /**
+     * @return the distance between two particles at build time, squared
+     */
+    private double sqDistance(int i, int j) {
+        double dx = store.imageX(buildX[i] - buildX[j]);
+        double dy = store.imageY(buildY[i] - buildY[j]);
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Applies a given force action for each cached pair of particles in a parallel manner.
+     *
+     * @param buffers the per-thread buffers to accumulate forces in
+     * @param action  the action to apply for each cached pair
+     */
+    void forEachPair(ForceBuffer.Pool buffers, PairForceAction action) {
+        Particle[] handles = store.handles;
+        IntStream.range(0, size).parallel().forEach(i -> {
+            var buffer = buffers.local();
+            var p1 = handles[i];
+            for (int k = start[i]; k < start[i + 1]; k++)
+                action.accept(p1, handles[neighbors[k]], buffer);
+        });
+    }
+
+    /**
+     * Applies the vectorized force kernel for the cached neighbors of each particle in a parallel manner.
+     *
+     * @param buffers the per-thread buffers to accumulate forces in
+     * @param kernel  the kernel to apply for the neighbors of each particle
+     */
+    void forEachBatch(ForceBuffer.Pool buffers, VectorForceKernel kernel) {
+        IntStream.range(0, size).parallel().forEach(i -> {
+            if (start[i] < start[i + 1])
+                kernel.apply(store, i, neighbors, start[i], start[i + 1], buffers.local());
+        });
+    }
+
+    /**
+     * Counts the cached pairs that are currently closer than the cutoff distance, i.e. the pairs that actually interact.
+     *
+     * @return the number of pairs within the cutoff distance
+     */
+    long countWithinCutoff() {
+        double sqCutoff = cutoffDistance * cutoffDistance;
+        double[] x = store.x, y = store.y;
+        return IntStream.range(0, size).parallel().mapToLong(i -> {
+            long count = 0;
+            for (int k = start[i]; k < start[i + 1]; k++) {
+                int j = neighbors[k];
+                double dx = store.imageX(x[i] - x[j]);
+                double dy = store.imageY(y[i] - y[j]);
+                if (dx * dx + dy * dy < sqCutoff)
+                    count++;
+            }
+            return count;
+        }).sum();
+    }
+
+    /**
+     * @return the number of cached pairs
+     */
+    int pairCount() {
+        return start[size];
+    }
+}
@@ -0,0 +1,16 @@
+package de.javaabc.particlesimulation.particle;
+
+/**
+ * An action on a distinct pair of particles that writes its forces into a {@link ForceBuffer}.
+ */
+@FunctionalInterface
+public interface PairForceAction {
+    /**
+     * Applies this action on a pair of particles.
+     *
+     * @param p1     the first particle
+     * @param p2     the second particle
+     * @param buffer the force buffer of the current thread
+     */
+    void accept(Particle p1, Particle p2, ForceBuffer buffer);
+}
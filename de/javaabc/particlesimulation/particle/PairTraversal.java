@@ -0,0 +1,27 @@
+package de.javaabc.particlesimulation.particle;
+
+/**
+ * The strategies to find all particle pairs within the cutoff distance.
+ */
+public enum PairTraversal {
+    /**
+     * Every particle is checked against all particles in its surrounding blocks on every tick.
+     */
+    BLOCKS,
+
+    /**
+     * Every unordered pair of neighbored blocks is visited once, so no pair has to be filtered out by direction.
+     */
+    HALF_SHELL,
+
+    /**
+     * Pairs are cached in a Verlet {@link NeighborList} that is only rebuilt when particles moved far enough.
+     */
+    NEIGHBOR_LIST,
+
+    /**
+     * The block grid is split into regions, each owned by a dedicated worker thread with its own particle arrays and halo copies,
+     * see {@link DomainDecomposition}.
+     */
+    DOMAINS
+}
@@ -1,14 +1,8 @@
 package de.javaabc.particlesimulation.particle;
 
-import de.javaabc.particlesimulation.Simulation;
-import de.javaabc.particlesimulation.display.Renderable;
-import de.javaabc.particlesimulation.util.Cache2D;
 import de.javaabc.particlesimulation.util.math.Vec;
 
-import java.awt.*;
-import java.awt.geom.Ellipse2D;
-import java.awt.geom.Line2D;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import static de.javaabc.particlesimulation.util.math.MathUtil.fastPow6;
@@ -16,12 +10,7 @@ import static de.javaabc.particlesimulation.util.math.MathUtil.fastPow6;
 /**
  * A dot particle that attracts and repels other particles.
  */
-public class Particle implements Renderable {
-    /**
-     * the spring factor k that scales the spring force
-     */
-    private static final double CONNECTION_STIFFNESS = 1E-4;
-
+public class Particle {
     /**
      * The render radius of this particle.
      * Dot particles do not have a size, but in order to visualize, we define one.
@@ -29,101 +18,57 @@ public class Particle implements Renderable {
     public static final double RENDER_RADIUS = 10.0;
 
     /**
-     * the friction factor to artificially slow down all particles
-     */
-    private static final double FRICTION_FACTOR = 0.5;
-
-    /**
-     * the cache for the computation of combined epsilon values to speed up force computation
-     */
-    private static final Cache2D<Double, Double, Double> EPSILON_CACHE = new Cache2D<>();
-
-    /**
-     * the reference back to the main simulation instance
-     */
-    private final Simulation simulation;
-
-    /**
-     * the current position of this particle in px
-     */
-    protected Vec pos;
-
-    /**
-     * the current speed of this particle in px / s
-     */
-    private Vec speed;
-
-    /**
-     * the currently acting force on this particle in (kg px) / s^2
-     */
-    private Vec force;
-
-    /**
-     * the previously acting force on this particle
-     */
-    private Vec oldForce;
-
-    /**
-     * the mass of this particle in kg
+     * the store that holds the state of this particle
      */
-    protected double mass;
+    protected final ParticleStore store;
 
     /**
-     * the depth of the Lennard-Jones-Potential
+     * the index of this particle in the {@link ParticleStore}, or -1 if removed
      */
-    protected double epsilon;
+    int id;
 
     /**
-     * the particle distance where the Lennard-Jones-Potential is equal to zero
+     * the index of this particle in the particle list of its block in the {@link ParticleContainer}
      */
-    protected double sigma;
+    int blockSlot;
 
     /**
-     * the minimal distance to even start computing forces, squared
-     */
-    protected final double sqCutoffDis;
-
-    /**
-     * the current {@link Shape} object representing the rendering bounds of this particle
-     */
-    private Shape renderBounds;
-
-    /**
-     * The {@link List} of all particles that are connected to this particle.
-     * Connections are stored unidirectional, i.e. there is no connected particle that also stores this instance as connected.
+     * Creates a new dot particle instance.
+     *
+     * @param store      the store to keep the state of this particle in
+     * @param pos        the initial position of this particle in px
+     * @param mass       the mass of this particle in kg
+     * @param epsilon    the depth of the Lennard-Jones-Potential
+     * @param sigma      the particle distance where the Lennard-Jones-Potential is equal to zero
      */
-    private final List<Particle> connections;
+    public Particle(ParticleStore store, Vec pos, double mass, double epsilon, double sigma) {
+        this(store, pos, mass, epsilon, sigma, false);
+    }
 
     /**
      * Creates a new dot particle instance.
      *
-     * @param simulation the reference back to the main simulation instance
+     * @param store      the store to keep the state of this particle in
      * @param pos        the initial position of this particle in px
      * @param mass       the mass of this particle in kg
      * @param epsilon    the depth of the Lennard-Jones-Potential
      * @param sigma      the particle distance where the Lennard-Jones-Potential is equal to zero
+     * @param fixed      the option to never move this particle
      */
-    public Particle(Simulation simulation, Vec pos, double mass, double epsilon, double sigma) {
-        this.simulation = simulation;
-        this.pos = pos;
-        speed = force = oldForce = Vec.ZERO;
-        this.mass = mass;
-        this.epsilon = epsilon;
-        this.sigma = sigma;
-
-        sqCutoffDis = simulation.getCutoffDistance() * simulation.getCutoffDistance();
-        connections = new ArrayList<>();
+    protected Particle(ParticleStore store, Vec pos, double mass, double epsilon, double sigma, boolean fixed) {
+        this.store = store;
+        id = store.add(this, pos, mass, epsilon, sigma, fixed);
     }
 
     /**
-     * Combines two epsilon values from different particles to one single value for force computation.
+     * Creates a new handle for a particle that is already stored, e.g. when a checkpoint is restored.
      *
-     * @param e1 the first epsilon value
-     * @param e2 the second epsilon value
-     * @return the geometric mean of both values
+     * @param store the store that holds the state of this particle
+     * @param id    the index of this particle in the store
      */
-    private static double combinedEpsilon(double e1, double e2) {
-        return EPSILON_CACHE.storeIfAbsent(e1, e2, () -> Math.sqrt(e1 * e2));
+    Particle(ParticleStore store, int id) {
+        this.store = store;
+        this.id = id;
     }
 
     /**
@@ -132,183 +77,217 @@ public class Particle implements Renderable {
      * @param p the particle to compute the force to
      */
     public void tickForceTo(Particle p) {
-        Vec dx = pos.subtract(p.pos); // Positional difference
-        double sqDis = dx.sqLength(); // Distance (squared)
+        double dx = store.imageX(store.x[id] - store.x[p.id]); // Positional difference to the nearest image
+        double dy = store.imageY(store.y[id] - store.y[p.id]);
+        double f = ljForceFactor(dx * dx + dy * dy, store.species[p.id]);
+        if (f == 0.0)
+            return;
+
+        subtractForce(dx * f, dy * f); // Apply force on this particle
+        p.addForce(dx * f, dy * f); // Apply force on p
+    }
+
+    /**
+     * Computes the Lennard-Jones-Potential between this particle and another without any locking.
+     *
+     * @param p      the particle to compute the force to
+     * @param buffer the force buffer of the current thread to write the forces into
+     */
+    public void tickForceTo(Particle p, ForceBuffer buffer) {
+        double dx = store.imageX(store.x[id] - store.x[p.id]); // Positional difference to the nearest image
+        double dy = store.imageY(store.y[id] - store.y[p.id]);
+        double f = ljForceFactor(dx * dx + dy * dy, store.species[p.id]);
+        if (f == 0.0)
+            return;
+
+        buffer.add(id, -dx * f, -dy * f); // Apply force on this particle
+        buffer.add(p.id, dx * f, dy * f); // Apply force on p
+    }
+
+    /**
+     * Computes the Lennard-Jones force between this particle and another particle, divided by their distance.
+     *
+     * @param sqDis   the distance between both particles, squared
+     * @param species the species of the other particle
+     * @return the factor to scale the positional difference with, or zero if out of range
+     */
+    private double ljForceFactor(double sqDis, int species) {
+        var table = store.speciesTable;
+        int pair = store.species[id] * table.count() + species;
 
         if (sqDis == 0.0) {
             System.err.println("Particles at same exact position; Skipping force calculation");
-            return;
-        } else if (sqDis > sqCutoffDis)
-            return; // Approximate force with zero if distance is larger than cutoff distance
+            return 0.0;
+        } else if (sqDis > table.sqCutoff[pair])
+            return 0.0; // Approximate force with zero if distance is larger than cutoff distance
 
         double d = Math.sqrt(sqDis); // Distance
 
         // Parameters for Lennard-Jones-Potential
-        double epsilon = combinedEpsilon(this.epsilon, p.epsilon);
-        double sigma = 0.5 * (this.sigma + p.sigma);
-        double sigmaPerDisPow6 = fastPow6(sigma / d);
+        double combinedEpsilon = table.mixedEpsilon[pair];
+        double combinedSigma = table.mixedSigma[pair];
+        double sigmaPerDisPow6 = fastPow6(combinedSigma / d);
         double sigmaPerDisPow12 = sigmaPerDisPow6 * sigmaPerDisPow6;
 
-        Vec df = dx.scale(24.0 * epsilon / sqDis * (sigmaPerDisPow6 - 2.0 * sigmaPerDisPow12)); // Lennard-Jones-Potential
-        subtractForce(df); // Apply force on this particle
-        p.addForce(df); // Apply force on p
+        return 24.0 * combinedEpsilon / sqDis * (sigmaPerDisPow6 - 2.0 * sigmaPerDisPow12); // Lennard-Jones-Potential
     }
 
     /**
-     * Computes forces that make particles bounce off the display boundary using ghost particles.
+     * Safely adds a force to the total force applied on this particle.
+     *
+     * @param dfx the horizontal force difference to add
+     * @param dfy the vertical force difference to add
      */
-    public void tickBoundaryForce() {
-        double d = simulation.getCutoffDistance();
-        double r = d / 2.0;
-
-        if (pos.getX() < r)
-            tickForceTo(new Particle(simulation, new Vec(-pos.getX(), pos.getY()), mass, epsilon, sigma));
-        else if (pos.getX() > simulation.getWidth() - r)
-            tickForceTo(new Particle(simulation, new Vec(2 * simulation.getWidth() - pos.getX(), pos.getY()), mass, epsilon, sigma));
-
-        if (pos.getY() < r)
-            tickForceTo(new Particle(simulation, new Vec(pos.getX(), -pos.getY()), mass, epsilon, sigma));
-        else if (pos.getY() > simulation.getHeight() - r)
-            tickForceTo(new Particle(simulation, new Vec(pos.getX(), 2 * simulation.getHeight() - pos.getY()), mass, epsilon, sigma));
+    protected synchronized void addForce(double dfx, double dfy) {
+        store.fx[id] += dfx;
+        store.fy[id] += dfy;
     }
 
     /**
-     * Computes the spring attraction to a connected particle.
+     * Safely subtracts a force from the total force applied on this particle.
      *
-     * @param p the connected particle
+     * @param dfx the horizontal force difference to subtract
+     * @param dfy the vertical force difference to subtract
      */
-    private void tickAttractionTo(Particle p) {
-        Vec dx = pos.subtract(p.pos); // Positional difference
-        double d = Math.sqrt(dx.sqLength()); // Distance
-        double force = CONNECTION_STIFFNESS * d; // Spring force: F = k * d
-        Vec df = dx.scale(force); // Split force in x/y
-        subtractForce(df); // Apply spring force on this particle
-        p.addForce(df); // Apply spring force on the other particle
+    protected synchronized void subtractForce(double dfx, double dfy) {
+        store.fx[id] -= dfx;
+        store.fy[id] -= dfy;
     }
 
     /**
-     * Computes forces other than the Lennard-Jones-Potential.
+     * Checks if a given position is inside the rendering bounds of this particle.
+     * Dot particles do not have a size, but in order to visualize we use a circle with predefined radius.
+     *
+     * @param pos the position to check
+     * @return true iff the position is within the render radius of this particle
      */
-    public void tickSpecialForces() {
-        tickBoundaryForce();
-        connections.forEach(this::tickAttractionTo);
+    public boolean contains(Vec pos) {
+        double dx = pos.x - store.x[id];
+        double dy = pos.y - store.y[id];
+        return dx * dx + dy * dy <= RENDER_RADIUS * RENDER_RADIUS;
     }
 
     /**
-     * Safely adds a force to the total force applied on this particle.
+     * Connects this particle with a spring to another particle of the same store.
+     * Conditions:
+     * - A particle cannot be connected to itself
+     * - A particle cannot be connected twice to another particle, in any direction
+     * - Removed particles cannot be connected
      *
-     * @param df the force difference to add
+     * @param p the particle to connect with
      */
-    protected synchronized void addForce(Vec df) {
-        force = force.add(df);
+    public void connectWith(Particle p) {
+        if (p.store == store && id >= 0 && p.id >= 0)
+            store.springs.connect(id, p.id);
     }
 
     /**
-     * Safely subtracts a force from the total force applied on this particle.
+     * Removes the spring connections to all given particles.
      *
-     * @param df the force difference to subtract
+     * @param ps the particles to disconnect
      */
-    protected synchronized void subtractForce(Vec df) {
-        force = force.subtract(df);
+    public void removeConnectionsTo(Collection<Particle> ps) {
+        ps.forEach(this::removeConnectionTo);
     }
 
     /**
-     * Computes the current speed of this particle using Verlet integration.
+     * Removes the spring connection to a given particle, if any.
      *
-     * @param dt the time between two ticks in this simulation in seconds
+     * @param p the particle to disconnect
      */
-    public void tickSpeed(double dt) {
-        Vec friction = speed.scale(1.0 - FRICTION_FACTOR);
-        force = force.subtract(friction);
+    public void removeConnectionTo(Particle p) {
+        if (p.store == store && id >= 0 && p.id >= 0)
+            store.springs.disconnect(id, p.id);
+    }
 
-        // Verlet velocity calculation
-        Vec dv = oldForce.add(force).scale(dt / (2.0 * mass));
-        speed = speed.add(dv);
+    @Override
+    public String toString() {
+        return "particle at pos " + getPos().toIntVec();
+    }
+
+    public Vec getPos() {
+        return new Vec(store.x[id], store.y[id]);
     }
 
     /**
-     * Computes the current position of this particle using Verlet integration.
-     *
-     * @param dt the time between two ticks in this simulation in seconds
+     * @return the current speed of this particle in px / s
      */
-    public void tickPos(double dt) {
-        // Verlet position calculation
-        Vec dx = speed.add(oldForce.scale(dt / (2.0 * mass)).scale(dt));
-        pos = pos.add(dx);
+    public Vec getVelocity() {
+        return new Vec(store.vx[id], store.vy[id]);
+    }
 
-        renderBounds = null;
+    /**
+     * @return the force that currently acts on this particle, i.e. the gravity and all forces of the running tick computed so far
+     */
+    public Vec getForce() {
+        return new Vec(store.fx[id], store.fy[id]);
     }
 
     /**
-     * Resets values after all computations.
+     * @return the force that acted on this particle in the previous tick, as used by the Verlet integration
      */
-    public void tickReset() {
-        oldForce = force;
-        force = simulation.getGravity();
+    public Vec getPreviousForce() {
+        return new Vec(store.oldFx[id], store.oldFy[id]);
     }
 
     /**
-     * Computes a {@link Shape} representing the rendering bounds of this particle.
-     * Dot particles do not have a size, but in order to visualize we use a circle with predefined radius.
+     * Restores the motion of this particle, e.g. after it has been moved to another simulation.
      *
-     * @return the computed shape
+     * @param velocity      the speed of this particle in px / s
+     * @param force         the force that currently acts on this particle
+     * @param previousForce the force that acted on this particle in the previous tick
      */
-    public Shape getRenderBounds() {
-        if (renderBounds != null)
-            return renderBounds;
+    public void setMotion(Vec velocity, Vec force, Vec previousForce) {
+        if (isFixed())
+            return;
 
-        return renderBounds = new Ellipse2D.Double(pos.getX() - RENDER_RADIUS, pos.getY() - RENDER_RADIUS, RENDER_RADIUS * 2.0, RENDER_RADIUS * 2.0);
+        store.vx[id] = velocity.x;
+        store.vy[id] = velocity.y;
+        store.fx[id] = force.x;
+        store.fy[id] = force.y;
+        store.oldFx[id] = previousForce.x;
+        store.oldFy[id] = previousForce.y;
     }
 
-    @Override
-    public void render(Graphics2D g) {
-        renderConnections(g);
-        g.fill(getRenderBounds());
+    /**
+     * @return the mass of this particle in kg
+     */
+    public double getMass() {
+        return store.mass[id];
     }
 
     /**
-     * Draws lines to all connected particles.
-     *
-     * @param g the graphics instance to draw
+     * @return the depth of the Lennard-Jones-Potential of this particle
      */
-    protected void renderConnections(Graphics2D g) {
-        g.setColor(Color.BLACK);
-        connections.forEach(p -> g.draw(new Line2D.Double(pos.x, pos.y, p.pos.x, p.pos.y)));
+    public double getEpsilon() {
+        return store.epsilon[id];
     }
 
     /**
-     * Adds a particle to the list of connected particles.
-     * Conditions:
-     * - A particle cannot be connected to itself
-     * - A particle cannot be connected twice to another particle
-     * - A particle that holds this instance in its list of connected particles cannot be added to this particles list.
-     *
-     * @param p the particle to connect with
+     * @return the particle distance where the Lennard-Jones-Potential of this particle is equal to zero
      */
-    public void connectWith(Particle p) {
-        synchronized (connections) {
-            if (p != this && !connections.contains(p) && !p.connections.contains(this))
-                connections.add(p);
-        }
+    public double getSigma() {
+        return store.sigma[id];
     }
 
     /**
-     * Removes a given particle from the list of connected particles.
-     *
-     * @param p the particle to disconnect
+     * @return true iff this particle never moves
      */
-    public void removeConnectionTo(Particle p) {
-        synchronized (connections) {
-            connections.remove(p);
-        }
+    public boolean isFixed() {
+        return store.fixed[id];
     }
 
-    @Override
-    public String toString() {
-        return "particle at pos " + pos.toIntVec();
+    /**
+     * @return the species id of this particle, see {@link SpeciesTable}
+     */
+    public int getSpecies() {
+        return store.species[id];
     }
 
-    public Vec getPos() {
-        return pos;
+    /**
+     * @return all particles this particle was connected with by {@link #connectWith}, without the springs created by the other particles
+     */
+    public List<Particle> getConnections() {
+        return id < 0 ? List.of() : store.springs.connectedBy(store, id);
     }
 }
@@ -3,13 +3,13 @@ package de.javaabc.particlesimulation.particle;
 import de.javaabc.particlesimulation.util.math.IntVec;
 import de.javaabc.particlesimulation.util.math.Vec;
 
-import java.awt.*;
-import java.awt.geom.Point2D;
-import java.awt.geom.Rectangle2D;
 import java.util.List;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -17,6 +17,17 @@ import java.util.stream.StreamSupport;
  * A more or less efficiently implemented {@link Particle} container suitable for multithreaded force calculation of neighbored particles.
  */
 public class ParticleContainer implements Iterable<Particle> {
+    /**
+     * the default skin radius of the neighbor list, relative to the block size
+     */
+    private static final double DEFAULT_NEIGHBOR_SKIN = 0.25;
+
+    /**
+     * The block offsets of the half shell around a block.
+     * Together with the block itself, visiting these neighbors of every block visits each pair of neighbored blocks exactly once.
+     */
+    private static final IntVec[] HALF_SHELL = {new IntVec(1, 0), new IntVec(-1, 1), new IntVec(0, 1), new IntVec(1, 1)};
+
     /**
      * A 2D array of {@link Block}s.
      * Each block holds its own list of particles.
@@ -24,6 +35,56 @@ public class ParticleContainer implements Iterable<Particle> {
      */
     private final Block[][] blocks;
 
+    /**
+     * the primitive array storage of all particle state
+     */
+    private final ParticleStore store;
+
+    /**
+     * the per-thread buffers for lock-free force accumulation
+     */
+    private final ForceBuffer.Pool forceBuffers;
+
+    /**
+     * the cached pairs of neighbored particles
+     */
+    private final NeighborList neighborList;
+
+    /**
+     * the flat cell layout used to rebuild the blocks
+     */
+    final CellIndex cells;
+
+    /**
+     * the regions of the domain-decomposed pair pass, only created on first use
+     */
+    private DomainDecomposition domains;
+
+    /**
+     * the number of regions of the domain-decomposed pair pass
+     */
+    private int domainCount = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * the tabulated Lennard-Jones forces
+     */
+    private final ForceTable forceTable;
+
+    /**
+     * the fixed particles that only exert forces on the particles of this container
+     */
+    private final GhostParticles ghosts;
+
+    /**
+     * the behaviour of particles at the edges of the block grid
+     */
+    private BoundaryCondition boundaryCondition = BoundaryCondition.REFLECTIVE;
+
+    /**
+     * the vectorized force kernel, only created on first use so the Vector API is not required otherwise
+     */
+    private VectorForceKernel vectorKernel;
+
     /**
      * the width and height of one block in px
      */
@@ -39,6 +100,11 @@ public class ParticleContainer implements Iterable<Particle> {
      */
     private int size;
 
+    /**
+     * the particles to remove in the next batch, see {@link #removeLater}
+     */
+    private final Queue<Particle> pendingRemovals = new ConcurrentLinkedQueue<>();
+
     /**
      * Creates a new particle container instance.
      *
@@ -54,6 +120,12 @@ public class ParticleContainer implements Iterable<Particle> {
 
         this.blockSize = blockSize;
         scaleFactor = 1.0 / blockSize;
+        store = new ParticleStore(new SpeciesTable(blockSize));
+        forceBuffers = new ForceBuffer.Pool();
+        cells = new CellIndex();
+        forceTable = new ForceTable(store);
+        ghosts = new GhostParticles(store.speciesTable);
+        neighborList = new NeighborList(this, store, blockSize, DEFAULT_NEIGHBOR_SKIN * blockSize);
     }
 
     /**
@@ -68,15 +140,18 @@ public class ParticleContainer implements Iterable<Particle> {
 
     /**
      * Adds a particle to this container, if its position is somewhere inside a block.
+     * In a periodic world, the particle is wrapped into the grid first.
      * If not, the particle is not added and all spring connections from and to this particle are removed.
      *
      * @param p the particle to add
      */
-    public void add(Particle p) {
+    public synchronized void add(Particle p) {
+        if (boundaryCondition == BoundaryCondition.PERIODIC)
+            store.wrap(p.id);
+
         IntVec pos = blockPos(p.getPos());
         if (!pos.isInRange(0, 0, getWidth(), getHeight())) {
-            System.err.println("Removed " + p);
-            stream(true).forEach(cp -> cp.removeConnectionTo(p));
+            discard(p);
             return;
         }
 
@@ -84,32 +159,171 @@ public class ParticleContainer implements Iterable<Particle> {
     }
 
     /**
-     * Removes a particle from this container.
+     * Drops a particle that is not inside any block.
+     * All spring connections from and to this particle are removed.
+     *
+     * @param p the particle to drop
+     */
+    private void discard(Particle p) {
+        System.err.println("Removed " + p);
+        store.remove(p);
+    }
+
+    /**
+     * Removes a particle from this container in time proportional to its number of spring connections.
      * All spring connections from and to this particle are removed.
      * Only works if the particle's position is matching with the position of the block containing the particle.
      *
-     * @param p the particle to remove
+     * @param p the particle to remove, ignored if already removed
      */
-    public void remove(Particle p) {
+    public synchronized void remove(Particle p) {
+        if (p.id < 0)
+            return;
+
         IntVec pos = blockPos(p.getPos());
         blocks[pos.y()][pos.x()].remove(p);
-        stream(true).forEach(cp -> cp.removeConnectionTo(p));
+        store.remove(p);
+    }
+
+    /**
+     * Removes many particles from this container at once, in time proportional to their number and spring connections.
+     * All spring connections from and to these particles are removed.
+     * Only works if the particles' positions are matching with the positions of the blocks containing them.
+     *
+     * @param ps the particles to remove, already removed particles are ignored
+     */
+    public synchronized void removeAll(Collection<Particle> ps) {
+        Set<Particle> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Particle p : ps)
+            if (p.id >= 0)
+                removed.add(p);
+        if (removed.isEmpty())
+            return;
+
+        for (Particle p : removed) {
+            IntVec pos = blockPos(p.getPos());
+            blocks[pos.y()][pos.x()].remove(p);
+        }
+        store.removeAll(removed);
+    }
+
+    /**
+     * Schedules particles to be removed in one batch before the next tick, see {@link #applyRemovals()}.
+     * Returns immediately, even while a tick is running.
+     *
+     * @param ps the particles to remove
+     */
+    public void removeLater(Collection<Particle> ps) {
+        pendingRemovals.addAll(ps);
+    }
+
+    /**
+     * Removes all particles scheduled with {@link #removeLater} in one batch and rebuilds the blocks once.
+     * Must be called between two ticks.
+     */
+    public synchronized void applyRemovals() {
+        if (pendingRemovals.isEmpty())
+            return;
+
+        List<Particle> batch = new ArrayList<>();
+        for (Particle p; (p = pendingRemovals.poll()) != null; )
+            batch.add(p);
+        store.removeAll(batch); // Ignores particles that are already removed
+        updateBlocks();
+    }
+
+    /**
+     * Copies the complete state of all particles, e.g. to write a checkpoint.
+     *
+     * @return a detached copy of all particles and their connections
+     */
+    public synchronized ParticleData copyData() {
+        return ParticleData.copyOf(store);
+    }
+
+    /**
+     * Replaces all particles in this container by the particles of a detached copy.
+     * The particle state is loaded in bulk and all blocks are rebuilt once, without adding the particles one by one.
+     *
+     * @param data    the copy to restore
+     * @param gravity the gravitational force to start the next tick with
+     */
+    public synchronized void restore(ParticleData data, Vec gravity) {
+        store.restore(data, gravity);
+        neighborList.invalidate();
+        updateBlocks();
+    }
+
+    /**
+     * @return the width and height of one block in px
+     */
+    public double getBlockSize() {
+        return blockSize;
     }
 
     /**
      * @return the horizontal number of blocks
      */
-    private int getWidth() {
+    public int getWidth() {
         return blocks[0].length;
     }
 
     /**
      * @return the vertical number of blocks
      */
-    private int getHeight() {
+    public int getHeight() {
         return blocks.length;
     }
 
+    /**
+     * @return the primitive array storage of all particle state in this container
+     */
+    public ParticleStore getStore() {
+        return store;
+    }
+
+    /**
+     * @return the tabulated Lennard-Jones forces for all species pairs in this container
+     */
+    public ForceTable getForceTable() {
+        return forceTable;
+    }
+
+    /**
+     * @return the fixed particles that only exert forces on the particles of this container, see {@link #tickGhostForces}
+     */
+    public GhostParticles getGhosts() {
+        return ghosts;
+    }
+
+    /**
+     * @return the behaviour of particles at the edges of the block grid
+     */
+    public BoundaryCondition getBoundaryCondition() {
+        return boundaryCondition;
+    }
+
+    /**
+     * Changes the behaviour of particles at the edges of the block grid.
+     * A periodic world spans the whole block grid and requires at least three blocks in each direction,
+     * so that the neighbored blocks of any block are distinct.
+     *
+     * @param boundaryCondition the new boundary condition
+     * @throws IllegalArgumentException if the world is periodic and the grid is too small
+     */
+    public synchronized void setBoundaryCondition(BoundaryCondition boundaryCondition) {
+        boolean periodic = boundaryCondition == BoundaryCondition.PERIODIC;
+        if (periodic && (getWidth() < 3 || getHeight() < 3))
+            throw new IllegalArgumentException("A periodic world needs at least 3 x 3 blocks, but has " + getWidth() + " x " + getHeight());
+
+        this.boundaryCondition = boundaryCondition;
+        store.setPeriod(periodic ? getWidth() * blockSize : 0.0, periodic ? getHeight() * blockSize : 0.0);
+        if (periodic)
+            boundaryCondition.confine(store);
+        neighborList.invalidate();
+        updateBlocks();
+    }
+
     /**
      * @return the number of particles in this container
      */
@@ -173,8 +387,24 @@ public class ParticleContainer implements Iterable<Particle> {
         return iterator(IntVec.ZERO, new IntVec(getWidth(), getHeight()));
     }
 
+    /**
+     * Creates a {@link Spliterator} over all particles that splits into exactly sized halves, see {@link BlockSpliterator}.
+     * The blocks are read without locking, so this container must not be modified during the traversal, as is the case during a tick.
+     *
+     * @return a sized spliterator over all particles
+     */
+    @Override
+    public Spliterator<Particle> spliterator() {
+        int width = getWidth(), cells = width * getHeight();
+        int[] blockStart = new int[cells + 1];
+        for (int b = 0; b < cells; b++)
+            blockStart[b + 1] = blockStart[b] + blocks[b / width][b % width].particles.size();
+        return new BlockSpliterator(blockStart, 0, blockStart[cells]);
+    }
+
     /**
      * Creates a stream of all particles in this container.
+     * The container must not be modified while the stream runs, see {@link #spliterator()}.
      *
      * @param parallel the option to return a parallel stream
      * @return a stream of all particles
@@ -198,42 +428,337 @@ public class ParticleContainer implements Iterable<Particle> {
      * @param action the action to apply for each distinct pair
      */
     public void forEachPair(BiConsumer<Particle, Particle> action) {
+        forEachParallel(p1 -> forEachPartner(p1, p2 -> action.accept(p1, p2)));
+    }
+
+    /**
+     * Applies a given force action for each distinct pair of particles in this container without any locking.
+     * Each worker thread writes into its own {@link ForceBuffer} and all buffers are added to the forces of the particles afterwards.
+     *
+     * @param action the action to apply for each distinct pair
+     */
+    public void forEachPairBuffered(PairForceAction action) {
+        forceBuffers.begin(store.size());
         forEachParallel(p1 -> {
-            IntVec blockPos = blockPos(p1.getPos());
-            for (Iterator<Particle> it = iterator(blockPos.subtract(new IntVec(1, 1)), blockPos.add(new IntVec(2, 2))); it.hasNext(); ) {
-                var p2 = it.next();
-                Vec dx = p2.getPos().subtract(p1.getPos());
-                double sum = dx.getX() + dx.getY();
-                if (sum > 0.0 || sum == 0.0 && dx.getX() > 0.0)
-                    action.accept(p1, p2);
-            }
+            var buffer = forceBuffers.local();
+            forEachPartner(p1, p2 -> action.accept(p1, p2, buffer));
         });
+        forceBuffers.reduceInto(store);
     }
 
     /**
-     * Sorts all particles into the correct block.
+     * Applies a given force action for each distinct pair of particles in neighbored blocks by visiting each pair of blocks once.
+     * In a periodic world, the blocks at opposite edges are neighbored as well.
+     * Blocks are the unit of parallel work and forces are accumulated in per-thread {@link ForceBuffer}s without any locking.
+     *
+     * @param action the action to apply for each distinct pair
      */
-    public void updateBlocks() {
-        List<Map.Entry<Particle, Block>> wrongParticles = new ArrayList<>();
+    public void forEachPairHalfShell(PairForceAction action) {
+        int width = getWidth(), height = getHeight();
+        boolean periodic = boundaryCondition == BoundaryCondition.PERIODIC;
+        forceBuffers.begin(store.size());
+        IntStream.range(0, width * height).parallel().forEach(index -> {
+            int x = index % width, y = index / width;
+            List<Particle> own = blocks[y][x].particles;
+            if (own.isEmpty())
+                return;
+
+            var buffer = forceBuffers.local();
+
+            // Pairs within the block
+            for (int i = 0; i < own.size(); i++) {
+                var p1 = own.get(i);
+                for (int j = i + 1; j < own.size(); j++)
+                    action.accept(p1, own.get(j), buffer);
+            }
 
-        for (int y = 0; y < getHeight(); y++)
-            for (int x = 0; x < getWidth(); x++) {
-                var block = blocks[y][x];
-                for (var p : block.particles) {
-                    IntVec blockPos = blockPos(p.getPos());
-                    if (blockPos.x() != x || blockPos.y() != y)
-                        wrongParticles.add(Map.entry(p, block));
+            // Pairs with the half shell of neighbored blocks
+            for (IntVec offset : HALF_SHELL) {
+                int nx = x + offset.x(), ny = y + offset.y();
+                if (periodic) {
+                    nx = Math.floorMod(nx, width);
+                    ny %= height;
+                } else if (nx < 0 || nx >= width || ny >= height)
+                    continue;
+
+                List<Particle> other = blocks[ny][nx].particles;
+                for (int i = 0; i < own.size(); i++) {
+                    var p1 = own.get(i);
+                    for (int j = 0; j < other.size(); j++)
+                        action.accept(p1, other.get(j), buffer);
                 }
             }
+        });
+        forceBuffers.reduceInto(store);
+    }
+
+    /**
+     * Applies a given force action for each distinct pair of particles within the cutoff distance using a Verlet neighbor list.
+     * The list is rebuilt only if necessary. Forces are accumulated in per-thread {@link ForceBuffer}s without any locking.
+     *
+     * @param action the action to apply for each distinct pair
+     */
+    public void forEachNeighborPair(PairForceAction action) {
+        neighborList.update();
+        forceBuffers.begin(store.size());
+        neighborList.forEachPair(forceBuffers, action);
+        forceBuffers.reduceInto(store);
+    }
+
+    /**
+     * Computes the Lennard-Jones forces between all particle pairs within the cutoff distance using a Verlet neighbor list
+     * and the vectorized force kernel. Requires the {@code jdk.incubator.vector} module, see {@link ForceKernel#VECTOR}.
+     */
+    public void tickNeighborForcesVectorized() {
+        if (vectorKernel == null)
+            vectorKernel = new VectorForceKernel();
+
+        neighborList.update();
+        forceBuffers.begin(store.size());
+        neighborList.forEachBatch(forceBuffers, vectorKernel);
+        forceBuffers.reduceInto(store);
+    }
+
+    /**
+     * Computes the Lennard-Jones forces between all particle pairs within the cutoff distance on the regions of a domain decomposition.
+     * Each region is owned by a dedicated worker thread that only writes the forces of its own particles.
+     */
+    public void tickDomainForces() {
+        tickDomainForces(ForceKernel.SCALAR);
+    }
+
+    /**
+     * Computes the Lennard-Jones forces between all particle pairs within the cutoff distance on the regions of a domain decomposition
+     * with a given force kernel, see {@link #tickDomainForces()}.
+     *
+     * @param kernel the kernel to compute the pair forces with
+     * @throws IllegalArgumentException if the kernel is {@link ForceKernel#VECTOR}, which only supports the neighbor list
+     */
+    public void tickDomainForces(ForceKernel kernel) {
+        if (kernel == ForceKernel.VECTOR)
+            throw new IllegalArgumentException("The " + kernel + " kernel does not support the domain-decomposed pair pass");
+        if (kernel == ForceKernel.TABULATED)
+            forceTable.update();
+
+        if (domains == null)
+            domains = new DomainDecomposition(this, store, domainCount);
+        if (cells.modCount() != store.modCount())
+            cells.rebuild(store, scaleFactor, getWidth(), getHeight());
+
+        try {
+            domains.tickForces(kernel == ForceKernel.TABULATED ? forceTable : null);
+        } catch (RuntimeException | Error e) {
+            shutdown(); // The regions may be inconsistent, the next pass starts new workers
+            throw e;
+        }
+    }
+
+    /**
+     * Computes the Lennard-Jones forces that all ghosts exert on the particles of this container within the cutoff distance.
+     * The ghosts themselves never receive forces. Forces are accumulated in per-thread {@link ForceBuffer}s without any locking.
+     *
+     * @param kernel the kernel to compute the pair forces with, {@link ForceKernel#VECTOR} computes the same analytic forces as the scalar kernel
+     */
+    public void tickGhostForces(ForceKernel kernel) {
+        if (ghosts.size() == 0)
+            return;
+
+        boolean tabulated = kernel == ForceKernel.TABULATED;
+        if (tabulated)
+            forceTable.update();
+
+        var table = store.speciesTable;
+        int species = table.count();
+        forceBuffers.begin(store.size());
+        IntStream.range(0, ghosts.size()).parallel().forEach(g -> {
+            var buffer = forceBuffers.local();
+            double gx = ghosts.x[g], gy = ghosts.y[g];
+            int bx = (int) (gx * scaleFactor), by = (int) (gy * scaleFactor);
+            forEachInBlocks(bx - 1, by - 1, bx + 2, by + 2, i -> {
+                double dx = store.imageX(store.x[i] - gx);
+                double dy = store.imageY(store.y[i] - gy);
+                double sqDis = dx * dx + dy * dy;
+                int pair = store.species[i] * species + ghosts.species[g];
+                if (sqDis == 0.0 || sqDis > table.sqCutoff[pair])
+                    return;
+
+                double f = tabulated ? forceTable.forceFactor(sqDis, pair) : ForceTable.analytic(sqDis, table.mixedEpsilon[pair], table.mixedSigma[pair]);
+                buffer.add(i, -dx * f, -dy * f);
+            });
+        });
+        forceBuffers.reduceInto(store);
+    }
+
+    /**
+     * Changes the number of regions of the domain-decomposed pair pass and stops the workers of the previous regions.
+     *
+     * @param domainCount the requested number of regions, reduced if the grid has fewer blocks
+     * @throws IllegalArgumentException if the number of regions is not positive
+     */
+    public synchronized void setDomainCount(int domainCount) {
+        if (domainCount <= 0)
+            throw new IllegalArgumentException("Domain count must be positive, but is " + domainCount);
+
+        this.domainCount = domainCount;
+        shutdown();
+    }
+
+    /**
+     * Stops the worker threads of the domain-decomposed pair pass, if any. They are started again on the next domain pass.
+     */
+    public synchronized void shutdown() {
+        if (domains != null) {
+            domains.shutdown();
+            domains = null;
+        }
+    }
+
+    /**
+     * Changes the skin radius of the neighbor list.
+     *
+     * @param skin the additional distance in px to cache neighbored pairs for
+     */
+    public void setNeighborSkin(double skin) {
+        neighborList.setSkin(skin);
+    }
+
+    /**
+     * Computes the number of blocks around a particle's block that need to be checked to find all particles within a given range.
+     *
+     * @param range the distance in px
+     * @return the number of blocks in each direction
+     */
+    int blockRadius(double range) {
+        return (int) Math.ceil(range * scaleFactor);
+    }
+
+    /**
+     * Applies a given action for the id of each particle within a rectangle of blocks, clipped to the grid.
+     * The block lists are read directly without locking, so this container must not be modified meanwhile, as is the case during a tick.
+     *
+     * @param minX   the left column of the rectangle, inclusive
+     * @param minY   the top row of the rectangle, inclusive
+     * @param maxX   the right column of the rectangle, exclusive
+     * @param maxY   the bottom row of the rectangle, exclusive
+     * @param action the action to apply for each particle id
+     */
+    private void forEachInBlocks(int minX, int minY, int maxX, int maxY, IntConsumer action) {
+        int fromX = Math.max(0, minX), toX = Math.min(getWidth(), maxX);
+        for (int y = Math.max(0, minY); y < Math.min(getHeight(), maxY); y++)
+            for (int x = fromX; x < toX; x++)
+                forEachInBlock(blocks[y][x], action);
+    }
+
+    /**
+     * Applies a given action for the id of each particle in a block, reading the block list directly without locking.
+     */
+    private static void forEachInBlock(Block block, IntConsumer action) {
+        List<Particle> particles = block.particles;
+        for (int k = 0; k < particles.size(); k++)
+            action.accept(particles.get(k).id);
+    }
+
+    /**
+     * Applies a given action for the id of each particle in the blocks around the block of a given particle.
+     * In a periodic world, the blocks wrap around the edges of the grid and each block is visited at most once.
+     * The blocks are read without locking, see {@link #forEachInBlocks}.
+     *
+     * @param id          the id of the particle to find candidates for
+     * @param blockRadius the number of blocks to check in each direction
+     * @param action      the action to apply for each candidate id
+     */
+    void forEachCandidate(int id, int blockRadius, IntConsumer action) {
+        int bx = (int) (store.x[id] * scaleFactor);
+        int by = (int) (store.y[id] * scaleFactor);
+        if (boundaryCondition != BoundaryCondition.PERIODIC) {
+            forEachInBlocks(bx - blockRadius, by - blockRadius, bx + blockRadius + 1, by + blockRadius + 1, action);
+            return;
+        }
+
+        int width = getWidth(), height = getHeight();
+        int columns = Math.min(2 * blockRadius + 1, width), rows = Math.min(2 * blockRadius + 1, height);
+        for (int row = 0; row < rows; row++) {
+            int y = Math.floorMod(by - blockRadius + row, height);
+            for (int column = 0; column < columns; column++) {
+                int x = Math.floorMod(bx - blockRadius + column, width);
+                forEachInBlock(blocks[y][x], action);
+            }
+        }
+    }
 
-        wrongParticles.forEach(e -> {
-            var p = e.getKey();
-            var block = e.getValue();
-            block.remove(p);
-            add(p);
+    /**
+     * Applies a given action for each particle in the neighborhood of a given particle that forms a distinct pair with it.
+     *
+     * @param p1     the first particle of each pair
+     * @param action the action to apply for each second particle
+     */
+    private void forEachPartner(Particle p1, Consumer<Particle> action) {
+        int i = p1.id;
+        forEachCandidate(i, 1, j -> {
+            double dx = store.imageX(store.x[j] - store.x[i]);
+            double dy = store.imageY(store.y[j] - store.y[i]);
+            double sum = dx + dy;
+            if (sum > 0.0 || sum == 0.0 && dx > 0.0)
+                action.accept(store.handles[j]);
         });
     }
 
+    /**
+     * Sorts all particles into the correct block.
+     * The block layout is rebuilt from scratch with a parallel counting sort, then every block is refilled by one worker.
+     * Particles that left the grid are removed, which never happens in a periodic world.
+     */
+    public synchronized void updateBlocks() {
+        cells.rebuild(store, scaleFactor, getWidth(), getHeight());
+
+        int width = getWidth();
+        Particle[] handles = store.handles;
+        IntStream.range(0, cells.cells).parallel().forEach(c ->
+                blocks[c / width][c % width].refill(handles, cells.cellParticles, cells.cellStart[c], cells.cellStart[c + 1]));
+        size = cells.inside();
+
+        int outside = store.size() - cells.inside();
+        if (outside == 1)
+            discard(handles[cells.cellParticles[cells.inside()]]);
+        else if (outside > 1) {
+            // Escaped particles are removed as one batch and reported once, as a mass escape may hit thousands of them
+            List<Particle> escaped = new ArrayList<>(outside);
+            for (int k = cells.inside(); k < store.size(); k++)
+                escaped.add(handles[cells.cellParticles[k]]);
+            store.removeAll(escaped);
+            System.err.println("Removed " + outside + " particles outside of the world");
+        }
+    }
+
+    /**
+     * Counts all distinct particle pairs within the cutoff distance using the neighbor list.
+     * Cheap if the pairs are traversed with the neighbor list anyway, otherwise the list may have to be rebuilt first.
+     *
+     * @return the number of pairs within the cutoff distance
+     */
+    public synchronized long countPairsWithinCutoff() {
+        neighborList.update();
+        return neighborList.countWithinCutoff();
+    }
+
+    /**
+     * @return the number of particles that changed their block in the last {@link #updateBlocks()},
+     * or -1 if particles were added or removed before it
+     */
+    public int getBlockChanges() {
+        return cells.changed();
+    }
+
+    /**
+     * Passes the number of particles in each block to an action, as of the last {@link #updateBlocks()}.
+     *
+     * @param action the action to accept the number of particles of each block
+     */
+    public synchronized void forEachBlockSize(IntConsumer action) {
+        for (int c = 0; c < cells.cells; c++)
+            action.accept(cells.cellStart[c + 1] - cells.cellStart[c]);
+    }
+
     /**
      * Tries to find a particle with rendering bounds containing a given position.
      *
@@ -244,37 +769,135 @@ public class ParticleContainer implements Iterable<Particle> {
         IntVec blockPos = blockPos(pos);
         for (var it = iterator(blockPos.subtract(new IntVec(1, 1)), blockPos.add(new IntVec(2, 2))); it.hasNext(); ) {
             Particle p = it.next();
-            if (p.getRenderBounds().contains(new Point2D.Double(pos.getX(), pos.getY())))
+            if (p.contains(pos))
                 return Optional.of(p);
         }
         return Optional.empty();
     }
 
     /**
-     * Removes all particles with rendering bounds containing a given position.
+     * Removes all particles with rendering bounds containing a given position before the next tick, see {@link #removeLater}.
      *
      * @param pos the position to remove all particles at
      */
     public void removeAllAt(Vec pos) {
         IntVec blockPos = blockPos(pos);
+        List<Particle> found = new ArrayList<>();
         for (var it = iterator(blockPos.subtract(new IntVec(1, 1)), blockPos.add(new IntVec(2, 2))); it.hasNext(); ) {
             Particle p = it.next();
-            if (p.getRenderBounds().contains(new Point2D.Double(pos.getX(), pos.getY())))
-                remove(p);
+            if (p.contains(pos))
+                found.add(p);
         }
+        removeLater(found);
     }
 
     /**
-     * Renders a grid representing the blocks in this container.
-     *
-     * @param g the graphics to draw
+     * A spliterator over a range of particles in block order, i.e. the particles of all blocks row by row, one block after another.
+     * The number of particles before each block is counted once for the whole container, so the size of every range is exact and
+     * each split halves the particles of a range, no matter how unevenly the particles are spread over the blocks.
+     * Particles are read directly from the block lists without locking.
      */
-    public void renderGrid(Graphics2D g) {
-        g.setStroke(new BasicStroke(2F));
-        g.setColor(Color.GRAY);
-        for (int y = 0; y < getHeight(); y++)
-            for (int x = 0; x < getWidth(); x++)
-                g.draw(new Rectangle2D.Double(x * blockSize, y * blockSize, blockSize, blockSize));
+    private class BlockSpliterator implements Spliterator<Particle> {
+        /**
+         * the number of particles before each block, followed by the number of all particles
+         */
+        private final int[] blockStart;
+
+        /**
+         * the position of the next particle in block order
+         */
+        private int index;
+
+        /**
+         * the position after the last particle of this range in block order
+         */
+        private final int end;
+
+        /**
+         * the block that contains the next particle, or -1 if it has to be searched first
+         */
+        private int block = -1;
+
+        private BlockSpliterator(int[] blockStart, int index, int end) {
+            this.blockStart = blockStart;
+            this.index = index;
+            this.end = end;
+        }
+
+        /**
+         * @return the last block that starts at or before the next particle, i.e. the non-empty block containing it
+         */
+        private int findBlock() {
+            int low = 0, high = blockStart.length - 2;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (blockStart[mid] <= index)
+                    low = mid;
+                else
+                    high = mid - 1;
+            }
+            return low;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Particle> action) {
+            if (index < end && block < 0)
+                block = findBlock();
+
+            while (index < end) {
+                while (blockStart[block + 1] <= index)
+                    block++;
+
+                List<Particle> particles = blocks[block / getWidth()][block % getWidth()].particles;
+                int slot = index - blockStart[block];
+                if (slot < particles.size()) {
+                    index++;
+                    action.accept(particles.get(slot));
+                    return true;
+                }
+
+                // Only if the container was modified: the rest of the block is gone, continue with the next one
+                index = Math.min(end, blockStart[block + 1]);
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Particle> action) {
+            if (index >= end)
+                return;
+
+            int width = getWidth();
+            for (int b = block < 0 ? findBlock() : block; index < end; b++) {
+                List<Particle> particles = blocks[b / width][b % width].particles;
+                int last = Math.min(end, blockStart[b + 1]) - blockStart[b];
+                for (int slot = index - blockStart[b]; slot < Math.min(last, particles.size()); slot++)
+                    action.accept(particles.get(slot));
+                index = Math.max(index, blockStart[b] + last);
+            }
+        }
+
+        @Override
+        public Spliterator<Particle> trySplit() {
+            if (end - index < 2)
+                return null;
+
+            int mid = (index + end) >>> 1;
+            var prefix = new BlockSpliterator(blockStart, index, mid);
+            index = mid;
+            block = -1;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL;
+        }
     }
 
     /**
@@ -291,15 +914,44 @@ public class ParticleContainer implements Iterable<Particle> {
         }
 
         private synchronized void add(Particle p) {
+            p.blockSlot = particles.size();
             particles.add(p);
             size++;
         }
 
+        /**
+         * Removes a particle by moving the last particle of this block into its slot.
+         */
         private synchronized void remove(Particle p) {
-            particles.remove(p);
+            int slot = p.blockSlot;
+            if (slot >= particles.size() || particles.get(slot) != p)
+                return;
+
+            var last = particles.remove(particles.size() - 1);
+            if (last != p) {
+                particles.set(slot, last);
+                last.blockSlot = slot;
+            }
             size--;
         }
 
+        /**
+         * Replaces all particles in this block by a range of sorted particle ids.
+         *
+         * @param handles the particle handles indexed by id
+         * @param ids     the sorted particle ids
+         * @param from    the first index in ids, inclusive
+         * @param to      the last index in ids, exclusive
+         */
+        private synchronized void refill(Particle[] handles, int[] ids, int from, int to) {
+            particles.clear();
+            for (int k = from; k < to; k++) {
+                var p = handles[ids[k]];
+                p.blockSlot = k - from;
+                particles.add(p);
+            }
+        }
+
         /**
          * @return a thread save {@link Iterator} over all particles in this block
          */
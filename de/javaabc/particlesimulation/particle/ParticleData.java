@@ -0,0 +1,147 @@
+package de.javaabc.particlesimulation.particle;
+
+import java.util.Arrays;
+
+/**
+ * A detached copy of the complete state of all particles in a {@link ParticleStore}, including all spring connections.
+ * Copies are taken with {@link ParticleContainer#copyData()} and restored in bulk with {@link ParticleContainer#restore(ParticleData, de.javaabc.particlesimulation.util.math.Vec)},
+ * e.g. to write and read checkpoints without holding any lock on the simulation.
+ * The arrays are shared with the caller and must not be modified.
+ */
+public class ParticleData {
+    /**
+     * the number of particles
+     */
+    private final int size;
+
+    /**
+     * the positions, speeds and previously acting forces of all particles
+     */
+    private final double[] x, y, vx, vy, oldFx, oldFy;
+
+    /**
+     * the masses and Lennard-Jones parameters of all particles
+     */
+    private final double[] mass, epsilon, sigma;
+
+    /**
+     * the option for each particle to never move
+     */
+    private final boolean[] fixed;
+
+    /**
+     * the indices of both particles of each spring connection, stored one after another
+     */
+    private final int[] connections;
+
+    /**
+     * Creates a new copy from the given arrays, which must hold at least {@code size} values each.
+     *
+     * @param size        the number of particles
+     * @param x           the horizontal positions in px
+     * @param y           the vertical positions in px
+     * @param vx          the horizontal speeds in px / s
+     * @param vy          the vertical speeds in px / s
+     * @param oldFx       the horizontal forces of the previous tick
+     * @param oldFy       the vertical forces of the previous tick
+     * @param mass        the masses in kg
+     * @param epsilon     the depths of the Lennard-Jones-Potential
+     * @param sigma       the particle distances where the Lennard-Jones-Potential is equal to zero
+     * @param fixed       the options to never move the particles
+     * @param connections the indices of both particles of each spring connection, stored one after another
+     * @throws IllegalArgumentException if an array is too short or a connection refers to an unknown particle
+     */
+    public ParticleData(int size, double[] x, double[] y, double[] vx, double[] vy, double[] oldFx, double[] oldFy,
+                        double[] mass, double[] epsilon, double[] sigma, boolean[] fixed, int[] connections) {
+        for (double[] values : new double[][]{x, y, vx, vy, oldFx, oldFy, mass, epsilon, sigma})
+            if (values.length < size)
+                throw new IllegalArgumentException("Expected " + size + " values, but got " + values.length);
+        if (fixed.length < size || connections.length % 2 != 0)
+            throw new IllegalArgumentException("Malformed fixed flags or connections");
+        for (int id : connections)
+            if (id < 0 || id >= size)
+                throw new IllegalArgumentException("Connection to unknown particle " + id);
+
+        this.size = size;
+        this.x = x;
+        this.y = y;
+        this.vx = vx;
+        this.vy = vy;
+        this.oldFx = oldFx;
+        this.oldFy = oldFy;
+        this.mass = mass;
+        this.epsilon = epsilon;
+        this.sigma = sigma;
+        this.fixed = fixed;
+        this.connections = connections;
+    }
+
+    /**
+     * Copies the state of all particles in a store. Must be called while no tick is running.
+     *
+     * @param store the store to copy
+     * @return the copy
+     */
+    static ParticleData copyOf(ParticleStore store) {
+        int n = store.size();
+        int[] connections = store.springs.copyEnds();
+
+        return new ParticleData(n,
+                Arrays.copyOf(store.x, n), Arrays.copyOf(store.y, n),
+                Arrays.copyOf(store.vx, n), Arrays.copyOf(store.vy, n),
+                Arrays.copyOf(store.oldFx, n), Arrays.copyOf(store.oldFy, n),
+                Arrays.copyOf(store.mass, n), Arrays.copyOf(store.epsilon, n), Arrays.copyOf(store.sigma, n),
+                Arrays.copyOf(store.fixed, n), connections);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double[] getX() {
+        return x;
+    }
+
+    public double[] getY() {
+        return y;
+    }
+
+    public double[] getVx() {
+        return vx;
+    }
+
+    public double[] getVy() {
+        return vy;
+    }
+
+    public double[] getOldFx() {
+        return oldFx;
+    }
+
+    public double[] getOldFy() {
+        return oldFy;
+    }
+
+    public double[] getMass() {
+        return mass;
+    }
+
+    public double[] getEpsilon() {
+        return epsilon;
+    }
+
+    public double[] getSigma() {
+        return sigma;
+    }
+
+    public boolean[] getFixed() {
+        return fixed;
+    }
+
+    /**
+     * @return the indices of both particles of each spring connection, stored one after another
+     */
+    public int[] getConnections() {
+        return connections;
+    }
+}
@@ -0,0 +1,622 @@
+package de.javaabc.particlesimulation.particle;
+
+import de.javaabc.particlesimulation.util.math.Vec;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * A data-oriented storage of all particle state.
+ * Every value is kept in a contiguous primitive array indexed by the particle id,
+ * so the integrator can run over plain arrays without allocating any objects.
+ * {@link Particle} instances are only thin handles pointing into this store.
+ */
+public class ParticleStore {
+    /**
+     * the initial capacity of all arrays
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * the share of all particles from which on a batch is removed with a single pass over all spring connections
+     */
+    private static final int BULK_REMOVAL_DIVISOR = 16;
+
+    /**
+     * the smallest number of particles per chunk of the fused integration
+     */
+    private static final int MIN_CHUNK_SIZE = 1024;
+
+    /**
+     * the friction factor to artificially slow down all particles
+     */
+    private static final double FRICTION_FACTOR = 0.5;
+
+    /**
+     * the current positions of all particles in px
+     */
+    double[] x, y;
+
+    /**
+     * the current speeds of all particles in px / s
+     */
+    double[] vx, vy;
+
+    /**
+     * the currently acting forces on all particles in (kg px) / s^2
+     */
+    double[] fx, fy;
+
+    /**
+     * the previously acting forces on all particles
+     */
+    double[] oldFx, oldFy;
+
+    /**
+     * the masses of all particles in kg
+     */
+    double[] mass;
+
+    /**
+     * the depths of the Lennard-Jones-Potential
+     */
+    double[] epsilon;
+
+    /**
+     * the particle distances where the Lennard-Jones-Potential is equal to zero
+     */
+    double[] sigma;
+
+    /**
+     * the species id of each particle, see {@link SpeciesTable}
+     */
+    int[] species;
+
+    /**
+     * the option for each particle to never move
+     */
+    boolean[] fixed;
+
+    /**
+     * the handles of all particles, indexed by particle id
+     */
+    Particle[] handles;
+
+    /**
+     * the interaction parameters of all species
+     */
+    final SpeciesTable speciesTable;
+
+    /**
+     * the spring connections between all particles
+     */
+    final SpringNetwork springs = new SpringNetwork();
+
+    /**
+     * the width and height of the periodic box in px, or zero if the world is not periodic
+     */
+    double periodX, periodY;
+
+    /**
+     * the inverse width and height of the periodic box, or zero if the world is not periodic
+     */
+    private double inversePeriodX, inversePeriodY;
+
+    /**
+     * the current number of particles in this store
+     */
+    private int size;
+
+    /**
+     * the number of structural modifications, i.e. added or removed particles
+     */
+    private int modCount;
+
+    /**
+     * Creates a new empty particle store.
+     *
+     * @param speciesTable the interaction parameters of all species
+     */
+    public ParticleStore(SpeciesTable speciesTable) {
+        this.speciesTable = speciesTable;
+        x = new double[INITIAL_CAPACITY];
+        y = new double[INITIAL_CAPACITY];
+        vx = new double[INITIAL_CAPACITY];
+        vy = new double[INITIAL_CAPACITY];
+        fx = new double[INITIAL_CAPACITY];
+        fy = new double[INITIAL_CAPACITY];
+        oldFx = new double[INITIAL_CAPACITY];
+        oldFy = new double[INITIAL_CAPACITY];
+        mass = new double[INITIAL_CAPACITY];
+        epsilon = new double[INITIAL_CAPACITY];
+        sigma = new double[INITIAL_CAPACITY];
+        species = new int[INITIAL_CAPACITY];
+        fixed = new boolean[INITIAL_CAPACITY];
+        handles = new Particle[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Grows all arrays so that at least a given number of particles fits in.
+     *
+     * @param required the number of particles that must fit in
+     */
+    private void ensureCapacity(int required) {
+        if (required <= handles.length)
+            return;
+
+        int capacity = Math.max(required, handles.length * 2);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        vx = Arrays.copyOf(vx, capacity);
+        vy = Arrays.copyOf(vy, capacity);
+        fx = Arrays.copyOf(fx, capacity);
+        fy = Arrays.copyOf(fy, capacity);
+        oldFx = Arrays.copyOf(oldFx, capacity);
+        oldFy = Arrays.copyOf(oldFy, capacity);
+        mass = Arrays.copyOf(mass, capacity);
+        epsilon = Arrays.copyOf(epsilon, capacity);
+        sigma = Arrays.copyOf(sigma, capacity);
+        species = Arrays.copyOf(species, capacity);
+        fixed = Arrays.copyOf(fixed, capacity);
+        handles = Arrays.copyOf(handles, capacity);
+    }
+
+    /**
+     * Stores the state of a new particle.
+     *
+     * @param handle  the particle handle that points to the new entry
+     * @param pos     the initial position of the particle in px
+     * @param mass    the mass of the particle in kg
+     * @param epsilon the depth of the Lennard-Jones-Potential
+     * @param sigma   the particle distance where the Lennard-Jones-Potential is equal to zero
+     * @param fixed   the option to never move the particle
+     * @return the id of the new particle
+     */
+    synchronized int add(Particle handle, Vec pos, double mass, double epsilon, double sigma, boolean fixed) {
+        ensureCapacity(size + 1);
+
+        int id = size++;
+        modCount++;
+        x[id] = pos.x;
+        y[id] = pos.y;
+        vx[id] = vy[id] = 0.0;
+        fx[id] = fy[id] = 0.0;
+        oldFx[id] = oldFy[id] = 0.0;
+        this.mass[id] = mass;
+        this.epsilon[id] = epsilon;
+        this.sigma[id] = sigma;
+        species[id] = speciesTable.speciesOf(epsilon, sigma);
+        this.fixed[id] = fixed;
+        handles[id] = handle;
+        return id;
+    }
+
+    /**
+     * Removes a particle from this store by moving the last particle into its slot.
+     * Takes time proportional to the number of spring connections of both particles.
+     *
+     * @param p the particle to remove
+     */
+    synchronized void remove(Particle p) {
+        if (p.id < 0)
+            return;
+
+        springs.removeParticle(p.id, size - 1);
+        removeSlot(p);
+    }
+
+    /**
+     * Removes many particles from this store.
+     * Small batches are removed one by one, large batches with a single pass over all spring connections afterwards.
+     *
+     * @param ps the particles to remove, removed particles are ignored
+     */
+    synchronized void removeAll(Collection<Particle> ps) {
+        if (ps.size() < Math.max(1, size / BULK_REMOVAL_DIVISOR) || springs.size() == 0) {
+            ps.forEach(this::remove);
+            return;
+        }
+
+        Particle[] previous = Arrays.copyOf(handles, size);
+        for (Particle p : ps)
+            if (p.id >= 0)
+                removeSlot(p);
+        springs.remap(previous);
+    }
+
+    /**
+     * Moves the last particle into the slot of a particle, without touching the spring connections.
+     */
+    private void removeSlot(Particle p) {
+        int id = p.id;
+        int last = --size;
+        modCount++;
+        if (id != last) {
+            x[id] = x[last];
+            y[id] = y[last];
+            vx[id] = vx[last];
+            vy[id] = vy[last];
+            fx[id] = fx[last];
+            fy[id] = fy[last];
+            oldFx[id] = oldFx[last];
+            oldFy[id] = oldFy[last];
+            mass[id] = mass[last];
+            epsilon[id] = epsilon[last];
+            sigma[id] = sigma[last];
+            species[id] = species[last];
+            fixed[id] = fixed[last];
+            handles[id] = handles[last];
+            handles[id].id = id;
+        }
+
+        handles[last] = null;
+        p.id = -1;
+    }
+
+    /**
+     * Replaces all particles by the particles of a detached copy.
+     * The arrays are copied in bulk and one new handle is created per particle, without going through {@link #add}.
+     * All previous handles are detached.
+     *
+     * @param data    the copy to restore
+     * @param gravity the gravitational force to start the next tick with
+     */
+    synchronized void restore(ParticleData data, Vec gravity) {
+        for (int i = 0; i < size; i++) {
+            handles[i].id = -1;
+            handles[i] = null;
+        }
+
+        int n = data.size();
+        ensureCapacity(n);
+        System.arraycopy(data.getX(), 0, x, 0, n);
+        System.arraycopy(data.getY(), 0, y, 0, n);
+        System.arraycopy(data.getVx(), 0, vx, 0, n);
+        System.arraycopy(data.getVy(), 0, vy, 0, n);
+        System.arraycopy(data.getOldFx(), 0, oldFx, 0, n);
+        System.arraycopy(data.getOldFy(), 0, oldFy, 0, n);
+        System.arraycopy(data.getMass(), 0, mass, 0, n);
+        System.arraycopy(data.getEpsilon(), 0, epsilon, 0, n);
+        System.arraycopy(data.getSigma(), 0, sigma, 0, n);
+        System.arraycopy(data.getFixed(), 0, fixed, 0, n);
+        size = n;
+        modCount++;
+
+        for (int i = 0; i < n; i++) {
+            species[i] = speciesTable.speciesOf(epsilon[i], sigma[i]);
+            fx[i] = fixed[i] ? 0.0 : gravity.x;
+            fy[i] = fixed[i] ? 0.0 : gravity.y;
+            handles[i] = fixed[i] ? new FixedParticle(this, i) : new Particle(this, i);
+        }
+
+        springs.clear();
+        int[] connections = data.getConnections();
+        for (int c = 0; c < connections.length; c += 2)
+            springs.connect(connections[c], connections[c + 1]);
+    }
+
+    /**
+     * @return the number of particles in this store
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the interaction parameters of all species
+     */
+    public SpeciesTable getSpeciesTable() {
+        return speciesTable;
+    }
+
+    /**
+     * @return the number of spring connections between the particles in this store
+     */
+    public int springCount() {
+        return springs.size();
+    }
+
+    /**
+     * @return the number of structural modifications, i.e. added or removed particles
+     */
+    public int modCount() {
+        return modCount;
+    }
+
+    /**
+     * Copies the positions and optionally the speeds of all particles into arrays that hold at least {@link #size()} values each.
+     * Must be called while no tick is running.
+     *
+     * @param x  the array for the horizontal positions in px
+     * @param y  the array for the vertical positions in px
+     * @param vx the array for the horizontal speeds in px / s, or null to skip the speeds
+     * @param vy the array for the vertical speeds in px / s, or null to skip the speeds
+     */
+    public void copyMotion(double[] x, double[] y, double[] vx, double[] vy) {
+        System.arraycopy(this.x, 0, x, 0, size);
+        System.arraycopy(this.y, 0, y, 0, size);
+        if (vx != null && vy != null) {
+            System.arraycopy(this.vx, 0, vx, 0, size);
+            System.arraycopy(this.vy, 0, vy, 0, size);
+        }
+    }
+
+    /**
+     * Makes the world periodic or non-periodic.
+     *
+     * @param periodX the width of the periodic box in px, or zero for a non-periodic world
+     * @param periodY the height of the periodic box in px, or zero for a non-periodic world
+     */
+    void setPeriod(double periodX, double periodY) {
+        this.periodX = periodX;
+        this.periodY = periodY;
+        inversePeriodX = periodX == 0.0 ? 0.0 : 1.0 / periodX;
+        inversePeriodY = periodY == 0.0 ? 0.0 : 1.0 / periodY;
+    }
+
+    /**
+     * Converts a horizontal positional difference to the difference to the nearest periodic image.
+     * Returns the difference unchanged if the world is not periodic.
+     *
+     * @param dx the horizontal positional difference
+     * @return the horizontal difference to the nearest image
+     */
+    double imageX(double dx) {
+        return dx - periodX * Math.rint(dx * inversePeriodX);
+    }
+
+    /**
+     * Converts a vertical positional difference to the difference to the nearest periodic image.
+     * Returns the difference unchanged if the world is not periodic.
+     *
+     * @param dy the vertical positional difference
+     * @return the vertical difference to the nearest image
+     */
+    double imageY(double dy) {
+        return dy - periodY * Math.rint(dy * inversePeriodY);
+    }
+
+    /**
+     * Moves a particle back into the periodic box.
+     *
+     * @param i the id of the particle
+     */
+    void wrap(int i) {
+        x[i] = wrap(x[i], periodX);
+        y[i] = wrap(y[i], periodY);
+    }
+
+    /**
+     * @return the coordinate wrapped into [0, period)
+     */
+    private static double wrap(double v, double period) {
+        v -= period * Math.floor(v / period);
+        return v < period ? v : 0.0; // Tiny negative values may round up to the period
+    }
+
+    /**
+     * Applies the forces of all spring connections in a single parallel pass, see {@link SpringNetwork}.
+     */
+    public void tickSpringForces() {
+        springs.applyForces(this);
+    }
+
+    /**
+     * Computes the current speed of all particles using Verlet integration.
+     *
+     * @param dt the time between two ticks in this simulation in seconds
+     */
+    public void tickSpeed(double dt) {
+        double halfDt = dt / 2.0;
+        IntStream.range(0, size).parallel().forEach(i -> {
+            if (fixed[i])
+                return;
+
+            // Friction
+            fx[i] -= vx[i] * (1.0 - FRICTION_FACTOR);
+            fy[i] -= vy[i] * (1.0 - FRICTION_FACTOR);
+
+            // Verlet velocity calculation
+            double scale = halfDt / mass[i];
+            vx[i] += (oldFx[i] + fx[i]) * scale;
+            vy[i] += (oldFy[i] + fy[i]) * scale;
+        });
+    }
+
+    /**
+     * Computes the current position of all particles using Verlet integration.
+     *
+     * @param dt the time between two ticks in this simulation in seconds
+     */
+    public void tickPos(double dt) {
+        tickPos(dt, 1.0);
+    }
+
+    /**
+     * Computes the current position of all particles using Verlet integration over a step that is a multiple of the base time step.
+     * The speeds are displacements per base time step, so they are scaled linearly and the forces quadratically.
+     *
+     * @param dt        the base time step in seconds
+     * @param stepScale the length of this step as multiple of the base time step
+     */
+    public void tickPos(double dt, double stepScale) {
+        double halfDt = dt / 2.0;
+        double sqStepScale = stepScale * stepScale;
+        IntStream.range(0, size).parallel().forEach(i -> {
+            if (fixed[i])
+                return;
+
+            // Verlet position calculation
+            double scale = halfDt / mass[i] * dt * sqStepScale;
+            x[i] += vx[i] * stepScale + oldFx[i] * scale;
+            y[i] += vy[i] * stepScale + oldFy[i] * scale;
+        });
+    }
+
+    /**
+     * Computes the longest step, as multiple of the base time step, in which no particle moves further than a given distance.
+     * The current speeds and the speed changes caused by the current forces are both limited, in a single parallel reduction.
+     * Must be called after all forces of the tick are computed and the speeds are updated.
+     *
+     * @param dt              the base time step in seconds
+     * @param maxDisplacement the maximum distance in px any particle may move in one step
+     * @return the step scale, or positive infinity if no particle moves or feels a force
+     */
+    public double stepScale(double dt, double maxDisplacement) {
+        // The largest squared speed and squared acceleration of all movable particles
+        double[] max = IntStream.range(0, size).parallel().filter(i -> !fixed[i]).collect(() -> new double[2], (m, i) -> {
+            m[0] = Math.max(m[0], vx[i] * vx[i] + vy[i] * vy[i]);
+            double a = 1.0 / mass[i];
+            m[1] = Math.max(m[1], (fx[i] * fx[i] + fy[i] * fy[i]) * a * a);
+        }, (m1, m2) -> {
+            m1[0] = Math.max(m1[0], m2[0]);
+            m1[1] = Math.max(m1[1], m2[1]);
+        });
+
+        return stepScale(max[0], max[1], dt, maxDisplacement);
+    }
+
+    /**
+     * @return the longest step as multiple of the base time step, given the largest squared speed and squared acceleration
+     */
+    private static double stepScale(double maxSqSpeed, double maxSqAcceleration, double dt, double maxDisplacement) {
+        // The speed moves a particle linearly with the step scale, the speed change caused by the force quadratically
+        double speed = Math.sqrt(maxSqSpeed), kick = Math.sqrt(maxSqAcceleration) * dt;
+        double scale = Double.POSITIVE_INFINITY;
+        if (speed > 0.0)
+            scale = maxDisplacement / speed;
+        if (kick > 0.0)
+            scale = Math.min(scale, Math.sqrt(maxDisplacement / kick));
+        return scale;
+    }
+
+    /**
+     * Resets the forces of all particles after all computations.
+     *
+     * @param gravity the gravitational force to start the next tick with
+     */
+    public void tickReset(Vec gravity) {
+        double gx = gravity.x, gy = gravity.y;
+        IntStream.range(0, size).parallel().forEach(i -> {
+            if (fixed[i])
+                return;
+
+            oldFx[i] = fx[i];
+            oldFy[i] = fy[i];
+            fx[i] = gx;
+            fy[i] = gy;
+        });
+    }
+
+    /**
+     * @return the number of chunks to split the particles into for the fused integration, a few per worker thread
+     */
+    private int fusedChunks() {
+        return Math.max(1, Math.min(size / MIN_CHUNK_SIZE, 4 * ForkJoinPool.getCommonPoolParallelism()));
+    }
+
+    /**
+     * Completes the previous step in a single parallel pass over contiguous chunks of particles:
+     * adds the spring forces, applies the friction and computes the new speed of each particle, and finds the longest next step.
+     * The result is identical to {@link #tickSpringForces()}, {@link #tickSpeed(double)} and {@link #stepScale(double, double)}.
+     * All other forces of the tick must have been computed before.
+     *
+     * @param stepDt          the length of the previous step in seconds
+     * @param dt              the base time step in seconds
+     * @param maxDisplacement the maximum distance in px any particle may move in the next step, or zero to skip the step computation
+     * @return the longest next step as multiple of the base time step, or positive infinity if not computed or no particle moves
+     */
+    public double tickSpringsAndSpeed(double stepDt, double dt, double maxDisplacement) {
+        double halfDt = stepDt / 2.0;
+        boolean findStep = maxDisplacement > 0.0;
+        int chunks = fusedChunks();
+        double[] maxima = new double[2 * chunks]; // The largest squared speed and squared acceleration of each chunk
+
+        synchronized (springs) {
+            springs.updateIndex(size);
+            IntStream.range(0, chunks).parallel().forEach(chunk -> {
+                double maxSqSpeed = 0.0, maxSqAcceleration = 0.0;
+                for (int i = chunkStart(chunk, chunks), end = chunkStart(chunk + 1, chunks); i < end; i++) {
+                    if (fixed[i])
+                        continue;
+
+                    springs.addForces(this, i);
+
+                    // Friction
+                    fx[i] -= vx[i] * (1.0 - FRICTION_FACTOR);
+                    fy[i] -= vy[i] * (1.0 - FRICTION_FACTOR);
+
+                    // Verlet velocity calculation
+                    double scale = halfDt / mass[i];
+                    vx[i] += (oldFx[i] + fx[i]) * scale;
+                    vy[i] += (oldFy[i] + fy[i]) * scale;
+
+                    if (findStep) {
+                        maxSqSpeed = Math.max(maxSqSpeed, vx[i] * vx[i] + vy[i] * vy[i]);
+                        double a = 1.0 / mass[i];
+                        maxSqAcceleration = Math.max(maxSqAcceleration, (fx[i] * fx[i] + fy[i] * fy[i]) * a * a);
+                    }
+                }
+                maxima[2 * chunk] = maxSqSpeed;
+                maxima[2 * chunk + 1] = maxSqAcceleration;
+            });
+        }
+
+        if (!findStep)
+            return Double.POSITIVE_INFINITY;
+
+        double maxSqSpeed = 0.0, maxSqAcceleration = 0.0;
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            maxSqSpeed = Math.max(maxSqSpeed, maxima[2 * chunk]);
+            maxSqAcceleration = Math.max(maxSqAcceleration, maxima[2 * chunk + 1]);
+        }
+        return stepScale(maxSqSpeed, maxSqAcceleration, dt, maxDisplacement);
+    }
+
+    /**
+     * Starts the next step in a single parallel pass over contiguous chunks of particles:
+     * computes the new position of each particle, wraps it into a periodic world and resets its force.
+     * The result is identical to {@link #tickPos(double, double)}, {@link BoundaryCondition#confine} and {@link #tickReset(Vec)}.
+     *
+     * @param dt        the base time step in seconds
+     * @param stepScale the length of this step as multiple of the base time step
+     * @param gravity   the gravitational force to start the next tick with
+     */
+    public void tickPosAndReset(double dt, double stepScale, Vec gravity) {
+        double halfDt = dt / 2.0;
+        double sqStepScale = stepScale * stepScale;
+        double gx = gravity.x, gy = gravity.y;
+        boolean periodic = periodX != 0.0;
+        int chunks = fusedChunks();
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            for (int i = chunkStart(chunk, chunks), end = chunkStart(chunk + 1, chunks); i < end; i++) {
+                if (fixed[i]) {
+                    if (periodic)
+                        wrap(i);
+                    continue;
+                }
+
+                // Verlet position calculation
+                double scale = halfDt / mass[i] * dt * sqStepScale;
+                x[i] += vx[i] * stepScale + oldFx[i] * scale;
+                y[i] += vy[i] * stepScale + oldFy[i] * scale;
+                if (periodic)
+                    wrap(i);
+
+                oldFx[i] = fx[i];
+                oldFy[i] = fy[i];
+                fx[i] = gx;
+                fy[i] = gy;
+            }
+        });
+    }
+
+    /**
+     * @return the first particle id of a chunk, or the number of particles for the end of the last chunk
+     */
+    private int chunkStart(int chunk, int chunks) {
+        return (int) ((long) size * chunk / chunks);
+    }
+}
@@ -0,0 +1,135 @@
+package de.javaabc.particlesimulation.particle;
+
+import java.util.Arrays;
+
+/**
+ * A compact copy of everything needed to draw all particles at the end of one tick.
+ * A snapshot is filled by the tick thread and then only read until it is recycled by its {@link SnapshotBuffer},
+ * so painting never touches the live simulation state.
+ */
+public class RenderSnapshot {
+    /**
+     * the positions of all particles in px
+     */
+    private float[] x = new float[0], y = new float[0];
+
+    /**
+     * the option for each particle to never move
+     */
+    private boolean[] fixed = new boolean[0];
+
+    /**
+     * the snapshot indices of both particles of each spring connection, stored one after another
+     */
+    private int[] connections = new int[0];
+
+    /**
+     * the number of particles and connections
+     */
+    private int size, connectionCount;
+
+    /**
+     * the tick this snapshot was taken after
+     */
+    private long tick;
+
+    /**
+     * the simulated time this snapshot was taken at in seconds
+     */
+    private double time;
+
+    /**
+     * Copies the positions and connections of all particles into this snapshot.
+     * Must be called while no tick is running.
+     *
+     * @param store the store holding the state of all particles
+     * @param tick  the number of ticks computed so far
+     * @param time  the simulated time so far in seconds
+     */
+    void capture(ParticleStore store, long tick, double time) {
+        this.tick = tick;
+        this.time = time;
+        size = store.size();
+        if (x.length < size) {
+            int capacity = Math.max(size, 2 * x.length);
+            x = new float[capacity];
+            y = new float[capacity];
+            fixed = new boolean[capacity];
+        }
+
+        for (int i = 0; i < size; i++) {
+            x[i] = (float) store.x[i];
+            y[i] = (float) store.y[i];
+            fixed[i] = store.fixed[i];
+        }
+
+        var springs = store.springs;
+        synchronized (springs) {
+            connectionCount = springs.size();
+            connections = springs.copyEnds(connections);
+        }
+    }
+
+    /**
+     * @return the number of particles in this snapshot
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the horizontal position of a particle in px
+     */
+    public float x(int i) {
+        return x[i];
+    }
+
+    /**
+     * @return the vertical position of a particle in px
+     */
+    public float y(int i) {
+        return y[i];
+    }
+
+    /**
+     * @return true iff a particle never moves
+     */
+    public boolean isFixed(int i) {
+        return fixed[i];
+    }
+
+    /**
+     * @return the number of spring connections in this snapshot
+     */
+    public int connectionCount() {
+        return connectionCount;
+    }
+
+    /**
+     * @return the snapshot index of the first particle of a connection
+     */
+    public int connectionFrom(int c) {
+        return connections[2 * c];
+    }
+
+    /**
+     * @return the snapshot index of the second particle of a connection
+     */
+    public int connectionTo(int c) {
+        return connections[2 * c + 1];
+    }
+
+    /**
+     * @return the tick this snapshot was taken after
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * @return the simulated time this snapshot was taken at in seconds
+     */
+    public double getTime() {
+        return time;
+    }
+}
@@ -0,0 +1,59 @@
+package de.javaabc.particlesimulation.particle;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lock-free triple buffer of {@link RenderSnapshot}s between one writing tick thread and one reading paint thread.
+ * The writer always fills its private back snapshot and swaps it with the shared middle one, the reader swaps its private front snapshot
+ * with the middle one only if a newer snapshot was published. Neither side ever waits for the other.
+ */
+public class SnapshotBuffer {
+    /**
+     * the flag in the middle index that marks a snapshot that has not been read yet
+     */
+    private static final int FRESH = 4;
+
+    /**
+     * the three snapshots
+     */
+    private final RenderSnapshot[] snapshots = {new RenderSnapshot(), new RenderSnapshot(), new RenderSnapshot()};
+
+    /**
+     * the index of the snapshot that is filled by the writer
+     */
+    private int back = 0;
+
+    /**
+     * the index of the shared snapshot, possibly together with the {@link #FRESH} flag
+     */
+    private final AtomicInteger middle = new AtomicInteger(1);
+
+    /**
+     * the index of the snapshot that is read by the reader
+     */
+    private int front = 2;
+
+    /**
+     * Captures the current state of all particles and makes it the latest snapshot. Must only be called by the writing thread.
+     *
+     * @param store the store holding the state of all particles
+     * @param tick  the number of ticks computed so far
+     * @param time  the simulated time so far in seconds
+     */
+    public void publish(ParticleStore store, long tick, double time) {
+        snapshots[back].capture(store, tick, time);
+        back = middle.getAndSet(back | FRESH) & ~FRESH;
+    }
+
+    /**
+     * Returns the latest published snapshot. Must only be called by the reading thread.
+     * The snapshot stays unchanged until the next call.
+     *
+     * @return the latest snapshot
+     */
+    public RenderSnapshot latest() {
+        if ((middle.get() & FRESH) != 0)
+            front = middle.getAndSet(front) & ~FRESH;
+        return snapshots[front];
+    }
+}
@@ -0,0 +1,194 @@
+package de.javaabc.particlesimulation.particle;
+
+import java.util.Arrays;
+
+/**
+ * A table of particle species and their precomputed pairwise interaction parameters.
+ * Each species is a distinct combination of epsilon and sigma and is identified by a small integer id.
+ * For each ordered pair of species (a, b), the mixed parameters are stored in flat primitive matrices at index a * count + b,
+ * so the pair kernel only needs two array loads instead of computing or looking up mixed values.
+ */
+public class SpeciesTable {
+    /**
+     * the epsilon and sigma values of each species
+     */
+    private double[] epsilon, sigma;
+
+    /**
+     * the number of registered species
+     */
+    private int count;
+
+    /**
+     * the number of changes to any interaction parameters
+     */
+    private int version;
+
+    /**
+     * the default maximum distance to compute forces between particles
+     */
+    private final double cutoffDistance;
+
+    /**
+     * the mixed epsilon values of all species pairs, indexed by a * count + b
+     */
+    double[] mixedEpsilon;
+
+    /**
+     * the mixed sigma values of all species pairs, indexed by a * count + b
+     */
+    double[] mixedSigma;
+
+    /**
+     * the cutoff distances of all species pairs, squared, indexed by a * count + b
+     */
+    double[] sqCutoff;
+
+    /**
+     * Creates a new empty species table.
+     *
+     * @param cutoffDistance the default maximum distance to compute forces between particles
+     */
+    public SpeciesTable(double cutoffDistance) {
+        this.cutoffDistance = cutoffDistance;
+        epsilon = sigma = mixedEpsilon = mixedSigma = sqCutoff = new double[0];
+    }
+
+    /**
+     * Finds the species with the given parameters or registers a new one.
+     * New species are mixed with all existing ones using the geometric mean of epsilon and the arithmetic mean of sigma.
+     *
+     * @param epsilon the depth of the Lennard-Jones-Potential
+     * @param sigma   the particle distance where the Lennard-Jones-Potential is equal to zero
+     * @return the id of the species
+     */
+    public synchronized int speciesOf(double epsilon, double sigma) {
+        for (int s = 0; s < count; s++)
+            if (this.epsilon[s] == epsilon && this.sigma[s] == sigma)
+                return s;
+
+        int n = count + 1;
+        double[] newEpsilon = Arrays.copyOf(this.epsilon, n), newSigma = Arrays.copyOf(this.sigma, n);
+        newEpsilon[count] = epsilon;
+        newSigma[count] = sigma;
+
+        double[] newMixedEpsilon = new double[n * n], newMixedSigma = new double[n * n], newSqCutoff = new double[n * n];
+        for (int a = 0; a < n; a++)
+            for (int b = 0; b < n; b++) {
+                int index = a * n + b;
+                if (a < count && b < count) {
+                    newMixedEpsilon[index] = mixedEpsilon[a * count + b];
+                    newMixedSigma[index] = mixedSigma[a * count + b];
+                    newSqCutoff[index] = sqCutoff[a * count + b];
+                } else {
+                    newMixedEpsilon[index] = Math.sqrt(newEpsilon[a] * newEpsilon[b]);
+                    newMixedSigma[index] = 0.5 * (newSigma[a] + newSigma[b]);
+                    newSqCutoff[index] = cutoffDistance * cutoffDistance;
+                }
+            }
+
+        this.epsilon = newEpsilon;
+        this.sigma = newSigma;
+        mixedEpsilon = newMixedEpsilon;
+        mixedSigma = newMixedSigma;
+        sqCutoff = newSqCutoff;
+        version++;
+        return count++;
+    }
+
+    /**
+     * Overrides the mixed interaction parameters of a pair of species, e.g. to model a mixture with custom cross terms.
+     * The cutoff distance must not exceed the default cutoff distance, since only neighbored blocks are searched for pairs.
+     *
+     * @param a              the first species
+     * @param b              the second species
+     * @param epsilon        the mixed depth of the Lennard-Jones-Potential
+     * @param sigma          the mixed particle distance where the Lennard-Jones-Potential is equal to zero
+     * @param cutoffDistance the maximum distance to compute forces between particles of both species
+     * @throws IllegalArgumentException if a species does not exist or the cutoff distance is too large
+     */
+    public synchronized void setInteraction(int a, int b, double epsilon, double sigma, double cutoffDistance) {
+        if (a < 0 || b < 0 || a >= count || b >= count)
+            throw new IllegalArgumentException("Unknown species pair (" + a + ", " + b + ")");
+        if (cutoffDistance > this.cutoffDistance)
+            throw new IllegalArgumentException("Cutoff distance " + cutoffDistance + " exceeds " + this.cutoffDistance);
+
+        for (int index : new int[]{a * count + b, b * count + a}) {
+            mixedEpsilon[index] = epsilon;
+            mixedSigma[index] = sigma;
+            sqCutoff[index] = cutoffDistance * cutoffDistance;
+        }
+        version++;
+    }
+
+    /**
+     * Copies all species and their interaction parameters, including all overrides, e.g. to write a checkpoint.
+     *
+     * @return a detached copy of this table
+     */
+    public synchronized Interactions copy() {
+        return new Interactions(Arrays.copyOf(epsilon, count), Arrays.copyOf(sigma, count),
+                Arrays.copyOf(mixedEpsilon, count * count), Arrays.copyOf(mixedSigma, count * count), Arrays.copyOf(sqCutoff, count * count));
+    }
+
+    /**
+     * Replaces all species and their interaction parameters by a copy, so every species keeps its id.
+     *
+     * @param interactions the copy to restore
+     * @throws IllegalArgumentException if a cutoff distance of the copy exceeds the default cutoff distance of this table
+     */
+    public synchronized void restore(Interactions interactions) {
+        for (double sqPairCutoff : interactions.sqCutoff())
+            if (sqPairCutoff > cutoffDistance * cutoffDistance)
+                throw new IllegalArgumentException("Cutoff distance " + Math.sqrt(sqPairCutoff) + " exceeds " + cutoffDistance);
+
+        count = interactions.count();
+        epsilon = interactions.epsilon().clone();
+        sigma = interactions.sigma().clone();
+        mixedEpsilon = interactions.mixedEpsilon().clone();
+        mixedSigma = interactions.mixedSigma().clone();
+        sqCutoff = interactions.sqCutoff().clone();
+        version++;
+    }
+
+    /**
+     * @return the number of changes to any interaction parameters
+     */
+    int version() {
+        return version;
+    }
+
+    /**
+     * @return the number of registered species
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * A detached copy of all species and their interaction parameters, see {@link #copy()}.
+     *
+     * @param epsilon      the epsilon value of each species
+     * @param sigma        the sigma value of each species
+     * @param mixedEpsilon the mixed epsilon values of all species pairs, indexed by a * count + b
+     * @param mixedSigma   the mixed sigma values of all species pairs, indexed by a * count + b
+     * @param sqCutoff     the cutoff distances of all species pairs, squared, indexed by a * count + b
+     */
+    public record Interactions(double[] epsilon, double[] sigma, double[] mixedEpsilon, double[] mixedSigma, double[] sqCutoff) {
+        /**
+         * @throws IllegalArgumentException if the arrays do not fit the number of species
+         */
+        public Interactions {
+            int pairs = epsilon.length * epsilon.length;
+            if (sigma.length != epsilon.length || mixedEpsilon.length != pairs || mixedSigma.length != pairs || sqCutoff.length != pairs)
+                throw new IllegalArgumentException("Malformed interactions of " + epsilon.length + " species");
+        }
+
+        /**
+         * @return the number of species
+         */
+        public int count() {
+            return epsilon.length;
+        }
+    }
+}
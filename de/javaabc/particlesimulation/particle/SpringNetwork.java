@@ -0,0 +1,393 @@
+package de.javaabc.particlesimulation.particle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * All spring connections between the particles of a {@link ParticleStore}, kept as a flat list of particle id pairs.
+ * <p>
+ * Every particle also keeps the list slots of its own connections, so connections are found and removed in time proportional
+ * to the number of connections of a particle, e.g. when the particle is removed. A connection between two particles is found
+ * by scanning the shorter of both slot lists, which is faster than hashing for the few springs of a typical particle.
+ * <p>
+ * For the force pass, the list is indexed in compressed sparse row form: the ids of all connected particles of each particle
+ * are stored one after another in a single array. The index is rebuilt lazily, only after connections or particles changed.
+ * Each worker then sums the spring forces of its own range of particles over their rows, so every spring is evaluated once
+ * from each end and no two threads ever write the force of the same particle.
+ */
+class SpringNetwork {
+    /**
+     * the spring factor k that scales the spring force
+     */
+    static final double STIFFNESS = 1E-4;
+
+    /**
+     * the initial number of connections that fit into the list
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * the particle ids of both ends of each connection, stored one after another
+     */
+    private int[] ends = new int[2 * INITIAL_CAPACITY];
+
+    /**
+     * the number of connections
+     */
+    private int count;
+
+    /**
+     * the list slots of the connections of each particle, by particle id
+     */
+    private int[][] incident = new int[0][];
+
+    /**
+     * the number of connections of each particle, by particle id
+     */
+    private int[] incidentCount = new int[0];
+
+    /**
+     * the ids of all particles with at least one connection, as of the last index build
+     */
+    private int[] connected = new int[0];
+
+    /**
+     * the number of particles with at least one connection
+     */
+    private int connectedCount;
+
+    /**
+     * the start of the row of each particle in {@link #adjacency} by particle id, followed by the end of the last row
+     */
+    private int[] rowStart = new int[1];
+
+    /**
+     * the ids of the connected particles of each connected particle, row by row
+     */
+    private int[] adjacency = new int[0];
+
+    /**
+     * the number of connections of each particle while building the index, then the next free slot of its row
+     */
+    private int[] degree = new int[0];
+
+    /**
+     * true if the index does not match the list of connections anymore
+     */
+    private boolean dirty;
+
+    /**
+     * the number of particles in the store when the index was built
+     */
+    private int indexedSize = -1;
+
+    /**
+     * Finds the connection between two particles in any direction by scanning the shorter of both slot lists.
+     *
+     * @return the list slot of the connection, or -1 if not connected
+     */
+    private int find(int i, int j) {
+        if (i >= incidentCount.length || j >= incidentCount.length)
+            return -1;
+
+        // Scan the particle with fewer connections, the other end of each of its connections has to be the other particle
+        int id = incidentCount[i] <= incidentCount[j] ? i : j;
+        int other = id == i ? j : i;
+        int[] slots = incident[id];
+        for (int k = 0; k < incidentCount[id]; k++) {
+            int c = slots[k];
+            if (ends[2 * c] == other || ends[2 * c + 1] == other)
+                return c;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of connections
+     */
+    synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Connects two particles, unless they are the same or already connected in any direction.
+     *
+     * @param i the id of the first particle
+     * @param j the id of the second particle
+     * @return true if the connection was added
+     */
+    synchronized boolean connect(int i, int j) {
+        if (i == j || i < 0 || j < 0 || find(i, j) >= 0)
+            return false;
+
+        if (2 * count + 2 > ends.length)
+            ends = Arrays.copyOf(ends, 2 * ends.length);
+        ends[2 * count] = i;
+        ends[2 * count + 1] = j;
+        addIncident(i, count);
+        addIncident(j, count);
+        count++;
+        dirty = true;
+        return true;
+    }
+
+    /**
+     * Removes the connection between two particles, if any.
+     *
+     * @param i the id of the first particle
+     * @param j the id of the second particle
+     * @return true if a connection was removed
+     */
+    synchronized boolean disconnect(int i, int j) {
+        int c = find(i, j);
+        if (c < 0)
+            return false;
+
+        removeAt(c);
+        return true;
+    }
+
+    /**
+     * Adds a list slot to the connections of a particle.
+     */
+    private void addIncident(int id, int c) {
+        if (id >= incidentCount.length) {
+            int capacity = Math.max(id + 1, 2 * incidentCount.length);
+            incident = Arrays.copyOf(incident, capacity);
+            incidentCount = Arrays.copyOf(incidentCount, capacity);
+        }
+        if (incident[id] == null)
+            incident[id] = new int[4];
+        else if (incidentCount[id] == incident[id].length)
+            incident[id] = Arrays.copyOf(incident[id], 2 * incident[id].length);
+        incident[id][incidentCount[id]++] = c;
+    }
+
+    /**
+     * Replaces a list slot in the connections of a particle, or removes it if the replacement is negative.
+     */
+    private void replaceIncident(int id, int c, int replacement) {
+        int[] slots = incident[id];
+        for (int k = 0; k < incidentCount[id]; k++) {
+            if (slots[k] != c)
+                continue;
+
+            if (replacement >= 0)
+                slots[k] = replacement;
+            else
+                slots[k] = slots[--incidentCount[id]];
+            return;
+        }
+    }
+
+    /**
+     * Removes a connection by moving the last connection into its slot.
+     */
+    private void removeAt(int c) {
+        int i = ends[2 * c], j = ends[2 * c + 1];
+        replaceIncident(i, c, -1);
+        replaceIncident(j, c, -1);
+
+        int last = --count;
+        if (c != last) {
+            int li = ends[2 * last], lj = ends[2 * last + 1];
+            ends[2 * c] = li;
+            ends[2 * c + 1] = lj;
+            replaceIncident(li, last, c);
+            replaceIncident(lj, last, c);
+        }
+        dirty = true;
+    }
+
+    /**
+     * Removes all connections of a particle that is removed from the store,
+     * and renames the particle that is moved into its slot.
+     * Takes time proportional to the number of connections of both particles.
+     *
+     * @param id   the id of the removed particle
+     * @param last the id of the particle that takes over the id of the removed one
+     */
+    synchronized void removeParticle(int id, int last) {
+        if (id >= incidentCount.length)
+            return;
+
+        while (incidentCount[id] > 0)
+            removeAt(incident[id][incidentCount[id] - 1]);
+
+        if (id == last || last >= incidentCount.length || incidentCount[last] == 0)
+            return;
+
+        for (int k = 0; k < incidentCount[last]; k++) {
+            int c = incident[last][k];
+            if (ends[2 * c] == last)
+                ends[2 * c] = id;
+            else
+                ends[2 * c + 1] = id;
+        }
+
+        // The emptied slot list of the removed particle is reused by the particle that was last
+        int[] slots = incident[id];
+        incident[id] = incident[last];
+        incidentCount[id] = incidentCount[last];
+        incident[last] = slots;
+        incidentCount[last] = 0;
+        dirty = true;
+    }
+
+    /**
+     * Renames both ends of all connections after many particles were removed from the store at once,
+     * and drops the connections of the removed particles, in a single pass over all connections.
+     *
+     * @param previous the handles of all particles by their id before the removal, removed handles have a negative id
+     */
+    synchronized void remap(Particle[] previous) {
+        int kept = 0;
+        Arrays.fill(incidentCount, 0);
+        for (int c = 0; c < count; c++) {
+            int i = previous[ends[2 * c]].id, j = previous[ends[2 * c + 1]].id;
+            if (i < 0 || j < 0)
+                continue;
+
+            ends[2 * kept] = i;
+            ends[2 * kept + 1] = j;
+            addIncident(i, kept);
+            addIncident(j, kept);
+            kept++;
+        }
+        count = kept;
+        dirty = true;
+    }
+
+    /**
+     * Removes all connections.
+     */
+    synchronized void clear() {
+        count = 0;
+        Arrays.fill(incidentCount, 0);
+        dirty = true;
+    }
+
+    /**
+     * @return the particle ids of both ends of each connection, stored one after another
+     */
+    synchronized int[] copyEnds() {
+        return Arrays.copyOf(ends, 2 * count);
+    }
+
+    /**
+     * Copies the particle ids of both ends of each connection into an array, growing it if necessary.
+     *
+     * @param target the array to reuse if it is large enough
+     * @return the array holding the ends of all connections one after another, see {@link #size()}
+     */
+    synchronized int[] copyEnds(int[] target) {
+        if (target.length < 2 * count)
+            target = new int[Math.max(2 * count, 2 * target.length)];
+        System.arraycopy(ends, 0, target, 0, 2 * count);
+        return target;
+    }
+
+    /**
+     * Collects the handles of all particles that a given particle was connected with, i.e. of all connections
+     * that have the given particle as first end. Connections made by the other particle are not included.
+     *
+     * @param store the store holding the particle handles
+     * @param id    the id of the particle
+     * @return the handles of all particles connected by the given particle
+     */
+    synchronized List<Particle> connectedBy(ParticleStore store, int id) {
+        List<Particle> result = new ArrayList<>();
+        for (int k = 0; id < incidentCount.length && k < incidentCount[id]; k++) {
+            int c = incident[id][k];
+            if (ends[2 * c] == id)
+                result.add(store.handles[ends[2 * c + 1]]);
+        }
+        return result;
+    }
+
+    /**
+     * Rebuilds the compressed sparse row index of all connections with a counting sort, if connections or particles changed.
+     * Must be called while holding the lock of this network.
+     *
+     * @param n the number of particles in the store
+     */
+    void updateIndex(int n) {
+        if (!dirty && n == indexedSize)
+            return;
+
+        if (degree.length < n)
+            degree = new int[Math.max(n, 2 * degree.length)];
+        Arrays.fill(degree, 0, n, 0);
+        for (int k = 0; k < 2 * count; k++)
+            degree[ends[k]]++;
+
+        connectedCount = 0;
+        if (connected.length < n) {
+            connected = new int[Math.max(n, 2 * connected.length)];
+            rowStart = new int[connected.length + 1];
+        }
+        for (int i = 0; i < n; i++) {
+            rowStart[i + 1] = rowStart[i] + degree[i];
+            degree[i] = rowStart[i]; // From now on the next free slot in the row
+            if (rowStart[i + 1] > rowStart[i])
+                connected[connectedCount++] = i;
+        }
+
+        if (adjacency.length < 2 * count)
+            adjacency = new int[Math.max(2 * count, 2 * adjacency.length)];
+        for (int c = 0; c < count; c++) {
+            int i = ends[2 * c], j = ends[2 * c + 1];
+            adjacency[degree[i]++] = j;
+            adjacency[degree[j]++] = i;
+        }
+        indexedSize = n;
+        dirty = false;
+    }
+
+    /**
+     * Adds the spring forces of all connections of one particle to its force.
+     * Requires an up-to-date index, see {@link #updateIndex}.
+     *
+     * @param store the store holding the state of all particles
+     * @param i     the id of the particle
+     */
+    void addForces(ParticleStore store, int i) {
+        int end = rowStart[i + 1];
+        if (rowStart[i] == end)
+            return;
+
+        double[] x = store.x, y = store.y;
+        double sumX = 0.0, sumY = 0.0;
+        for (int a = rowStart[i]; a < end; a++) {
+            int j = adjacency[a];
+            double dx = store.imageX(x[i] - x[j]); // Positional difference to the nearest image
+            double dy = store.imageY(y[i] - y[j]);
+            double force = STIFFNESS * Math.sqrt(dx * dx + dy * dy); // Spring force: F = k * d
+            sumX -= dx * force;
+            sumY -= dy * force;
+        }
+        store.fx[i] += sumX;
+        store.fy[i] += sumY;
+    }
+
+    /**
+     * Applies the spring force of all connections to the particles of a store in a single parallel pass.
+     * Fixed particles are not affected.
+     *
+     * @param store the store holding the state of all particles
+     */
+    synchronized void applyForces(ParticleStore store) {
+        if (count == 0)
+            return;
+
+        updateIndex(store.size());
+        boolean[] fixed = store.fixed;
+        IntStream.range(0, connectedCount).parallel().forEach(k -> {
+            int i = connected[k];
+            if (!fixed[i])
+                addForces(store, i);
+        });
+    }
+}
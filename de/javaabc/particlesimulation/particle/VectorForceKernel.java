@@ -0,0 +1,125 @@
+package de.javaabc.particlesimulation.particle;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A Lennard-Jones force kernel built on the incubating Java Vector API.
+ * It processes the neighbors of one particle in batches of the preferred vector length:
+ * positional differences to the nearest periodic image and the mixed parameters of the neighbors' species are staged in a per-thread lane array,
+ * the cutoff test becomes a lane mask, and the forces on the neighbors are added back into the per-thread {@link ForceBuffer}.
+ * Staging and write-back are scalar on purpose, since the JDK 17 C2 gather and scatter intrinsics intermittently crash the VM on AVX-512.
+ */
+class VectorForceKernel {
+    /**
+     * the preferred vector shape of the current CPU
+     */
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    /**
+     * the number of lanes of the preferred vector shape
+     */
+    private static final int LANES = SPECIES.length();
+
+    /**
+     * the offsets of the staged values in the lane array
+     */
+    private static final int X = 0, Y = LANES, SQ_CUTOFF = 2 * LANES, EPSILON = 3 * LANES, SIGMA = 4 * LANES, FX = 5 * LANES, FY = 6 * LANES;
+
+    /**
+     * the per-thread lane array holding the staged values of the neighbors in one batch
+     */
+    private static final ThreadLocal<double[]> LANE_SCRATCH = ThreadLocal.withInitial(() -> new double[7 * LANES]);
+
+    /**
+     * Computes the Lennard-Jones forces between a particle and a range of its neighbors.
+     *
+     * @param store     the store holding the state of all particles
+     * @param i         the id of the particle
+     * @param neighbors the ids of all neighbors, grouped by particle
+     * @param from      the first index in neighbors, inclusive
+     * @param to        the last index in neighbors, exclusive
+     * @param buffer    the force buffer of the current thread
+     */
+    void apply(ParticleStore store, int i, int[] neighbors, int from, int to, ForceBuffer buffer) {
+        double[] x = store.x, y = store.y;
+        int[] species = store.species;
+        var table = store.speciesTable;
+        double[] mixedEpsilon = table.mixedEpsilon, mixedSigma = table.mixedSigma, sqCutoff = table.sqCutoff;
+        int row = species[i] * table.count();
+        double[] lanes = LANE_SCRATCH.get();
+
+        double xi = x[i], yi = y[i];
+        double sumX = 0.0, sumY = 0.0;
+
+        int k = from;
+        for (int bound = from + SPECIES.loopBound(to - from); k < bound; k += LANES) {
+            for (int lane = 0; lane < LANES; lane++) {
+                int j = neighbors[k + lane];
+                int pair = row + species[j];
+                lanes[X + lane] = store.imageX(xi - x[j]);
+                lanes[Y + lane] = store.imageY(yi - y[j]);
+                lanes[SQ_CUTOFF + lane] = sqCutoff[pair];
+                lanes[EPSILON + lane] = mixedEpsilon[pair];
+                lanes[SIGMA + lane] = mixedSigma[pair];
+            }
+
+            var dx = DoubleVector.fromArray(SPECIES, lanes, X);
+            var dy = DoubleVector.fromArray(SPECIES, lanes, Y);
+            var sqDis = dx.mul(dx).add(dy.mul(dy));
+
+            VectorMask<Double> inRange = sqDis.compare(VectorOperators.LE, DoubleVector.fromArray(SPECIES, lanes, SQ_CUTOFF))
+                    .and(sqDis.compare(VectorOperators.GT, 0.0));
+            if (!inRange.anyTrue())
+                continue;
+
+            // Parameters for Lennard-Jones-Potential
+            var combinedEpsilon = DoubleVector.fromArray(SPECIES, lanes, EPSILON);
+            var combinedSigma = DoubleVector.fromArray(SPECIES, lanes, SIGMA);
+            var sqSigmaPerDis = combinedSigma.mul(combinedSigma).div(sqDis);
+            var sigmaPerDisPow6 = sqSigmaPerDis.mul(sqSigmaPerDis).mul(sqSigmaPerDis);
+            var sigmaPerDisPow12 = sigmaPerDisPow6.mul(sigmaPerDisPow6);
+
+            var f = combinedEpsilon.mul(24.0).div(sqDis).mul(sigmaPerDisPow6.sub(sigmaPerDisPow12.mul(2.0)))
+                    .blend(0.0, inRange.not());
+            var dfx = dx.mul(f);
+            var dfy = dy.mul(f);
+
+            sumX += dfx.reduceLanes(VectorOperators.ADD);
+            sumY += dfy.reduceLanes(VectorOperators.ADD);
+            dfx.intoArray(lanes, FX);
+            dfy.intoArray(lanes, FY);
+            for (int lane = 0; lane < LANES; lane++) {
+                int j = neighbors[k + lane];
+                buffer.fx[j] += lanes[FX + lane];
+                buffer.fy[j] += lanes[FY + lane];
+            }
+        }
+
+        // Scalar tail
+        for (; k < to; k++) {
+            int j = neighbors[k];
+            double dx = store.imageX(xi - x[j]), dy = store.imageY(yi - y[j]);
+            double sqDis = dx * dx + dy * dy;
+            int pair = row + species[j];
+            if (sqDis > sqCutoff[pair] || sqDis == 0.0)
+                continue;
+
+            double combinedEpsilon = mixedEpsilon[pair];
+            double combinedSigma = mixedSigma[pair];
+            double sqSigmaPerDis = combinedSigma * combinedSigma / sqDis;
+            double sigmaPerDisPow6 = sqSigmaPerDis * sqSigmaPerDis * sqSigmaPerDis;
+            double f = 24.0 * combinedEpsilon / sqDis * (sigmaPerDisPow6 - 2.0 * sigmaPerDisPow6 * sigmaPerDisPow6);
+
+            sumX += dx * f;
+            sumY += dy * f;
+            buffer.fx[j] += dx * f;
+            buffer.fy[j] += dy * f;
+        }
+
+        buffer.fx[i] -= sumX;
+        buffer.fy[i] -= sumY;
+    }
+}
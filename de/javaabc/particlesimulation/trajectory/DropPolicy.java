@@ -0,0 +1,16 @@
+package de.javaabc.particlesimulation.trajectory;
+
+/**
+ * What a {@link TrajectoryWriter} does with a new frame if all buffered frames are still waiting to be written.
+ */
+public enum DropPolicy {
+    /**
+     * The new frame is dropped, so the written trajectory ends with a gap until the disk catches up.
+     */
+    DROP_NEWEST,
+
+    /**
+     * The oldest frame that was not written yet is dropped and reused for the new frame, so the written trajectory always contains the latest state.
+     */
+    DROP_OLDEST
+}
@@ -0,0 +1,93 @@
+package de.javaabc.particlesimulation.trajectory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The constants and variable length integer coding of the trajectory file format.
+ * <p>
+ * A file starts with a header: magic number, version, position quantum, velocity quantum, velocity flag and frames per chunk.
+ * It is followed by chunks of frames. Each frame holds its tick, the number of particles, a keyframe flag and one value
+ * per particle for x, y and optionally vx and vy. All values are quantized to integer multiples of the quantum.
+ * A keyframe stores the quantized values, any other frame stores the difference to the previous frame of the same chunk.
+ * The first frame of each chunk and each frame after particles were added or removed is a keyframe, so every chunk can be decoded on its own.
+ * All integers in frames are zig-zag encoded with 7 bits per byte.
+ * The file ends with the chunk index (offset, first tick and number of frames of each chunk), its offset, the number of chunks and another magic number.
+ * The fixed size values are little endian.
+ */
+final class TrajectoryFormat {
+    /**
+     * the first four bytes of each trajectory file, "PSTR"
+     */
+    static final int MAGIC = 0x50535452;
+
+    /**
+     * the last four bytes of each completely written trajectory file, "PSTI"
+     */
+    static final int INDEX_MAGIC = 0x50535449;
+
+    /**
+     * the version of the file format
+     */
+    static final int VERSION = 1;
+
+    /**
+     * the size of the header in bytes
+     */
+    static final int HEADER_BYTES = 2 * Integer.BYTES + 2 * Double.BYTES + 1 + Integer.BYTES;
+
+    /**
+     * the size of one chunk index entry in bytes
+     */
+    static final int INDEX_ENTRY_BYTES = 2 * Long.BYTES + Integer.BYTES;
+
+    /**
+     * the size of the trailer after the chunk index in bytes
+     */
+    static final int TRAILER_BYTES = Long.BYTES + 2 * Integer.BYTES;
+
+    /**
+     * the maximum size of one encoded long in bytes
+     */
+    static final int MAX_VARLONG_BYTES = 10;
+
+    private TrajectoryFormat() {
+    }
+
+    /**
+     * Appends a signed long in zig-zag encoding with 7 bits per byte, so small absolute values take few bytes.
+     *
+     * @param out   the array to append to, which must have room for {@value MAX_VARLONG_BYTES} more bytes
+     * @param pos   the index to append at
+     * @param value the value to append
+     * @return the index after the appended bytes
+     */
+    static int putVarLong(byte[] out, int pos, long value) {
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0) {
+            out[pos++] = (byte) (v & 0x7F | 0x80);
+            v >>>= 7;
+        }
+        out[pos++] = (byte) v;
+        return pos;
+    }
+
+    /**
+     * Reads a signed long written by {@link #putVarLong}.
+     *
+     * @param in the buffer to read from
+     * @return the value
+     */
+    static long getVarLong(ByteBuffer in) {
+        long v = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift >= 64)
+                throw new IllegalStateException("Malformed variable length integer");
+            b = in.get();
+            v |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
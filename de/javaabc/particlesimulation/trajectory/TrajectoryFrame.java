@@ -0,0 +1,129 @@
+package de.javaabc.particlesimulation.trajectory;
+
+import de.javaabc.particlesimulation.particle.ParticleStore;
+
+/**
+ * The positions and optionally the speeds of all particles after one tick.
+ * Frames are preallocated by a {@link TrajectoryWriter} and reused, their arrays only grow if the number of particles grows.
+ * Particles are identified by their index in the {@link ParticleStore}, which stays the same as long as no particle is added or removed.
+ */
+public class TrajectoryFrame {
+    /**
+     * the tick this frame was taken after
+     */
+    private long tick;
+
+    /**
+     * the number of particles
+     */
+    private int size;
+
+    /**
+     * the number of structural modifications of the store when this frame was taken, see {@link ParticleStore#modCount()}
+     */
+    private int structure;
+
+    /**
+     * the positions of all particles in px
+     */
+    private double[] x, y;
+
+    /**
+     * the speeds of all particles in px / s, or null if not recorded
+     */
+    private double[] vx, vy;
+
+    /**
+     * Creates a new empty frame.
+     *
+     * @param capacity   the number of particles that fit in without growing
+     * @param velocities the option to hold the speeds as well
+     */
+    TrajectoryFrame(int capacity, boolean velocities) {
+        x = new double[capacity];
+        y = new double[capacity];
+        if (velocities) {
+            vx = new double[capacity];
+            vy = new double[capacity];
+        }
+    }
+
+    /**
+     * Makes sure that a given number of particles fits in and sets the size of this frame.
+     *
+     * @param tick the tick this frame is taken after
+     * @param size the number of particles
+     */
+    void reset(long tick, int size) {
+        this.tick = tick;
+        this.size = size;
+        if (x.length < size) {
+            int capacity = Math.max(size, 2 * x.length);
+            x = new double[capacity];
+            y = new double[capacity];
+            if (vx != null) {
+                vx = new double[capacity];
+                vy = new double[capacity];
+            }
+        }
+    }
+
+    /**
+     * Copies the positions and speeds of all particles into this frame. Must be called while no tick is running.
+     *
+     * @param store the store holding the state of all particles
+     * @param tick  the number of ticks computed so far
+     */
+    void capture(ParticleStore store, long tick) {
+        reset(tick, store.size());
+        structure = store.modCount();
+        store.copyMotion(x, y, vx, vy);
+    }
+
+    int getStructure() {
+        return structure;
+    }
+
+    /**
+     * @return the tick this frame was taken after
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * @return the number of particles in this frame
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if this frame holds the speeds of all particles
+     */
+    public boolean hasVelocities() {
+        return vx != null;
+    }
+
+    public double[] getX() {
+        return x;
+    }
+
+    public double[] getY() {
+        return y;
+    }
+
+    /**
+     * @return the horizontal speeds of all particles in px / s, or null if not recorded
+     */
+    public double[] getVx() {
+        return vx;
+    }
+
+    /**
+     * @return the vertical speeds of all particles in px / s, or null if not recorded
+     */
+    public double[] getVy() {
+        return vy;
+    }
+}
@@ -0,0 +1,274 @@
+package de.javaabc.particlesimulation.trajectory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static de.javaabc.particlesimulation.trajectory.TrajectoryFormat.*;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Reads the frames of a trajectory file written by a {@link TrajectoryWriter}.
+ * Any frame can be read directly: only its chunk is loaded and decoded up to the frame.
+ * Reading the frames of a chunk in order decodes each frame only once.
+ */
+public class TrajectoryReader implements Closeable {
+    /**
+     * the trajectory file
+     */
+    private final FileChannel channel;
+
+    /**
+     * the resolution of the positions in px and of the speeds in px / s
+     */
+    private final double positionQuantum, velocityQuantum;
+
+    /**
+     * the option that the speeds were recorded as well
+     */
+    private final boolean velocities;
+
+    /**
+     * the offset, first tick and number of frames of each chunk, with one more offset marking the end of the last chunk
+     */
+    private final long[] chunkOffsets, chunkTicks;
+    private final int[] chunkSizes;
+
+    /**
+     * the index of the first frame of each chunk, with one more entry holding the total number of frames
+     */
+    private final long[] chunkFirstFrames;
+
+    /**
+     * the currently loaded chunk, or -1 if none
+     */
+    private int chunk = -1;
+
+    /**
+     * the bytes of the loaded chunk, positioned at the next frame
+     */
+    private ByteBuffer chunkBytes;
+
+    /**
+     * the index of the next frame in the loaded chunk
+     */
+    private int nextFrame;
+
+    /**
+     * the quantized values of the previously decoded frame
+     */
+    private long[] previousX = new long[0], previousY = new long[0], previousVx = new long[0], previousVy = new long[0];
+
+    /**
+     * the frame that is returned by {@link #read}
+     */
+    private final TrajectoryFrame frame;
+
+    /**
+     * Opens a trajectory file and reads its chunk index.
+     *
+     * @param path the file to read
+     * @throws IOException if the file cannot be read, is not a trajectory, has an unknown version or was not closed properly
+     */
+    public TrajectoryReader(Path path) throws IOException {
+        channel = FileChannel.open(path, READ);
+        try {
+            long size = channel.size();
+            if (size < HEADER_BYTES + TRAILER_BYTES)
+                throw new IOException("Not a trajectory: " + path);
+
+            var header = readAt(0, HEADER_BYTES);
+            if (header.getInt() != MAGIC)
+                throw new IOException("Not a trajectory: " + path);
+            int version = header.getInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported trajectory version " + version + " in " + path);
+            positionQuantum = header.getDouble();
+            velocityQuantum = header.getDouble();
+            velocities = header.get() != 0;
+            header.getInt(); // frames per chunk, only needed by the writer
+
+            var trailer = readAt(size - TRAILER_BYTES, TRAILER_BYTES);
+            long indexOffset = trailer.getLong();
+            int chunkCount = trailer.getInt();
+            if (trailer.getInt() != INDEX_MAGIC || chunkCount < 0
+                    || indexOffset < HEADER_BYTES || indexOffset + (long) chunkCount * INDEX_ENTRY_BYTES + TRAILER_BYTES != size)
+                throw new IOException("Trajectory " + path + " has no valid index, it was probably not closed");
+
+            var index = readAt(indexOffset, chunkCount * INDEX_ENTRY_BYTES);
+            chunkOffsets = new long[chunkCount + 1];
+            chunkTicks = new long[chunkCount];
+            chunkSizes = new int[chunkCount];
+            chunkFirstFrames = new long[chunkCount + 1];
+            for (int c = 0; c < chunkCount; c++) {
+                chunkOffsets[c] = index.getLong();
+                chunkTicks[c] = index.getLong();
+                chunkSizes[c] = index.getInt();
+                chunkFirstFrames[c + 1] = chunkFirstFrames[c] + chunkSizes[c];
+            }
+            chunkOffsets[chunkCount] = indexOffset;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        frame = new TrajectoryFrame(0, velocities);
+    }
+
+    /**
+     * Reads a region of the file.
+     */
+    private ByteBuffer readAt(long position, int bytes) throws IOException {
+        var buffer = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining())
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Unexpected end of trajectory");
+        return buffer.flip();
+    }
+
+    /**
+     * Reads a frame.
+     * The returned frame is reused and overwritten by the next call.
+     *
+     * @param index the index of the frame, from 0 to {@link #frameCount()} - 1
+     * @return the frame
+     * @throws IOException if the file cannot be read or is corrupt
+     */
+    public TrajectoryFrame read(long index) throws IOException {
+        if (index < 0 || index >= frameCount())
+            throw new IndexOutOfBoundsException("Frame " + index + " of " + frameCount());
+
+        int c = chunkOf(index);
+        int target = (int) (index - chunkFirstFrames[c]);
+        if (c != chunk || target < nextFrame) {
+            long bytes = chunkOffsets[c + 1] - chunkOffsets[c];
+            if (bytes > Integer.MAX_VALUE)
+                throw new IOException("Chunk " + c + " is too large");
+            chunkBytes = readAt(chunkOffsets[c], (int) bytes);
+            chunk = c;
+            nextFrame = 0;
+        }
+
+        try {
+            while (nextFrame <= target) {
+                decode();
+                nextFrame++;
+            }
+        } catch (BufferUnderflowException | IllegalStateException e) {
+            chunk = -1;
+            throw new IOException("Corrupt frame in chunk " + c, e);
+        }
+        return frame;
+    }
+
+    /**
+     * @return the index of the chunk containing a frame
+     */
+    private int chunkOf(long index) {
+        int low = 0, high = chunkSizes.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (chunkFirstFrames[mid] <= index)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        return low;
+    }
+
+    /**
+     * Decodes the next frame of the loaded chunk into {@link #frame}.
+     */
+    private void decode() {
+        long tick = getVarLong(chunkBytes);
+        long size = getVarLong(chunkBytes);
+        boolean keyframe = chunkBytes.get() != 0;
+        if (size < 0 || size > chunkBytes.remaining())
+            throw new IllegalStateException("Invalid frame size " + size);
+
+        int n = (int) size;
+        if (!keyframe && n > previousX.length)
+            throw new IllegalStateException("Delta frame without keyframe");
+        if (previousX.length < n) {
+            previousX = new long[n];
+            previousY = new long[n];
+            if (velocities) {
+                previousVx = new long[n];
+                previousVy = new long[n];
+            }
+        }
+
+        frame.reset(tick, n);
+        decode(frame.getX(), n, positionQuantum, previousX, keyframe);
+        decode(frame.getY(), n, positionQuantum, previousY, keyframe);
+        if (velocities) {
+            decode(frame.getVx(), n, velocityQuantum, previousVx, keyframe);
+            decode(frame.getVy(), n, velocityQuantum, previousVy, keyframe);
+        }
+    }
+
+    /**
+     * Decodes the values of one array.
+     *
+     * @param values   the array to decode into
+     * @param n        the number of values
+     * @param quantum  the resolution of the values
+     * @param previous the quantized values of the previous frame, which are replaced by the quantized values of this frame
+     * @param keyframe the option that the quantized values are stored instead of their differences
+     */
+    private void decode(double[] values, int n, double quantum, long[] previous, boolean keyframe) {
+        for (int i = 0; i < n; i++) {
+            long q = getVarLong(chunkBytes);
+            if (!keyframe)
+                q += previous[i];
+            previous[i] = q;
+            values[i] = q * quantum;
+        }
+    }
+
+    /**
+     * @return the total number of frames in the file
+     */
+    public long frameCount() {
+        return chunkFirstFrames[chunkSizes.length];
+    }
+
+    /**
+     * @return the number of chunks in the file
+     */
+    public int chunkCount() {
+        return chunkSizes.length;
+    }
+
+    /**
+     * @param chunk the index of a chunk
+     * @return the tick of the first frame of the chunk, to find a frame by its tick without decoding
+     */
+    public long chunkTick(int chunk) {
+        return chunkTicks[chunk];
+    }
+
+    /**
+     * @param chunk the index of a chunk
+     * @return the index of the first frame of the chunk
+     */
+    public long chunkFirstFrame(int chunk) {
+        return chunkFirstFrames[chunk];
+    }
+
+    /**
+     * @return true if the speeds were recorded as well
+     */
+    public boolean hasVelocities() {
+        return velocities;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
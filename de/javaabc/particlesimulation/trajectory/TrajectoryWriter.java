@@ -0,0 +1,409 @@
+package de.javaabc.particlesimulation.trajectory;
+
+import de.javaabc.particlesimulation.SimulationEngine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static de.javaabc.particlesimulation.trajectory.TrajectoryFormat.*;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Streams the trajectories of all particles into a compressed, seekable file, see {@link TrajectoryFormat} for the layout.
+ * <p>
+ * Every few ticks, the thread that runs the ticks copies the positions and optionally the speeds of all particles into one of a fixed number of
+ * preallocated {@link TrajectoryFrame}s. A background thread takes the filled frames in order, compresses them and writes them to disk.
+ * The tick thread never waits for the disk: if all frames are still waiting to be written, a frame is dropped according to the {@link DropPolicy}
+ * and counted.
+ */
+public class TrajectoryWriter implements AutoCloseable {
+    /**
+     * the system property to select the trajectory file with
+     */
+    public static final String PATH_PROPERTY = "particlesimulation.trajectory";
+
+    /**
+     * the trajectory file used if the system property is not set
+     */
+    public static final String DEFAULT_PATH = "simulation.trajectory";
+
+    /**
+     * the default number of preallocated frames
+     */
+    public static final int DEFAULT_CAPACITY = 32;
+
+    /**
+     * the default resolution of the positions in px
+     */
+    public static final double DEFAULT_POSITION_QUANTUM = 1.0 / 256.0;
+
+    /**
+     * the default resolution of the speeds in px / s
+     */
+    public static final double DEFAULT_VELOCITY_QUANTUM = 1.0 / 256.0;
+
+    /**
+     * the default number of frames per chunk
+     */
+    public static final int DEFAULT_CHUNK_FRAMES = 64;
+
+    /**
+     * the time in ms the writing thread waits for a new frame before checking whether it should stop
+     */
+    private static final long POLL_MILLIS = 100;
+
+    /**
+     * the number of ticks between two frames
+     */
+    private final long interval;
+
+    /**
+     * the option to record the speeds as well
+     */
+    private final boolean velocities;
+
+    /**
+     * the behaviour if all frames are still waiting to be written
+     */
+    private final DropPolicy policy;
+
+    /**
+     * the resolution of the positions in px and of the speeds in px / s
+     */
+    private final double positionQuantum, velocityQuantum;
+
+    /**
+     * the number of frames per chunk
+     */
+    private final int chunkFrames;
+
+    /**
+     * the frames that can be filled by the tick thread
+     */
+    private final BlockingQueue<TrajectoryFrame> free;
+
+    /**
+     * the filled frames in tick order, waiting to be written
+     */
+    private final BlockingQueue<TrajectoryFrame> filled;
+
+    /**
+     * the file all frames are written to
+     */
+    private final FileChannel channel;
+
+    /**
+     * the thread that writes all frames
+     */
+    private final Thread thread;
+
+    /**
+     * the option to keep writing
+     */
+    private volatile boolean running = true;
+
+    /**
+     * the number of frames written and dropped so far
+     */
+    private volatile long written, dropped;
+
+    /**
+     * the first error of the writing thread, after which no more frames are written
+     */
+    private volatile IOException error;
+
+    // The following fields are only used by the writing thread
+
+    /**
+     * the quantized values of the previously written frame, used for delta compression
+     */
+    private long[] previousX = new long[0], previousY = new long[0], previousVx = new long[0], previousVy = new long[0];
+
+    /**
+     * the number of particles and structural modifications of the previously written frame
+     */
+    private int previousSize = -1, previousStructure;
+
+    /**
+     * the buffer to encode one frame into
+     */
+    private byte[] out = new byte[0];
+
+    /**
+     * the offset, first tick and number of frames of each chunk
+     */
+    private long[] chunkOffsets = new long[16], chunkTicks = new long[16];
+    private int[] chunkSizes = new int[16];
+
+    /**
+     * the number of chunks started so far
+     */
+    private int chunkCount;
+
+    /**
+     * the offset of the next frame in the file
+     */
+    private long offset;
+
+    /**
+     * Creates a new trajectory writer with the default resolution and chunk size and starts its writing thread.
+     *
+     * @param path       the file to write
+     * @param interval   the number of ticks between two frames
+     * @param capacity   the number of preallocated frames, i.e. how many frames may wait to be written
+     * @param velocities the option to record the speeds as well
+     * @param policy     the behaviour if all frames are still waiting to be written
+     * @throws IOException if the file cannot be created
+     */
+    public TrajectoryWriter(Path path, long interval, int capacity, boolean velocities, DropPolicy policy) throws IOException {
+        this(path, interval, capacity, velocities, policy, DEFAULT_POSITION_QUANTUM, DEFAULT_VELOCITY_QUANTUM, DEFAULT_CHUNK_FRAMES);
+    }
+
+    /**
+     * Creates a new trajectory writer and starts its writing thread.
+     *
+     * @param path            the file to write
+     * @param interval        the number of ticks between two frames
+     * @param capacity        the number of preallocated frames, i.e. how many frames may wait to be written
+     * @param velocities      the option to record the speeds as well
+     * @param policy          the behaviour if all frames are still waiting to be written
+     * @param positionQuantum the resolution of the positions in px
+     * @param velocityQuantum the resolution of the speeds in px / s
+     * @param chunkFrames     the number of frames per chunk, i.e. the maximum number of frames to decode when seeking
+     * @throws IOException if the file cannot be created
+     */
+    public TrajectoryWriter(Path path, long interval, int capacity, boolean velocities, DropPolicy policy,
+                            double positionQuantum, double velocityQuantum, int chunkFrames) throws IOException {
+        if (interval <= 0 || capacity <= 0 || chunkFrames <= 0 || !(positionQuantum > 0.0) || !(velocityQuantum > 0.0))
+            throw new IllegalArgumentException("Interval, capacity, chunk size and resolutions must be positive");
+
+        this.interval = interval;
+        this.velocities = velocities;
+        this.policy = policy;
+        this.positionQuantum = positionQuantum;
+        this.velocityQuantum = velocityQuantum;
+        this.chunkFrames = chunkFrames;
+
+        free = new ArrayBlockingQueue<>(capacity);
+        filled = new ArrayBlockingQueue<>(capacity);
+        for (int i = 0; i < capacity; i++)
+            free.add(new TrajectoryFrame(0, velocities));
+
+        channel = FileChannel.open(path, CREATE, TRUNCATE_EXISTING, WRITE);
+        var header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putDouble(positionQuantum).putDouble(velocityQuantum)
+                .put((byte) (velocities ? 1 : 0)).putInt(chunkFrames);
+        writeFully(header.flip());
+        offset = HEADER_BYTES;
+
+        thread = new Thread(this::run, "trajectory-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return the trajectory file selected by the system property {@value PATH_PROPERTY}
+     */
+    public static Path pathFromSystemProperty() {
+        return Path.of(System.getProperty(PATH_PROPERTY, DEFAULT_PATH));
+    }
+
+    /**
+     * Records a frame if the tick count is a multiple of the interval. Must be called by the thread that runs the ticks, between two ticks.
+     *
+     * @param engine the engine to record the particles of
+     */
+    public void afterTick(SimulationEngine engine) {
+        if (engine.getTickCount() % interval == 0)
+            record(engine);
+    }
+
+    /**
+     * Copies the positions and speeds of all particles into a free frame and hands it to the writing thread.
+     * Never blocks: if no frame is free, a frame is dropped according to the {@link DropPolicy}.
+     * Must be called by the thread that runs the ticks, between two ticks.
+     *
+     * @param engine the engine to record the particles of
+     * @return true if the new frame is queued to be written
+     */
+    public boolean record(SimulationEngine engine) {
+        if (!running || error != null)
+            return false;
+
+        var frame = free.poll();
+        if (frame == null) {
+            dropped++;
+            if (policy == DropPolicy.DROP_NEWEST || (frame = filled.poll()) == null)
+                return false;
+        }
+
+        var particles = engine.getParticles();
+        synchronized (particles) {
+            frame.capture(particles.getStore(), engine.getTickCount());
+        }
+        filled.add(frame);
+        return true;
+    }
+
+    /**
+     * Writes all filled frames until this writer is closed and all frames are written, then appends the chunk index.
+     */
+    private void run() {
+        try {
+            while (running || !filled.isEmpty()) {
+                TrajectoryFrame frame;
+                try {
+                    frame = filled.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                if (frame == null)
+                    continue;
+
+                try {
+                    write(frame);
+                } finally {
+                    free.add(frame);
+                }
+                written++;
+            }
+            writeIndex();
+        } catch (IOException e) {
+            error = e;
+            System.err.println("Could not write trajectory: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compresses a frame and appends it to the file, starting a new chunk if the current one is full.
+     *
+     * @param frame the frame to write
+     * @throws IOException if the file cannot be written
+     */
+    private void write(TrajectoryFrame frame) throws IOException {
+        int n = frame.size();
+        boolean newChunk = chunkCount == 0 || chunkSizes[chunkCount - 1] == chunkFrames;
+        if (newChunk) {
+            if (chunkCount == chunkOffsets.length) {
+                chunkOffsets = Arrays.copyOf(chunkOffsets, 2 * chunkCount);
+                chunkTicks = Arrays.copyOf(chunkTicks, 2 * chunkCount);
+                chunkSizes = Arrays.copyOf(chunkSizes, 2 * chunkCount);
+            }
+            chunkOffsets[chunkCount] = offset;
+            chunkTicks[chunkCount] = frame.getTick();
+            chunkCount++;
+        }
+        chunkSizes[chunkCount - 1]++;
+
+        boolean keyframe = newChunk || n != previousSize || frame.getStructure() != previousStructure;
+        if (previousX.length < n) {
+            previousX = new long[n];
+            previousY = new long[n];
+            if (velocities) {
+                previousVx = new long[n];
+                previousVy = new long[n];
+            }
+        }
+
+        int arrays = velocities ? 4 : 2;
+        int maxBytes = 2 * MAX_VARLONG_BYTES + 1 + arrays * n * MAX_VARLONG_BYTES;
+        if (out.length < maxBytes)
+            out = new byte[Math.max(maxBytes, 2 * out.length)];
+
+        int pos = putVarLong(out, 0, frame.getTick());
+        pos = putVarLong(out, pos, n);
+        out[pos++] = (byte) (keyframe ? 1 : 0);
+        pos = encode(frame.getX(), n, positionQuantum, previousX, keyframe, pos);
+        pos = encode(frame.getY(), n, positionQuantum, previousY, keyframe, pos);
+        if (velocities) {
+            pos = encode(frame.getVx(), n, velocityQuantum, previousVx, keyframe, pos);
+            pos = encode(frame.getVy(), n, velocityQuantum, previousVy, keyframe, pos);
+        }
+
+        writeFully(ByteBuffer.wrap(out, 0, pos));
+        offset += pos;
+        previousSize = n;
+        previousStructure = frame.getStructure();
+    }
+
+    /**
+     * Quantizes the values of one array and appends them or their differences to the previous frame to the output buffer.
+     *
+     * @param values   the values to encode
+     * @param n        the number of values
+     * @param quantum  the resolution of the values
+     * @param previous the quantized values of the previous frame, which are replaced by the quantized values of this frame
+     * @param keyframe the option to store the quantized values instead of their differences
+     * @param pos      the index in the output buffer to append at
+     * @return the index after the appended bytes
+     */
+    private int encode(double[] values, int n, double quantum, long[] previous, boolean keyframe, int pos) {
+        double scale = 1.0 / quantum;
+        for (int i = 0; i < n; i++) {
+            long q = Math.round(values[i] * scale);
+            pos = putVarLong(out, pos, keyframe ? q : q - previous[i]);
+            previous[i] = q;
+        }
+        return pos;
+    }
+
+    /**
+     * Appends the chunk index and the trailer to the file.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    private void writeIndex() throws IOException {
+        var index = ByteBuffer.allocate(chunkCount * INDEX_ENTRY_BYTES + TRAILER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int c = 0; c < chunkCount; c++)
+            index.putLong(chunkOffsets[c]).putLong(chunkTicks[c]).putInt(chunkSizes[c]);
+        index.putLong(offset).putInt(chunkCount).putInt(INDEX_MAGIC);
+        writeFully(index.flip());
+    }
+
+    /**
+     * Writes all remaining bytes of a buffer to the file.
+     */
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    /**
+     * @return the number of frames written so far
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * @return the number of frames dropped so far, because the disk could not keep up
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Writes all queued frames and the chunk index, then closes the file.
+     *
+     * @throws IOException if the file could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (error != null)
+            throw error;
+    }
+}
@@ -1,18 +1,30 @@
 package de.javaabc.particlesimulation.util.math;
 
-import java.awt.geom.Point2D;
-
 /**
  * A 2D double vector.
  */
-public class Vec extends Point2D.Double {
+public class Vec {
     /**
      * the zero vector
      */
     public static final Vec ZERO = new Vec(0.0, 0.0);
 
+    /**
+     * the horizontal and vertical entry
+     */
+    public final double x, y;
+
     public Vec(double x, double y) {
-        super(x, y);
+        this.x = x;
+        this.y = y;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
     }
 
     public Vec add(Vec addend) {
@@ -43,6 +55,16 @@ public class Vec extends Point2D.Double {
         return new IntVec((int) x, (int) y);
     }
 
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Vec v && Double.compare(x, v.x) == 0 && Double.compare(y, v.y) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Double.hashCode(x) + Double.hashCode(y);
+    }
+
     @Override
     public String toString() {
         return "(" + x + "|" + y + ")";
@@ -0,0 +1,158 @@
+package de.javaabc.particlesimulation;
+
+import de.javaabc.particlesimulation.particle.PairTraversal;
+import de.javaabc.particlesimulation.particle.Particle;
+import de.javaabc.particlesimulation.particle.ParticleData;
+import de.javaabc.particlesimulation.util.math.Vec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckpointTest {
+    private static final double WIDTH = 1000.0, HEIGHT = 1000.0, CUTOFF = 100.0, SPACING = 90.0, JITTER = 10.0;
+
+    private static final double DT = 0.05;
+
+    private static final int TICKS = 50;
+
+    /**
+     * A single worker, so all parallel passes sum up the forces in the same order in both runs.
+     * Only the summation order of parallel reductions may differ between two runs otherwise.
+     */
+    private final ForkJoinPool pool = new ForkJoinPool(1);
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void shutdownPool() {
+        pool.shutdown();
+    }
+
+    /**
+     * Creates an engine with all state that a checkpoint has to keep: two species with an overridden interaction, springs,
+     * a fixed particle, the adaptive step and the long-range gravitation.
+     */
+    private static SimulationEngine newEngine() {
+        var engine = new SimulationEngine(WIDTH, HEIGHT, SimulationEngine.DEFAULT_GRAVITY, CUTOFF);
+        engine.setPairTraversal(PairTraversal.HALF_SHELL);
+        engine.setAdaptiveStep(0.5);
+        engine.setMaxStepScale(10.0);
+        engine.getBarnesHut().setGravitationalConstant(1E-3);
+        engine.getBarnesHut().setTheta(0.7);
+        engine.getBarnesHut().setSoftening(2.0);
+
+        var random = new Random(7);
+        List<Particle> particles = new ArrayList<>();
+        for (double y = SPACING; y < HEIGHT / 2.0; y += SPACING)
+            for (double x = SPACING; x < WIDTH - SPACING; x += SPACING) {
+                var pos = new Vec(x + JITTER * (random.nextDouble() - 0.5), y + JITTER * (random.nextDouble() - 0.5));
+                double sigma = random.nextBoolean() ? 80.0 : 60.0;
+                particles.add(engine.addParticle(pos, SimulationEngine.DEFAULT_PARTICLE_MASS, 1E-4, sigma, false));
+            }
+        engine.addParticle(new Vec(WIDTH / 2.0, HEIGHT - SPACING), SimulationEngine.DEFAULT_PARTICLE_MASS, 1E-4, 80.0, true);
+        for (int i = 0; i + 1 < particles.size(); i += 3)
+            particles.get(i).connectWith(particles.get(i + 1));
+
+        engine.getParticles().getStore().getSpeciesTable().setInteraction(0, 1, 3E-4, 70.0, CUTOFF * 0.9);
+        return engine;
+    }
+
+    private void run(SimulationEngine engine, int ticks) throws Exception {
+        pool.submit(() -> {
+            for (int tick = 0; tick < ticks; tick++)
+                engine.tick(DT);
+        }).get();
+    }
+
+    private static void assertSameState(SimulationEngine expected, SimulationEngine actual) {
+        assertEquals(expected.getTickCount(), actual.getTickCount());
+        assertEquals(expected.getSimulatedTime(), actual.getSimulatedTime());
+        assertEquals(expected.getStepScale(), actual.getStepScale());
+
+        ParticleData a = expected.getParticles().copyData(), b = actual.getParticles().copyData();
+        assertEquals(a.size(), b.size());
+        assertArrayEquals(a.getX(), b.getX());
+        assertArrayEquals(a.getY(), b.getY());
+        assertArrayEquals(a.getVx(), b.getVx());
+        assertArrayEquals(a.getVy(), b.getVy());
+        assertArrayEquals(a.getOldFx(), b.getOldFx());
+        assertArrayEquals(a.getOldFy(), b.getOldFy());
+        assertTrue(Arrays.equals(a.getFixed(), b.getFixed()));
+        assertArrayEquals(a.getConnections(), b.getConnections());
+    }
+
+    @Test
+    void restoredRunContinuesBitIdentically() throws Exception {
+        var path = dir.resolve("simulation.checkpoint");
+        try (var original = newEngine(); var restored = new SimulationEngine(WIDTH, HEIGHT, Vec.ZERO, CUTOFF)) {
+            run(original, TICKS);
+            original.checkpoint().write(path);
+
+            restored.setPairTraversal(PairTraversal.HALF_SHELL);
+            restored.restore(Checkpoint.read(path));
+            assertSameState(original, restored);
+
+            run(original, TICKS);
+            run(restored, TICKS);
+            assertSameState(original, restored);
+            assertNotEquals(1.0, restored.getStepScale());
+        }
+    }
+
+    @Test
+    void restoresAllSettings() throws Exception {
+        var path = dir.resolve("simulation.checkpoint");
+        try (var original = newEngine(); var restored = new SimulationEngine(WIDTH, HEIGHT, Vec.ZERO, CUTOFF)) {
+            original.checkpoint().write(path);
+            restored.restore(Checkpoint.read(path));
+
+            assertEquals(original.getGravity(), restored.getGravity());
+            assertEquals(0.5, restored.getMaxDisplacement());
+            assertEquals(10.0, restored.getMaxStepScale());
+            assertEquals(1E-3, restored.getBarnesHut().getGravitationalConstant());
+            assertEquals(0.7, restored.getBarnesHut().getTheta());
+            assertEquals(2.0, restored.getBarnesHut().getSoftening());
+
+            var expected = original.getParticles().getStore().getSpeciesTable().copy();
+            var actual = restored.getParticles().getStore().getSpeciesTable().copy();
+            assertEquals(2, actual.count());
+            assertArrayEquals(expected.epsilon(), actual.epsilon());
+            assertArrayEquals(expected.sigma(), actual.sigma());
+            assertArrayEquals(expected.mixedEpsilon(), actual.mixedEpsilon());
+            assertArrayEquals(expected.mixedSigma(), actual.mixedSigma());
+            assertArrayEquals(expected.sqCutoff(), actual.sqCutoff());
+        }
+    }
+
+    @Test
+    void togglesRestoredZeroGravity() throws Exception {
+        var path = dir.resolve("simulation.checkpoint");
+        try (var original = new SimulationEngine(WIDTH, HEIGHT, Vec.ZERO, CUTOFF); var restored = newEngine()) {
+            original.checkpoint().write(path);
+            restored.restore(Checkpoint.read(path));
+            restored.toggleGravity();
+            assertEquals(SimulationEngine.DEFAULT_GRAVITY, restored.getGravity());
+        }
+    }
+
+    @Test
+    void overwritesPreviousCheckpoint() throws Exception {
+        var path = dir.resolve("simulation.checkpoint");
+        try (var engine = newEngine()) {
+            engine.checkpoint().write(path);
+            run(engine, 1);
+            engine.checkpoint().write(path);
+            assertEquals(1, Checkpoint.read(path).getTickCount());
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package de.javaabc.particlesimulation.distributed;
+
+import de.javaabc.particlesimulation.SimulationEngine;
+import de.javaabc.particlesimulation.particle.Particle;
+import de.javaabc.particlesimulation.util.math.Vec;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DistributedEngineTest {
+    private static final double WIDTH = 1600.0, HEIGHT = 800.0, CUTOFF = 200.0, SPACING = 180.0, JITTER = 20.0, SPEED = 2.0;
+
+    /**
+     * the depth of the Lennard-Jones-Potential, deeper than by default, so missing forces across the border stand out
+     */
+    private static final double EPSILON = 1E-5;
+
+    private static final double DT = 0.05;
+
+    private static final int TICKS = 300;
+
+    /**
+     * the maximum distance between a particle of the distributed run and the same particle of the single run, in px
+     */
+    private static final double TOLERANCE = 1E-9;
+
+    /**
+     * Places a jittered lattice whose neighbors are closer than the cutoff distance, so forces act across the slab borders,
+     * and lets the particles start in random directions, so some of them migrate.
+     */
+    private static void placeParticles(SimulationEngine engine, Predicate<Vec> filter) {
+        var random = new Random(42);
+        for (double y = SPACING / 2.0; y < HEIGHT / 2.0; y += SPACING)
+            for (double x = SPACING / 2.0; x < WIDTH - SPACING / 2.0; x += SPACING) {
+                var pos = new Vec(x + JITTER * (random.nextDouble() - 0.5), y + JITTER * (random.nextDouble() - 0.5));
+                var velocity = new Vec(SPEED * (random.nextDouble() - 0.5), SPEED * (random.nextDouble() - 0.5));
+                if (filter.test(pos))
+                    engine.addParticle(pos, SimulationEngine.DEFAULT_PARTICLE_MASS, EPSILON, SimulationEngine.DEFAULT_SIGMA, false)
+                            .setMotion(velocity, Vec.ZERO, Vec.ZERO);
+            }
+    }
+
+    private static SimulationEngine newEngine() {
+        return new SimulationEngine(WIDTH, HEIGHT, SimulationEngine.DEFAULT_GRAVITY, CUTOFF);
+    }
+
+    private static List<Vec> positions(SimulationEngine engine) {
+        List<Vec> positions = new ArrayList<>();
+        for (Particle p : engine.getParticles())
+            positions.add(p.getPos());
+        return positions;
+    }
+
+    /**
+     * Runs one rank of a distributed simulation and returns the positions of its particles after all ticks.
+     */
+    private static List<Vec> runRank(int rank, int rankCount, int basePort) throws IOException {
+        try (var engine = newEngine(); var distributed = new DistributedEngine(engine, rank, rankCount, basePort)) {
+            placeParticles(engine, distributed::owns);
+            for (int tick = 0; tick < TICKS; tick++)
+                distributed.tick(DT);
+            return positions(engine);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @Test
+    void twoRanksMatchSingleRank() throws Exception {
+        List<Vec> expected, actual = new ArrayList<>();
+        List<Vec> start;
+        try (var engine = newEngine()) {
+            placeParticles(engine, pos -> true);
+            start = positions(engine);
+            for (int tick = 0; tick < TICKS; tick++)
+                engine.tick(DT);
+            expected = positions(engine);
+        }
+
+        int port = freePort();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<Vec>> left = executor.submit(() -> runRank(0, 2, port));
+            Future<List<Vec>> right = executor.submit(() -> runRank(1, 2, port));
+            actual.addAll(left.get());
+            actual.addAll(right.get());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(expected.size(), actual.size());
+        int migrated = 0;
+        for (int i = 0; i < expected.size(); i++)
+            if (expected.get(i).x < WIDTH / 2.0 != start.get(i).x < WIDTH / 2.0)
+                migrated++;
+        assertTrue(migrated > 0, "No particle crossed the border between both ranks");
+
+        for (Vec pos : expected) {
+            double nearest = Double.POSITIVE_INFINITY;
+            for (Vec other : actual)
+                nearest = Math.min(nearest, Math.sqrt(pos.subtract(other).sqLength()));
+            assertTrue(nearest < TOLERANCE, "No particle of the distributed run within " + TOLERANCE + " px of " + pos + ", nearest is " + nearest);
+        }
+    }
+}
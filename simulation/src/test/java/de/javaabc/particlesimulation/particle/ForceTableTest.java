@@ -0,0 +1,104 @@
+package de.javaabc.particlesimulation.particle;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ForceTableTest {
+    private static final double EPSILON = 1E-7, SIGMA = 200.0, CUTOFF = 500.0;
+
+    /**
+     * the number of distances checked per table interval
+     */
+    private static final int SAMPLES_PER_INTERVAL = 16;
+
+    private final ParticleStore store = new ParticleStore(new SpeciesTable(CUTOFF));
+
+    private final ForceTable table = new ForceTable(store);
+
+    ForceTableTest() {
+        store.getSpeciesTable().speciesOf(EPSILON, SIGMA);
+    }
+
+    /**
+     * Bounds the second derivative of the force factor 24 epsilon (sigma^6 u^-4 - 2 sigma^12 u^-7) on the squared distance u
+     * over an interval that starts at u, where both terms of the bound are largest.
+     */
+    private static double maxSecondDerivative(double u) {
+        double sigma6 = Math.pow(SIGMA, 6.0);
+        return 24.0 * EPSILON * (20.0 * sigma6 * Math.pow(u, -6.0) + 112.0 * sigma6 * sigma6 * Math.pow(u, -9.0));
+    }
+
+    /**
+     * Checks the linear interpolation against its error bound h^2 / 8 max |f''| on every table interval.
+     */
+    private void assertWithinLinearBound(int resolution) {
+        table.setResolution(resolution);
+        table.setInterpolation(ForceTable.Interpolation.LINEAR);
+        table.update();
+
+        double minDistance = ForceTable.DEFAULT_MIN_DISTANCE_FACTOR * SIGMA;
+        double sqMin = minDistance * minDistance, step = (CUTOFF * CUTOFF - sqMin) / resolution;
+        for (int k = 0; k < resolution; k++) {
+            double start = sqMin + k * step;
+            double bound = step * step / 8.0 * maxSecondDerivative(start);
+            for (int s = 0; s < SAMPLES_PER_INTERVAL; s++) {
+                double sqDis = start + (s + 0.5) / SAMPLES_PER_INTERVAL * step;
+                double expected = ForceTable.analytic(sqDis, EPSILON, SIGMA);
+                double error = Math.abs(table.forceFactor(sqDis, 0) - expected);
+                assertTrue(error <= bound + 1E-12 * Math.abs(expected),
+                        "error " + error + " exceeds bound " + bound + " at distance " + Math.sqrt(sqDis) + " with resolution " + resolution);
+            }
+        }
+    }
+
+    @Test
+    void linearInterpolationStaysWithinErrorBound() {
+        assertWithinLinearBound(ForceTable.DEFAULT_RESOLUTION);
+    }
+
+    @Test
+    void linearInterpolationStaysWithinErrorBoundAtLowResolution() {
+        assertWithinLinearBound(16);
+    }
+
+    @Test
+    void cubicInterpolationIsFiniteAtLowResolution() {
+        // Below a resolution of about 624, the guard sample in front of the table would lie at a negative squared distance
+        for (int resolution : new int[]{1, 2, 16, 100, 623}) {
+            table.setResolution(resolution);
+            table.setInterpolation(ForceTable.Interpolation.CUBIC);
+            var accuracy = table.checkAccuracy(10_000);
+            assertTrue(Double.isFinite(accuracy.maxAbsoluteError()), "resolution " + resolution + ": " + accuracy);
+        }
+    }
+
+    @Test
+    void cubicInterpolationIsMoreAccurateThanLinear() {
+        table.setInterpolation(ForceTable.Interpolation.LINEAR);
+        double linear = table.checkAccuracy(100_000).maxRelativeError();
+        table.setInterpolation(ForceTable.Interpolation.CUBIC);
+        double cubic = table.checkAccuracy(100_000).maxRelativeError();
+        assertTrue(cubic < linear, "cubic " + cubic + ", linear " + linear);
+    }
+
+    @Test
+    void resolutionChangesOnlyOnUpdate() {
+        table.update();
+        double sqDis = 250.0 * 250.0;
+        double before = table.forceFactor(sqDis, 0);
+
+        table.setResolution(8);
+        assertEquals(before, table.forceFactor(sqDis, 0));
+
+        table.update();
+        assertNotEquals(before, table.forceFactor(sqDis, 0));
+    }
+
+    @Test
+    void outOfRangeDistancesHaveNoForce() {
+        table.update();
+        assertEquals(0.0, table.forceFactor(0.0, 0));
+        assertEquals(0.0, table.forceFactor(CUTOFF * CUTOFF * 1.01, 0));
+    }
+}
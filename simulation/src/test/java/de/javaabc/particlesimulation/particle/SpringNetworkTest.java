@@ -0,0 +1,189 @@
+package de.javaabc.particlesimulation.particle;
+
+import de.javaabc.particlesimulation.util.math.Vec;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpringNetworkTest {
+    private static final int PARTICLES = 200, SPRINGS = 600;
+
+    private static final double SIZE = 1000.0, BLOCK_SIZE = 100.0;
+
+    private final ParticleContainer container = new ParticleContainer((int) (SIZE / BLOCK_SIZE), (int) (SIZE / BLOCK_SIZE), BLOCK_SIZE);
+
+    private final ParticleStore store = container.getStore();
+
+    private final Random random = new Random(3);
+
+    private final List<Particle> particles = new ArrayList<>();
+
+    /**
+     * the expected springs, each as the particle that made the connection followed by the connected one
+     */
+    private final List<Particle[]> springs = new ArrayList<>();
+
+    SpringNetworkTest() {
+        for (int i = 0; i < PARTICLES; i++) {
+            var p = new Particle(store, new Vec(SIZE * random.nextDouble(), SIZE * random.nextDouble()), 1.0, 1E-4, 50.0);
+            container.add(p);
+            particles.add(p);
+        }
+    }
+
+    /**
+     * Connects random pairs of particles, some more often than others, so the slot lists have different lengths.
+     */
+    private void connectRandomly() {
+        while (springs.size() < SPRINGS) {
+            int n = particles.size();
+            var a = particles.get(random.nextInt(n / 4 + random.nextInt(n - n / 4)));
+            var b = particles.get(random.nextInt(n));
+            if (a == b || isConnected(a, b))
+                continue;
+
+            a.connectWith(b);
+            springs.add(new Particle[]{a, b});
+        }
+    }
+
+    private boolean isConnected(Particle a, Particle b) {
+        for (Particle[] spring : springs)
+            if (spring[0] == a && spring[1] == b || spring[0] == b && spring[1] == a)
+                return true;
+        return false;
+    }
+
+    /**
+     * Checks the springs of the network against the expected ones: the count, the connections of each particle,
+     * the lookup in both directions and the spring forces summed over the compressed sparse row index.
+     */
+    private void assertConsistent() {
+        assertEquals(springs.size(), store.springCount());
+
+        for (Particle p : particles) {
+            if (p.id < 0)
+                continue;
+
+            Set<Particle> expected = new HashSet<>();
+            for (Particle[] spring : springs)
+                if (spring[0] == p)
+                    expected.add(spring[1]);
+            assertEquals(expected, new HashSet<>(p.getConnections()), "connections of particle " + p.id);
+        }
+
+        for (Particle[] spring : springs) {
+            assertFalse(store.springs.connect(spring[0].id, spring[1].id), "spring " + spring[0].id + " - " + spring[1].id + " not found");
+            assertFalse(store.springs.connect(spring[1].id, spring[0].id), "spring " + spring[1].id + " - " + spring[0].id + " not found");
+        }
+
+        int n = store.size();
+        double[] fx = new double[n], fy = new double[n];
+        for (Particle[] spring : springs) {
+            int i = spring[0].id, j = spring[1].id;
+            double dx = store.x[i] - store.x[j], dy = store.y[i] - store.y[j];
+            double force = SpringNetwork.STIFFNESS * Math.sqrt(dx * dx + dy * dy);
+            fx[i] -= dx * force;
+            fy[i] -= dy * force;
+            fx[j] += dx * force;
+            fy[j] += dy * force;
+        }
+        Arrays.fill(store.fx, 0.0);
+        Arrays.fill(store.fy, 0.0);
+        store.tickSpringForces();
+        for (int i = 0; i < n; i++) {
+            assertEquals(fx[i], store.fx[i], 1E-9, "spring force x of particle " + i);
+            assertEquals(fy[i], store.fy[i], 1E-9, "spring force y of particle " + i);
+        }
+    }
+
+    @Test
+    void connectsEachPairOnce() {
+        var a = particles.get(0);
+        var b = particles.get(1);
+        a.connectWith(b);
+        b.connectWith(a);
+        a.connectWith(a);
+        springs.add(new Particle[]{a, b});
+        assertConsistent();
+        assertEquals(List.of(b), a.getConnections());
+        assertEquals(List.of(), b.getConnections());
+    }
+
+    @Test
+    void disconnectsInBothDirections() {
+        connectRandomly();
+        assertConsistent();
+
+        for (int k = 0; k < SPRINGS / 2; k++) {
+            var spring = springs.remove(random.nextInt(springs.size()));
+            if (random.nextBoolean())
+                spring[0].removeConnectionTo(spring[1]);
+            else
+                spring[1].removeConnectionTo(spring[0]);
+        }
+        assertConsistent();
+
+        connectRandomly();
+        assertConsistent();
+    }
+
+    /**
+     * Forgets the expected springs of all given particles, which are about to be removed.
+     */
+    private void forgetSprings(List<Particle> removed) {
+        springs.removeIf(spring -> removed.contains(spring[0]) || removed.contains(spring[1]));
+        particles.removeAll(removed);
+    }
+
+    @Test
+    void singleRemovalsKeepSpringsConsistent() {
+        connectRandomly();
+        for (int k = 0; k < PARTICLES / 2; k++) {
+            // Also remove the particle in the last slot, whose slot is not taken over by another particle
+            var p = k % 10 == 0 ? store.handles[store.size() - 1] : particles.get(random.nextInt(particles.size()));
+            forgetSprings(List.of(p));
+            container.remove(p);
+            assertEquals(-1, p.id);
+            assertConsistent();
+        }
+
+        connectRandomly();
+        assertConsistent();
+    }
+
+    @Test
+    void bulkRemovalsKeepSpringsConsistent() {
+        connectRandomly();
+        List<Particle> dead = new ArrayList<>();
+        for (int batch = 0; batch < 4; batch++) {
+            // A quarter of all particles, far above the batch size that is still removed one by one
+            List<Particle> removed = new ArrayList<>();
+            while (removed.size() < particles.size() / 4) {
+                var p = particles.get(random.nextInt(particles.size()));
+                if (!removed.contains(p))
+                    removed.add(p);
+            }
+            forgetSprings(removed);
+            // Particles removed by an earlier batch or twice in the same batch are ignored
+            List<Particle> batchWithDead = new ArrayList<>(removed);
+            batchWithDead.add(removed.get(0));
+            batchWithDead.addAll(dead);
+            container.removeAll(batchWithDead);
+            for (Particle p : removed)
+                assertEquals(-1, p.id);
+            dead.addAll(removed);
+            assertConsistent();
+
+            connectRandomly();
+            assertConsistent();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package de.javaabc.particlesimulation.trajectory;
+
+import de.javaabc.particlesimulation.SimulationEngine;
+import de.javaabc.particlesimulation.util.math.Vec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrajectoryTest {
+    private static final double WIDTH = 1000.0, HEIGHT = 1000.0, CUTOFF = 100.0, SPACING = 90.0;
+
+    private static final double POSITION_QUANTUM = 1.0 / 16.0, VELOCITY_QUANTUM = 1.0 / 64.0;
+
+    private static final int TICKS = 200, CHUNK_FRAMES = 8;
+
+    /**
+     * the tick after which a particle is added, so the following frame has to be a keyframe
+     */
+    private static final int GROWTH_TICK = 77;
+
+    @TempDir
+    Path dir;
+
+    /**
+     * The positions and speeds of all particles after one tick, as recorded.
+     */
+    private record Motion(double[] x, double[] y, double[] vx, double[] vy) {
+        static Motion of(SimulationEngine engine) {
+            var store = engine.getParticles().getStore();
+            int n = store.size();
+            var motion = new Motion(new double[n], new double[n], new double[n], new double[n]);
+            store.copyMotion(motion.x, motion.y, motion.vx, motion.vy);
+            return motion;
+        }
+    }
+
+    private static SimulationEngine newEngine() {
+        var engine = new SimulationEngine(WIDTH, HEIGHT, SimulationEngine.DEFAULT_GRAVITY, CUTOFF);
+        for (double y = SPACING; y < HEIGHT / 2.0; y += SPACING)
+            for (double x = SPACING; x < WIDTH - SPACING; x += SPACING)
+                engine.addParticle(new Vec(x, y), SimulationEngine.DEFAULT_PARTICLE_MASS, 1E-4, 80.0, false);
+        return engine;
+    }
+
+    private static void assertQuantized(double[] expected, double[] actual, int n, double quantum, long tick) {
+        double bound = quantum / 2.0 + 1E-9;
+        for (int i = 0; i < n; i++)
+            assertTrue(Math.abs(expected[i] - actual[i]) <= bound,
+                    "value " + actual[i] + " of particle " + i + " at tick " + tick + " deviates from " + expected[i] + " by more than half a quantum");
+    }
+
+    /**
+     * Records a run through a writer with only two frames, so some frames may be dropped,
+     * and checks every written frame against the state recorded at its tick.
+     */
+    private void assertRoundTrip(DropPolicy policy) throws Exception {
+        var path = dir.resolve(policy + ".trajectory");
+        Map<Long, Motion> recorded = new HashMap<>();
+        long records = 0;
+        TrajectoryWriter writer;
+        try (var engine = newEngine()) {
+            writer = new TrajectoryWriter(path, 1, 2, true, policy, POSITION_QUANTUM, VELOCITY_QUANTUM, CHUNK_FRAMES);
+            try (writer) {
+                for (int tick = 1; tick <= TICKS; tick++) {
+                    engine.tick(0.05);
+                    if (tick == GROWTH_TICK)
+                        engine.addParticle(new Vec(WIDTH / 2.0, HEIGHT - SPACING), SimulationEngine.DEFAULT_PARTICLE_MASS, 1E-4, 80.0, false);
+                    recorded.put(engine.getTickCount(), Motion.of(engine));
+                    writer.record(engine);
+                    records++;
+                }
+            }
+        }
+
+        assertEquals(records, writer.getWritten() + writer.getDropped());
+        try (var reader = new TrajectoryReader(path)) {
+            assertEquals(writer.getWritten(), reader.frameCount());
+            assertTrue(reader.hasVelocities());
+
+            // Backwards, so every frame is found through the chunk index
+            long nextTick = Long.MAX_VALUE;
+            for (long index = reader.frameCount() - 1; index >= 0; index--) {
+                var frame = reader.read(index);
+                assertTrue(frame.getTick() < nextTick, "frames are not in tick order");
+                nextTick = frame.getTick();
+
+                var expected = recorded.get(frame.getTick());
+                assertNotNull(expected);
+                assertEquals(expected.x.length, frame.size());
+                assertQuantized(expected.x, frame.getX(), frame.size(), POSITION_QUANTUM, frame.getTick());
+                assertQuantized(expected.y, frame.getY(), frame.size(), POSITION_QUANTUM, frame.getTick());
+                assertQuantized(expected.vx, frame.getVx(), frame.size(), VELOCITY_QUANTUM, frame.getTick());
+                assertQuantized(expected.vy, frame.getVy(), frame.size(), VELOCITY_QUANTUM, frame.getTick());
+            }
+        }
+    }
+
+    @Test
+    void roundTripWithinQuantumDroppingNewest() throws Exception {
+        assertRoundTrip(DropPolicy.DROP_NEWEST);
+    }
+
+    @Test
+    void roundTripWithinQuantumDroppingOldest() throws Exception {
+        assertRoundTrip(DropPolicy.DROP_OLDEST);
+    }
+}